@@ -0,0 +1,408 @@
+package com.example.melodira;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de carátulas compartida por toda la app (una instancia por proceso), en dos niveles:
+ * <ol>
+ *   <li>Memoria: LruCache de Bitmaps ya reducidos. Sobrevive a que se recreen actividades y adaptadores.</li>
+ *   <li>Disco: miniaturas JPEG en cacheDir/artwork/&lt;px&gt;/, con la clave (ruta + fecha de modificación).
+ *   Sobrevive a reinicios del proceso; si el archivo cambia, cambia la clave y se vuelve a generar.</li>
+ * </ol>
+ * Solo si fallan los dos se abre el MP3 con MediaMetadataRetriever y se decodifica la imagen.
+ * Las canciones sin carátula también se recuerdan (archivo vacío en disco) para no volver a buscarla.
+ * <p>
+ * La memoria va solo por ruta: cuando LibraryWatcher ve que una canción cambió, sus entradas se
+ * quitan ({@link #invalidate}) y la siguiente lectura va a disco con la fecha nueva. La fecha de
+ * cada ruta se recuerda también hasta entonces, para no preguntarla al ContentResolver en cada fallo.
+ */
+public class ArtworkCache {
+    private static final String TAG = "ArtworkCache";
+
+    /** Tamaños fijos de miniatura (lado máximo en píxeles). */
+    public enum Size {
+        /** Filas de la lista. */
+        SMALL(160),
+        /** Notificación y pantalla de bloqueo. */
+        MEDIUM(512),
+        /** Portada grande del reproductor. */
+        LARGE(1024);
+
+        public final int px;
+
+        Size(int px) {
+            this.px = px;
+        }
+
+        /** El tamaño más pequeño que llena una vista de px píxeles de lado (LARGE si ninguno llega). */
+        public static Size fitting(int px) {
+            for (Size s : values()) {
+                if (s.px >= px) return s;
+            }
+            return LARGE;
+        }
+    }
+
+    private static final String DIR = "artwork";
+    private static final long MAX_DISK_BYTES = 64L * 1024 * 1024;
+    // Cada cuántas escrituras revisamos si hay que recortar el disco
+    private static final int TRIM_EVERY_WRITES = 64;
+    private static final int JPEG_QUALITY = 90;
+    // Bitmaps libres para inBitmap: de sobra para una pantalla y media de filas más un par de portadas
+    private static final long POOL_MAX_BYTES = 8L * 1024 * 1024;
+
+    private static ArtworkCache instance;
+
+    public static synchronized ArtworkCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ArtworkCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private final Context appContext;
+    private final File root;
+    private final LruCache<String, Bitmap> memory;
+    private final BitmapPool pool = new BitmapPool(POOL_MAX_BYTES);
+    // Claves de memoria que sabemos que no tienen carátula
+    private final LruCache<String, Boolean> missing = new LruCache<>(2048);
+    // Ruta -> fecha de modificación (la parte de la clave de disco que cuesta una consulta)
+    private final LruCache<String, Long> modifiedTimes = new LruCache<>(4096);
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    private ArtworkCache(Context context) {
+        appContext = context;
+        root = new File(context.getCacheDir(), DIR);
+
+        // 1/8 de la memoria disponible (en KB), igual que la caché que tenía el adaptador
+        final int cacheSize = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        memory = new LruCache<String, Bitmap>(cacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                // Reservado, no usado: un bitmap reutilizado puede tener más sitio que su imagen
+                return bitmap.getAllocationByteCount() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                // Expulsado de la caché: al pool (si alguna vista lo sigue pintando, espera a que lo suelte)
+                if (evicted) pool.put(oldValue);
+            }
+        };
+        // Una canción modificada puede traer otra carátula: fuera lo que tuviéramos de ella
+        MusicLibrary.getInstance().addListener(delta -> {
+            for (Track t : delta.updated) invalidate(t.path);
+        });
+    }
+
+    /** Olvida lo que haya en memoria de path (en todos los tamaños) y su fecha: se vuelve a mirar en disco. */
+    public void invalidate(String path) {
+        if (path == null) return;
+        modifiedTimes.remove(path);
+        for (Size size : Size.values()) {
+            String memKey = memoryKey(path, size);
+            memory.remove(memKey); // No es una expulsión: no va al pool (puede estar pintado)
+            missing.remove(memKey);
+        }
+    }
+
+    /** Tamaño de la portada del reproductor en este dispositivo (como mucho el ancho de pantalla). */
+    public static Size nowPlayingSize(Context context) {
+        return Size.fitting(context.getResources().getDisplayMetrics().widthPixels);
+    }
+
+    /** Solo memoria: seguro desde el hilo principal. null si no está (o si no tiene carátula). */
+    public Bitmap peek(String path, Size size) {
+        if (path == null) return null;
+        Bitmap b = memory.get(memoryKey(path, size));
+        if (b != null) memoryHits.incrementAndGet();
+        return b;
+    }
+
+    /**
+     * Como {@link #peek}, pero además marca el bitmap como pintado para que no vuelva al pool mientras
+     * tanto. Quien lo pinta tiene que llamar a {@link #release} al dejar de hacerlo. Las vistas solo
+     * deben pintar bitmaps conseguidos así: el de {@link #get} puede acabar reutilizado en cualquier momento.
+     */
+    public Bitmap acquire(String path, Size size) {
+        if (path == null) return null;
+        // Mismo cerrojo que pool.put: o se marca antes de que la expulsión llegue al pool, o ya no está
+        synchronized (pool) {
+            Bitmap b = memory.get(memoryKey(path, size));
+            if (b != null) {
+                memoryHits.incrementAndGet();
+                pool.retain(b);
+            }
+            return b;
+        }
+    }
+
+    /** La vista dejó de pintar b (conseguido con {@link #acquire}). null no hace nada. */
+    public void release(Bitmap b) {
+        pool.release(b);
+    }
+
+    /** true si ya está en memoria o se sabe que no tiene carátula. No cuenta como acierto en las estadísticas. */
+    public boolean isResolved(String path, Size size) {
+        if (path == null) return true;
+        String memKey = memoryKey(path, size);
+        return memory.get(memKey) != null || missing.get(memKey) != null;
+    }
+
+    /** true si ya sabemos (sin tocar disco) que la canción no tiene carátula. */
+    public boolean isKnownMissing(String path, Size size) {
+        return path != null && missing.get(memoryKey(path, size)) != null;
+    }
+
+    /**
+     * Memoria -> disco -> decodificación del MP3. Hace E/S: llamar desde un hilo de fondo.
+     * Devuelve null si la canción no tiene carátula.
+     */
+    public Bitmap get(String path, Size size) {
+        if (path == null) return null;
+        String memKey = memoryKey(path, size);
+
+        Bitmap b = memory.get(memKey);
+        if (b != null) {
+            memoryHits.incrementAndGet();
+            return b;
+        }
+        if (missing.get(memKey) != null) {
+            memoryHits.incrementAndGet();
+            return null;
+        }
+
+        File file = diskFile(path, size);
+        if (file.exists()) {
+            if (file.length() == 0) {
+                // Marcador de "sin carátula"
+                diskHits.incrementAndGet();
+                missing.put(memKey, Boolean.TRUE);
+                return null;
+            }
+            b = decodeFile(file.getAbsolutePath(), size.px);
+            if (b != null) {
+                diskHits.incrementAndGet();
+                memory.put(memKey, b);
+                return b;
+            }
+            file.delete(); // Corrupto: lo regeneramos
+        }
+
+        misses.incrementAndGet();
+        b = decodeFromSource(path, size.px);
+        // Primero a disco: una vez en memoria la caché podría expulsarlo y reutilizarlo a medio comprimir
+        writeToDisk(file, b);
+        if (b != null) {
+            memory.put(memKey, b);
+        } else {
+            missing.put(memKey, Boolean.TRUE);
+        }
+        return b;
+    }
+
+    public long getMemoryHits() { return memoryHits.get(); }
+    public long getDiskHits() { return diskHits.get(); }
+    public long getMisses() { return misses.get(); }
+    /** Decodificaciones que reservaron un bitmap nuevo en vez de reutilizar uno del pool. */
+    public long getAllocations() { return pool.getAllocations(); }
+
+    @Override
+    public String toString() {
+        return "memoria " + memoryHits.get() + ", disco " + diskHits.get() + ", decodificadas " + misses.get()
+                + " (" + memory.size() / 1024 + " MB en memoria), " + pool;
+    }
+
+    private static String memoryKey(String path, Size size) {
+        return size.px + "|" + path;
+    }
+
+    // El nombre en disco incluye la fecha de modificación: si el MP3 cambia, la miniatura vieja ya no se usa
+    private File diskFile(String path, Size size) {
+        String key = path + "|" + lastModified(path);
+        return new File(new File(root, String.valueOf(size.px)), sha1(key) + ".jpg");
+    }
+
+    private long lastModified(String path) {
+        Long known = modifiedTimes.get(path);
+        if (known != null) return known;
+        long modified = 0;
+        if (!path.startsWith("content://")) {
+            modified = new File(path).lastModified();
+        } else {
+            Uri uri = Uri.parse(path);
+            try (Cursor c = appContext.getContentResolver().query(uri,
+                    new String[]{DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null)) {
+                if (c != null && c.moveToFirst() && !c.isNull(0)) modified = c.getLong(0);
+            } catch (Exception e) {
+                // El proveedor no expone la fecha: usamos solo la ruta
+            }
+        }
+        modifiedTimes.put(path, modified);
+        return modified;
+    }
+
+    private Bitmap decodeFromSource(String path, int maxPx) {
+        byte[] data;
+        MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+        try {
+            if (path.startsWith("content://")) {
+                mmr.setDataSource(appContext, Uri.parse(path));
+            } else {
+                mmr.setDataSource(path);
+            }
+            data = mmr.getEmbeddedPicture();
+        } catch (Exception e) {
+            return null;
+        } finally {
+            try { mmr.release(); } catch (Exception ignored) {}
+        }
+        if (data == null) return null;
+        return decodeScaled(data, maxPx);
+    }
+
+    private Bitmap decodeScaled(byte[] data, int maxPx) {
+        return decode(opts -> BitmapFactory.decodeByteArray(data, 0, data.length, opts), maxPx);
+    }
+
+    private Bitmap decodeFile(String file, int maxPx) {
+        return decode(opts -> BitmapFactory.decodeFile(file, opts), maxPx);
+    }
+
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * Decodifica directamente al tamaño final (lado mayor como mucho maxPx), sin bitmap intermedio:
+     * inSampleSize reduce por potencias de 2 y el resto lo hace el propio decodificador con
+     * inDensity/inTargetDensity. Si el pool tiene un bitmap con sitio se escribe encima (inBitmap).
+     */
+    private Bitmap decode(Decoder decoder, int maxPx) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decoder.decode(options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inSampleSize = MusicAdapter.calculateInSampleSize(options, maxPx, maxPx);
+        // Lo que sale de inSampleSize (redondeando hacia arriba, como algunos decodificadores)
+        int w = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int h = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        int longest = Math.max(w, h);
+        if (longest > maxPx) {
+            options.inScaled = true;
+            options.inDensity = longest;
+            options.inTargetDensity = maxPx;
+            w = (int) Math.ceil((double) w * maxPx / longest);
+            h = (int) Math.ceil((double) h * maxPx / longest);
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inMutable = true; // Para que después pueda volver al pool
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap reuse = pool.take(w + 1, h + 1); // +1: margen por redondeos del decodificador
+        options.inBitmap = reuse;
+
+        Bitmap b;
+        try {
+            b = decoder.decode(options);
+        } catch (IllegalArgumentException e) {
+            // El decodificador no aceptó el bitmap (formato o tamaño): uno nuevo
+            options.inBitmap = null;
+            b = decoder.decode(options);
+            if (reuse != null) pool.put(reuse);
+            reuse = null;
+        }
+        if (b == null) {
+            if (reuse != null) pool.put(reuse);
+            return null;
+        }
+        pool.recordDecode(b == reuse);
+        return b;
+    }
+
+    private void writeToDisk(File file, Bitmap b) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) return;
+
+        // Escribimos a un temporal y renombramos: otro hilo nunca ve un JPEG a medias
+        File tmp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            if (b != null) b.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "No se pudo guardar la miniatura: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+
+        if (writesSinceTrim.incrementAndGet() >= TRIM_EVERY_WRITES) {
+            writesSinceTrim.set(0);
+            trimDisk();
+        }
+    }
+
+    // Si el disco pasa del límite, borra las miniaturas más viejas hasta quedar en 3/4
+    private synchronized void trimDisk() {
+        File[] sizes = root.listFiles();
+        if (sizes == null) return;
+
+        List<File> all = new ArrayList<>();
+        long total = 0;
+        for (File dir : sizes) {
+            File[] files = dir.listFiles();
+            if (files == null) continue;
+            all.addAll(Arrays.asList(files));
+            for (File f : files) total += f.length();
+        }
+        if (total <= MAX_DISK_BYTES) return;
+
+        all.sort(Comparator.comparingLong(File::lastModified));
+        long target = MAX_DISK_BYTES * 3 / 4;
+        for (File f : all) {
+            if (total <= target) break;
+            long len = f.length();
+            if (f.delete()) total -= len;
+        }
+        Log.d(TAG, "Disco recortado a " + total / 1024 + " KB. " + this);
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(d.length * 2);
+            for (byte x : d) {
+                sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 siempre existe en Android; por si acaso
+            return Integer.toHexString(s.hashCode());
+        }
+    }
+}
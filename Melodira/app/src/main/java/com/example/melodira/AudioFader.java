@@ -0,0 +1,125 @@
+package com.example.melodira;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rampas de volumen en un hilo propio de control de audio (prioridad de audio), en lugar de
+ * ValueAnimator en el hilo principal: si la UI está ocupada (scroll, decodificar carátulas), los
+ * fundidos no se entrecortan.
+ * <p>
+ * Cada rampa va asociada a una clave (el MediaPlayer que controla); empezar otra con la misma clave
+ * reemplaza la anterior. Todo el estado interno se toca solo desde el hilo de audio.
+ */
+public class AudioFader {
+
+    public interface Target {
+        void setVolume(float volume);
+    }
+
+    public enum Curve {
+        /** Volumen lineal: para subir o bajar un solo reproductor. */
+        LINEAR,
+        /** Seno/coseno: en un fundido cruzado la potencia total se mantiene y no hay bache a la mitad. */
+        EQUAL_POWER
+    }
+
+    // ~60 pasos por segundo: de sobra para que el oído no note escalones
+    private static final long STEP_MS = 16;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Map<Object, Ramp> ramps = new HashMap<>();
+
+    public AudioFader() {
+        thread = new HandlerThread("AudioControl", Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Lleva target de from a to en durationMs. onDone (si no es null) se ejecuta en el hilo de audio
+     * al terminar, pero no si la rampa se cancela o se reemplaza.
+     */
+    public void fade(Object key, Target target, float from, float to, long durationMs, Curve curve, Runnable onDone) {
+        handler.post(() -> {
+            Ramp old = ramps.remove(key);
+            if (old != null) handler.removeCallbacks(old);
+
+            Ramp r = new Ramp(key, target, from, to, Math.max(1, durationMs), curve, onDone);
+            ramps.put(key, r);
+            r.run();
+        });
+    }
+
+    /** Para la rampa de key (si había) sin ejecutar su onDone. */
+    public void cancel(Object key) {
+        handler.post(() -> {
+            Ramp old = ramps.remove(key);
+            if (old != null) handler.removeCallbacks(old);
+        });
+    }
+
+    /** Ejecuta r en el hilo de audio detrás de las rampas ya encoladas (para ordenar con cancel). */
+    public void post(Runnable r) {
+        handler.post(r);
+    }
+
+    public void release() {
+        handler.removeCallbacksAndMessages(null);
+        thread.quitSafely();
+    }
+
+    private final class Ramp implements Runnable {
+        final Object key;
+        final Target target;
+        final float from, to;
+        final long durationMs;
+        final Curve curve;
+        final Runnable onDone;
+        final long startedAt = SystemClock.uptimeMillis();
+
+        Ramp(Object key, Target target, float from, float to, long durationMs, Curve curve, Runnable onDone) {
+            this.key = key;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.durationMs = durationMs;
+            this.curve = curve;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            if (ramps.get(key) != this) return; // Reemplazada
+
+            float t = Math.min(1f, (SystemClock.uptimeMillis() - startedAt) / (float) durationMs);
+            float shaped = t;
+            if (curve == Curve.EQUAL_POWER) {
+                // Subiendo: sin(t·π/2); bajando: 1 - cos(t·π/2), que es el complemento de potencia
+                shaped = to >= from
+                        ? (float) Math.sin(t * Math.PI / 2)
+                        : 1f - (float) Math.cos(t * Math.PI / 2);
+            }
+            try {
+                target.setVolume(from + (to - from) * shaped);
+            } catch (IllegalStateException e) {
+                // El reproductor se reseteó mientras tanto: la rampa ya no tiene sentido
+                ramps.remove(key);
+                return;
+            }
+
+            if (t < 1f) {
+                handler.postDelayed(this, STEP_MS);
+            } else {
+                ramps.remove(key);
+                if (onDone != null) onDone.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.melodira;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bitmaps libres para reutilizar con {@link android.graphics.BitmapFactory.Options#inBitmap}: en vez
+ * de reservar uno nuevo en cada decodificación (y que el GC recoja el viejo en mitad de un scroll),
+ * el decodificador escribe encima de uno que ya no se usa.
+ * <p>
+ * Se agrupan por cubos de tamaño (potencias de 2 de bytes reservados): un bitmap del cubo k tiene
+ * entre k y 2k bytes, así que para una imagen basta mirar su cubo y los inmediatamente superiores.
+ * <p>
+ * Un bitmap que sigue pintado en alguna vista no puede volver al pool. Quien lo pinta lo marca con
+ * {@link #retain} y lo suelta con {@link #release}; si la caché lo expulsa mientras tanto, espera a
+ * que lo suelten. Las marcas son débiles: una vista que muere sin soltar no retiene nada.
+ */
+public final class BitmapPool {
+
+    // Un cubo más grande que esto (x4) desperdicia demasiado: mejor reservar uno ajustado
+    private static final int MAX_BUCKET_RATIO = 4;
+
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> free = new TreeMap<>();
+    private long freeBytes;
+    private final Map<Bitmap, Lease> leases = new WeakHashMap<>();
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** Un bitmap libre con sitio para width x height en ARGB_8888, o null si no hay ninguno que sirva. */
+    public synchronized Bitmap take(int width, int height) {
+        int needed = width * height * 4;
+        int bucket = floorPowerOfTwo(needed);
+        for (Map.Entry<Integer, ArrayDeque<Bitmap>> e = free.ceilingEntry(bucket);
+             e != null && e.getKey() <= (long) bucket * MAX_BUCKET_RATIO;
+             e = free.higherEntry(e.getKey())) {
+            // En el cubo de needed puede haber alguno algo más pequeño; en los de arriba sirven todos
+            Bitmap b = pollFitting(e.getValue(), needed);
+            if (e.getValue().isEmpty()) free.remove(e.getKey());
+            if (b != null) {
+                freeBytes -= b.getAllocationByteCount();
+                return b;
+            }
+        }
+        return null;
+    }
+
+    private static Bitmap pollFitting(ArrayDeque<Bitmap> bucket, int needed) {
+        Iterator<Bitmap> it = bucket.descendingIterator(); // Los últimos en llegar, primero
+        while (it.hasNext()) {
+            Bitmap b = it.next();
+            if (b.getAllocationByteCount() >= needed) {
+                it.remove();
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /** Devuelve b al pool (ya no está en la caché). Si alguna vista lo pinta, espera a que lo suelte. */
+    public synchronized void put(Bitmap b) {
+        if (b == null || b.isRecycled() || !b.isMutable()) return;
+        Lease lease = leases.get(b);
+        if (lease != null && lease.refs > 0) {
+            lease.evicted = true;
+            return;
+        }
+        leases.remove(b);
+        addFree(b);
+    }
+
+    /** b pasa a estar pintado en una vista más. */
+    public synchronized void retain(Bitmap b) {
+        if (b == null) return;
+        Lease lease = leases.get(b);
+        if (lease == null) {
+            lease = new Lease();
+            leases.put(b, lease);
+        }
+        lease.refs++;
+    }
+
+    /** Una vista dejó de pintar b. Si la caché ya lo había expulsado, ahora sí vuelve al pool. */
+    public synchronized void release(Bitmap b) {
+        if (b == null) return;
+        Lease lease = leases.get(b);
+        if (lease == null || --lease.refs > 0) return;
+        leases.remove(b);
+        if (lease.evicted) addFree(b);
+    }
+
+    /** Para las estadísticas: reused indica si la decodificación escribió encima de un bitmap del pool. */
+    void recordDecode(boolean reused) {
+        if (reused) reuses.incrementAndGet();
+        else allocations.incrementAndGet();
+    }
+
+    /** Decodificaciones que tuvieron que reservar un bitmap nuevo. En scroll estable no debería crecer. */
+    public long getAllocations() { return allocations.get(); }
+    public long getReuses() { return reuses.get(); }
+
+    public synchronized long getFreeBytes() { return freeBytes; }
+
+    @Override
+    public synchronized String toString() {
+        return "pool: " + reuses.get() + " reutilizados, " + allocations.get() + " nuevos, "
+                + freeBytes / 1024 + " KB libres";
+    }
+
+    private void addFree(Bitmap b) {
+        int bytes = b.getAllocationByteCount();
+        if (bytes <= 0 || bytes > maxBytes) return;
+        // Lleno: fuera primero los más grandes, que son los que menos se piden (las filas usan los pequeños)
+        while (freeBytes + bytes > maxBytes && !free.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> last = free.lastEntry();
+            Bitmap dropped = last.getValue().pollFirst();
+            if (last.getValue().isEmpty()) free.remove(last.getKey());
+            if (dropped != null) freeBytes -= dropped.getAllocationByteCount();
+        }
+        ArrayDeque<Bitmap> bucket = free.get(floorPowerOfTwo(bytes));
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            free.put(floorPowerOfTwo(bytes), bucket);
+        }
+        bucket.addLast(b);
+        freeBytes += bytes;
+    }
+
+    private static int floorPowerOfTwo(int n) {
+        return Integer.highestOneBit(Math.max(1, n));
+    }
+
+    private static final class Lease {
+        int refs;
+        boolean evicted;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.melodira;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Planificador de carga de carátulas compartido por toda la app (encima de {@link ArtworkCache}).
+ * <ul>
+ *   <li>Prioridad y LIFO: primero lo visible y, dentro de cada prioridad, lo último que se pidió.
+ *   En un fling las filas que ya pasaron quedan al fondo y las que están en pantalla salen primero.</li>
+ *   <li>Cancelación por dueño (normalmente el ViewHolder): cada dueño tiene como mucho una petición;
+ *   pedir otra o reciclar la vista cancela la anterior.</li>
+ *   <li>Deduplicación: si la misma carátula ya está en cola o decodificándose, el nuevo dueño se
+ *   engancha a ese trabajo en vez de lanzar otro.</li>
+ *   <li>Cola acotada: si se llena se descartan las peticiones más viejas de menor prioridad; si la
+ *   fila vuelve a verse, el bind la pide otra vez.</li>
+ * </ul>
+ * Un trabajo ya en marcha no se interrumpe (la carátula acaba en la caché igualmente), solo deja de
+ * entregarse a quien la canceló. Los resultados se entregan en el hilo principal.
+ */
+public final class CoverLoader {
+
+    public enum Priority {
+        /** Filas en pantalla. */
+        VISIBLE,
+        /** Filas que están a punto de verse. */
+        PREFETCH
+    }
+
+    public interface Callback {
+        /** bitmap es null si la canción no tiene carátula. */
+        void onCover(String path, Bitmap bitmap);
+    }
+
+    /** De dónde salen las carátulas (en producción, {@link ArtworkCache#get}). Se llama en un hilo de fondo. */
+    interface Fetcher {
+        Bitmap fetch(String path, ArtworkCache.Size size);
+    }
+
+    private static final int WORKERS = 3;
+    private static final int MAX_QUEUED = 96;
+
+    private static CoverLoader instance;
+
+    public static synchronized CoverLoader getInstance(Context context) {
+        if (instance == null) {
+            ArtworkCache cache = ArtworkCache.getInstance(context);
+            Handler main = new Handler(Looper.getMainLooper());
+            instance = new CoverLoader(cache::get, main::post, WORKERS, MAX_QUEUED);
+        }
+        return instance;
+    }
+
+    private final Fetcher fetcher;
+    private final Executor delivery;
+    private final int maxQueued;
+
+    // Todo lo de abajo se protege con el monitor de this
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Job>[] queues = new ArrayDeque[Priority.values().length];
+    private final Map<String, Job> jobs = new HashMap<>();   // Clave -> trabajo en cola o en marcha
+    private final Map<Object, Job> byOwner = new HashMap<>();
+    private int queued;
+
+    CoverLoader(Fetcher fetcher, Executor delivery, int workers, int maxQueued) {
+        this.fetcher = fetcher;
+        this.delivery = delivery;
+        this.maxQueued = maxQueued;
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(this::workLoop, "CoverLoader-" + i);
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY + 1); // Por debajo de la UI y del audio
+            t.start();
+        }
+    }
+
+    /**
+     * Pide la carátula de path para owner. Reemplaza lo que owner tuviera pedido; si es lo mismo, no hace
+     * nada. callback se llama en el hilo principal, salvo que antes se cancele.
+     */
+    public synchronized void load(Object owner, String path, ArtworkCache.Size size, Priority priority, Callback callback) {
+        if (path == null) return;
+        String key = key(path, size);
+
+        Job current = byOwner.get(owner);
+        if (current != null) {
+            if (current.key.equals(key)) {
+                current.owners.put(owner, callback);
+                raise(current, priority);
+                return;
+            }
+            detach(owner, current);
+        }
+
+        Job job = jobs.get(key);
+        if (job == null) {
+            job = new Job(key, path, size, priority);
+            jobs.put(key, job);
+            enqueue(job);
+        } else {
+            raise(job, priority);
+            if (job.queued) touch(job); // Vuelve a ser lo más reciente
+        }
+        job.owners.put(owner, callback);
+        byOwner.put(owner, job);
+    }
+
+    /**
+     * Calienta la caché con la carátula de path sin que nadie la espere. Entra como PREFETCH: por la
+     * cola LIFO, de una tanda de prefetch sale primero la última que se pidió.
+     */
+    public synchronized void prefetch(String path, ArtworkCache.Size size) {
+        if (path == null) return;
+        String key = key(path, size);
+        if (jobs.containsKey(key)) return; // Ya pedida (quizá por una fila visible)
+
+        Job job = new Job(key, path, size, Priority.PREFETCH);
+        job.prefetch = true;
+        jobs.put(key, job);
+        enqueue(job);
+    }
+
+    /** Descarta los prefetch que aún no empezaron y que ninguna fila espera (se saltó a otra zona). */
+    public synchronized void cancelPrefetches() {
+        Iterator<Job> it = queues[Priority.PREFETCH.ordinal()].iterator();
+        while (it.hasNext()) {
+            Job job = it.next();
+            if (!job.owners.isEmpty()) continue;
+            it.remove();
+            job.queued = false;
+            queued--;
+            jobs.remove(job.key);
+        }
+    }
+
+    /** Olvida la petición de owner (vista reciclada). */
+    public synchronized void cancel(Object owner) {
+        Job job = byOwner.get(owner);
+        if (job != null) detach(owner, job);
+    }
+
+    /** Peticiones esperando (sin contar las que ya se están decodificando). */
+    public synchronized int queuedCount() {
+        return queued;
+    }
+
+    private void detach(Object owner, Job job) {
+        byOwner.remove(owner);
+        job.owners.remove(owner);
+        // Nadie la espera: si aún no empezó, fuera de la cola (salvo que sea un prefetch)
+        if (job.owners.isEmpty() && job.queued && !job.prefetch) {
+            queues[job.priority.ordinal()].remove(job);
+            job.queued = false;
+            queued--;
+            jobs.remove(job.key);
+        }
+    }
+
+    private void raise(Job job, Priority priority) {
+        if (priority.ordinal() >= job.priority.ordinal()) return;
+        if (job.queued) {
+            queues[job.priority.ordinal()].remove(job);
+            job.priority = priority;
+            queues[priority.ordinal()].addLast(job);
+        } else {
+            job.priority = priority;
+        }
+    }
+
+    private void touch(Job job) {
+        ArrayDeque<Job> q = queues[job.priority.ordinal()];
+        q.remove(job);
+        q.addLast(job);
+    }
+
+    private void enqueue(Job job) {
+        queues[job.priority.ordinal()].addLast(job);
+        job.queued = true;
+        queued++;
+        // Llena: fuera lo más viejo de la prioridad más baja (ya se habrá salido de pantalla)
+        while (queued > maxQueued) {
+            for (int p = queues.length - 1; p >= 0; p--) {
+                Job oldest = queues[p].pollFirst();
+                if (oldest == null) continue;
+                oldest.queued = false;
+                queued--;
+                jobs.remove(oldest.key);
+                for (Object owner : oldest.owners.keySet()) byOwner.remove(owner);
+                break;
+            }
+        }
+        notify();
+    }
+
+    private synchronized Job take() throws InterruptedException {
+        while (true) {
+            for (ArrayDeque<Job> q : queues) {
+                Job job = q.pollLast(); // LIFO
+                if (job != null) {
+                    job.queued = false;
+                    queued--;
+                    return job;
+                }
+            }
+            wait();
+        }
+    }
+
+    private void workLoop() {
+        while (true) {
+            Job job;
+            try {
+                job = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            Bitmap bitmap = null;
+            try {
+                bitmap = fetcher.fetch(job.path, job.size);
+            } catch (RuntimeException e) {
+                // Carátula corrupta o archivo que desapareció: se entrega como "sin carátula"
+            }
+
+            Map<Object, Callback> receivers;
+            synchronized (this) {
+                jobs.remove(job.key);
+                receivers = new LinkedHashMap<>(job.owners);
+                for (Object owner : receivers.keySet()) {
+                    if (byOwner.get(owner) == job) byOwner.remove(owner);
+                }
+                job.owners.clear();
+            }
+            if (receivers.isEmpty()) continue;
+
+            final Bitmap result = bitmap;
+            delivery.execute(() -> {
+                for (Callback cb : receivers.values()) cb.onCover(job.path, result);
+            });
+        }
+    }
+
+    private static String key(String path, ArtworkCache.Size size) {
+        return size.px + "|" + path;
+    }
+
+    private static final class Job {
+        final String key;
+        final String path;
+        final ArtworkCache.Size size;
+        Priority priority;
+        boolean queued;
+        boolean prefetch;
+        final Map<Object, Callback> owners = new LinkedHashMap<>();
+
+        Job(String key, String path, ArtworkCache.Size size, Priority priority) {
+            this.key = key;
+            this.path = path;
+            this.size = size;
+            this.priority = priority;
+        }
+    }
+}
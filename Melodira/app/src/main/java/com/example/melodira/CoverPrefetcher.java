@@ -0,0 +1,110 @@
+package com.example.melodira;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Adelanta la carga de carátulas de las filas que están a punto de verse, para que al llegar a ellas
+ * ya estén en la caché de memoria y no se vea el icono de relleno:
+ * <ul>
+ *   <li>Con scroll normal, las filas siguientes en la dirección del scroll; cuanto más rápido, más
+ *   pantallas por delante.</li>
+ *   <li>Con el índice A-Z, la pantalla de destino del salto en cuanto el dedo pasa por la letra,
+ *   descartando lo que se había adelantado para la zona anterior.</li>
+ * </ul>
+ * Usa {@link CoverLoader#prefetch}, con menos prioridad que las filas visibles. Solo hilo principal.
+ */
+final class CoverPrefetcher extends RecyclerView.OnScrollListener {
+
+    // Pantallas por delante: 1 con scroll lento, hasta MAX_PAGES_AHEAD en un fling
+    private static final int MAX_PAGES_AHEAD = 3;
+    // Filas por pantalla mientras no sepamos cuántas caben de verdad
+    private static final int DEFAULT_ROWS_PER_PAGE = 12;
+
+    private final MusicAdapter adapter;
+    private final ArtworkCache artworkCache;
+    private final CoverLoader coverLoader;
+
+    private int rowsPerPage = DEFAULT_ROWS_PER_PAGE;
+    // Último rango adelantado (from incluido, to excluido): no repetimos el mismo en cada onScrolled
+    private int lastFrom = -1, lastTo = -1;
+    // El dedo se queda sobre una letra y llegan muchos MOVE con el mismo destino
+    private int lastJump = RecyclerView.NO_POSITION;
+
+    CoverPrefetcher(Context context, MusicAdapter adapter) {
+        this.adapter = adapter;
+        artworkCache = ArtworkCache.getInstance(context);
+        coverLoader = CoverLoader.getInstance(context);
+    }
+
+    void attach(RecyclerView rv) {
+        rv.addOnScrollListener(this);
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+        if (dy == 0 || !(rv.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager lm = (LinearLayoutManager) rv.getLayoutManager();
+        int first = lm.findFirstVisibleItemPosition();
+        int last = lm.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) return;
+        rowsPerPage = Math.max(1, last - first + 1);
+
+        // Velocidad: píxeles de este frame frente a la altura de la lista. Un fling mueve una buena
+        // parte de la pantalla por frame; un arrastre lento, unos pocos píxeles
+        int height = Math.max(1, rv.getHeight());
+        int pages = 1 + Math.min(MAX_PAGES_AHEAD - 1, Math.abs(dy) * 8 / height);
+        int ahead = rowsPerPage * pages;
+
+        if (dy > 0) {
+            prefetchRange(last + 1, last + 1 + ahead, true);
+        } else {
+            prefetchRange(first - ahead, first, false);
+        }
+    }
+
+    /**
+     * El índice A-Z va a saltar a position: adelantamos su pantalla (y la siguiente) antes de que el
+     * RecyclerView la dibuje, y olvidamos lo adelantado para la zona de la que venimos.
+     */
+    void onJump(int position) {
+        if (position == lastJump) return;
+        lastJump = position;
+        coverLoader.cancelPrefetches();
+        lastFrom = lastTo = -1;
+        prefetchRange(position, position + rowsPerPage * 2, true);
+    }
+
+    /** La lista cambió (búsqueda, página nueva del escaneo): los rangos anteriores ya no valen. */
+    void reset() {
+        lastFrom = lastTo = -1;
+        lastJump = RecyclerView.NO_POSITION;
+    }
+
+    // nearFirstIsStart: qué extremo del rango se verá antes. Como la cola del cargador es LIFO,
+    // se pide primero el extremo lejano y al final el más cercano, que así sale el primero
+    private void prefetchRange(int from, int to, boolean nearFirstIsStart) {
+        from = Math.max(0, from);
+        to = Math.min(adapter.getItemCount(), to);
+        if (from >= to || (from >= lastFrom && to <= lastTo)) return;
+        // Lo que ya estaba en el rango anterior (scroll continuo) no se vuelve a pedir. El nuevo puede
+        // sobresalir por un lado o por los dos
+        int oldFrom = lastFrom, oldTo = lastTo;
+        lastFrom = from;
+        lastTo = to;
+
+        for (int i = 0; i < to - from; i++) {
+            int position = nearFirstIsStart ? to - 1 - i : from + i;
+            if (position >= oldFrom && position < oldTo) continue;
+            Track t = adapter.getItem(position);
+            if (t == null) continue; // Lista paginada: el get ya pidió su página, la carátula irá al dibujarla
+            String path = t.path;
+            if (!artworkCache.isResolved(path, ArtworkCache.Size.SMALL)) {
+                coverLoader.prefetch(path, ArtworkCache.Size.SMALL);
+            }
+        }
+    }
+}
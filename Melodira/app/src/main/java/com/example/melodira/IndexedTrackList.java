@@ -0,0 +1,53 @@
+package com.example.melodira;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Copia inmutable de una lista de canciones con un índice id -> posición ({@link LongIntMap}):
+ * indexOf y contains son O(1) en vez de recorrer la lista. Es lo que publica PlaybackSnapshot, así
+ * que el servicio y la UI comparten el mismo índice (clic en la lista, resaltado, scroll a la actual).
+ * <p>
+ * Como Track.equals compara ids, encuentra la canción aunque el objeto sea otro (una fila reescrita de
+ * la biblioteca, una fila de un reescaneo). Si una canción está repetida, indexOf da la primera.
+ * Se puede leer desde cualquier hilo.
+ */
+public final class IndexedTrackList extends AbstractList<Track> implements RandomAccess {
+
+    private final Track[] tracks;
+    private final LongIntMap positionById;
+
+    public IndexedTrackList(List<Track> source) {
+        tracks = source.toArray(new Track[0]);
+        positionById = new LongIntMap(tracks.length);
+        for (int i = 0; i < tracks.length; i++) {
+            positionById.putIfAbsent(tracks[i].id, i);
+        }
+    }
+
+    @Override
+    public Track get(int index) {
+        return tracks[index];
+    }
+
+    @Override
+    public int size() {
+        return tracks.length;
+    }
+
+    /** Posición de la canción con ese id, o -1. */
+    public int indexOfId(long id) {
+        return positionById.get(id);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Track ? indexOfId(((Track) o).id) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+}
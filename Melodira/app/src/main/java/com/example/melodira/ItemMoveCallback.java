@@ -1,4 +0,0 @@
-package com.example.melodira;
-
-public class ItemMoveCallback {
-}
@@ -0,0 +1,33 @@
+package com.example.melodira;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cambios de la biblioteca entre dos sincronizaciones con MediaStore:
+ * canciones nuevas, canciones modificadas (mismo _ID) y _ID borrados.
+ */
+public class LibraryDelta {
+
+    public static final LibraryDelta EMPTY = new LibraryDelta(
+            Collections.<Track>emptyList(), Collections.<Track>emptyList(), Collections.<Long>emptyList());
+
+    public final List<Track> added;
+    public final List<Track> updated;
+    public final List<Long> removedIds;
+
+    public LibraryDelta(List<Track> added, List<Track> updated, List<Long> removedIds) {
+        this.added = Collections.unmodifiableList(added);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removedIds = Collections.unmodifiableList(removedIds);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added.size() + " ~" + updated.size() + " -" + removedIds.size();
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.melodira;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice persistente de la biblioteca (SQLite). Cada fila está indexada por el _ID de MediaStore
+ * y guarda DATE_MODIFIED y SIZE para saber si el archivo cambió desde el último escaneo.
+ * Así un arranque en caliente solo lee esta tabla en lugar de reconstruir todos los Track.
+ */
+public class LibraryIndex extends SQLiteOpenHelper {
+
+    private static final String DB_NAME = "melodira_library.db";
+    private static final int DB_VERSION = 1;
+
+    static final String TABLE = "tracks";
+    static final String COL_ID = "_id";
+    static final String COL_PATH = "path";
+    static final String COL_TITLE = "title";
+    static final String COL_ARTIST = "artist";
+    static final String COL_ALBUM = "album";
+    static final String COL_DURATION = "duration";
+    static final String COL_DATE_MODIFIED = "date_modified";
+    static final String COL_SIZE = "size";
+
+    // El orden de MusicLibrary.TITLE_ORDER. _id es el rowid, así que idx_tracks_title ya lo tiene detrás
+    // del título y el ORDER BY entero sale del índice
+    private static final String TITLE_ORDER = COL_TITLE + " COLLATE NOCASE ASC, " + COL_ID + " ASC";
+
+    private static LibraryIndex instance;
+
+    public static synchronized LibraryIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new LibraryIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LibraryIndex(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COL_ID + " INTEGER PRIMARY KEY, "
+                + COL_PATH + " TEXT NOT NULL, "
+                + COL_TITLE + " TEXT, "
+                + COL_ARTIST + " TEXT, "
+                + COL_ALBUM + " TEXT, "
+                + COL_DURATION + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_DATE_MODIFIED + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_SIZE + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_tracks_title ON " + TABLE + " (" + COL_TITLE + " COLLATE NOCASE)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Es solo una caché: si cambia el esquema la reconstruimos desde MediaStore
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /** Firma de un archivo: (dateModified, size). Si cambia cualquiera, hay que volver a leerlo. */
+    public static final class Signature {
+        public final long dateModified;
+        public final long size;
+
+        public Signature(long dateModified, long size) {
+            this.dateModified = dateModified;
+            this.size = size;
+        }
+
+        public boolean matches(long otherDateModified, long otherSize) {
+            return dateModified == otherDateModified && size == otherSize;
+        }
+    }
+
+    /** Fila lista para escribir en el índice. */
+    public static final class Entry {
+        public final Track track;
+        public final long dateModified;
+        public final long size;
+
+        public Entry(Track track, long dateModified, long size) {
+            this.track = track;
+            this.dateModified = dateModified;
+            this.size = size;
+        }
+    }
+
+    /** Carga todas las canciones indexadas, ordenadas por título (igual que el escaneo de MediaStore). */
+    public List<Track> loadTracks() {
+        List<Track> out = new ArrayList<>();
+        loadTracks(Integer.MAX_VALUE, out::addAll);
+        return out;
+    }
+
+    /**
+     * Igual que loadTracks() pero entrega las canciones en páginas de pageSize a medida que se leen
+     * del cursor, en el mismo orden. La primera página llega sin esperar a leer toda la tabla.
+     */
+    public void loadTracks(int pageSize, MusicScanner.PageListener listener) {
+        String[] cols = {COL_ID, COL_PATH, COL_TITLE, COL_ARTIST, COL_ALBUM, COL_DURATION};
+        try (Cursor c = getReadableDatabase().query(TABLE, cols, null, null, null, null, TITLE_ORDER)) {
+            if (c == null) return;
+            List<Track> page = new ArrayList<>();
+            while (c.moveToNext()) {
+                page.add(new Track(c.getLong(0), c.getString(1), c.getString(2),
+                        c.getString(3), c.getString(4), c.getLong(5)));
+                if (page.size() >= pageSize) {
+                    listener.onPage(page);
+                    page = new ArrayList<>();
+                }
+            }
+            if (!page.isEmpty()) listener.onPage(page);
+        }
+    }
+
+    /**
+     * Las canciones con esos ids, en el mismo orden (null donde el id ya no está). Consulta por id en
+     * tandas, sin cargar el resto de la tabla. Bloquea: hilo de fondo.
+     */
+    public List<Track> loadTracks(long[] ids) {
+        String[] cols = {COL_ID, COL_PATH, COL_TITLE, COL_ARTIST, COL_ALBUM, COL_DURATION};
+        Map<Long, Track> found = new HashMap<>();
+        // SQLite admite como mucho 999 parámetros por consulta
+        for (int from = 0; from < ids.length; from += 500) {
+            int n = Math.min(500, ids.length - from);
+            String[] args = new String[n];
+            StringBuilder in = new StringBuilder(COL_ID).append(" IN (");
+            for (int i = 0; i < n; i++) {
+                args[i] = Long.toString(ids[from + i]);
+                in.append(i == 0 ? "?" : ",?");
+            }
+            in.append(')');
+            try (Cursor c = getReadableDatabase().query(TABLE, cols, in.toString(), args, null, null, null)) {
+                if (c == null) continue;
+                while (c.moveToNext()) {
+                    found.put(c.getLong(0), new Track(c.getLong(0), c.getString(1), c.getString(2),
+                            c.getString(3), c.getString(4), c.getLong(5)));
+                }
+            }
+        }
+        List<Track> out = new ArrayList<>(ids.length);
+        for (long id : ids) out.add(found.get(id));
+        return out;
+    }
+
+    /**
+     * Abre un Cursor sobre todas las canciones, en el mismo orden que loadTracks, para leerlas por
+     * páginas con PagedTrackList en vez de como lista: SQLite solo llena la ventana del Cursor alrededor
+     * de la posición pedida. expected es la cola que se va a mostrar así: cada fila leída se comprueba por
+     * id contra la misma posición de expected (ver TitleCursor). Bloquea (cuenta las filas): llamar desde
+     * un hilo de fondo, y usar el TitleCursor siempre desde ese mismo hilo.
+     */
+    public TitleCursor openTitleCursor(List<Track> expected) {
+        String[] cols = {COL_ID, COL_PATH, COL_TITLE, COL_ARTIST, COL_ALBUM, COL_DURATION};
+        Cursor c = getReadableDatabase().query(TABLE, cols, null, null, null, null, TITLE_ORDER);
+        TitleCursor titles = new TitleCursor(c, expected);
+        titles.count(); // La primera llamada recorre la consulta: que no le toque al hilo principal
+        return titles;
+    }
+
+    /**
+     * Cursor del índice por título como origen de páginas. No es thread-safe.
+     * <p>
+     * Solo vale mientras el índice tenga las mismas canciones, en el mismo orden, que la cola expected:
+     * si en una fila el id no es el de la cola (canciones de SAF, que no se indexan, un escaneo a medias,
+     * el índice cambió después de abrirlo...), loadPage y titleAt lanzan IllegalStateException en vez de
+     * devolver una canción que no es la de esa posición.
+     */
+    public static final class TitleCursor implements PagedTrackList.PageSource {
+        private final Cursor cursor;
+        private final List<Track> expected;
+
+        private TitleCursor(Cursor cursor, List<Track> expected) {
+            this.cursor = cursor;
+            this.expected = expected;
+        }
+
+        public int count() {
+            return cursor != null ? cursor.getCount() : 0;
+        }
+
+        /** true si las filas son tantas como en la cola (lo demás se comprueba fila a fila al leerlas). */
+        public boolean sizeMatches() {
+            return count() == expected.size();
+        }
+
+        @Override
+        public List<Track> loadPage(int offset, int limit) {
+            List<Track> page = new ArrayList<>(limit);
+            if (cursor == null || !cursor.moveToPosition(offset)) return page;
+            do {
+                checkId(offset + page.size());
+                page.add(new Track(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getString(4), cursor.getLong(5)));
+            } while (page.size() < limit && cursor.moveToNext());
+            return page;
+        }
+
+        /** Título de la fila position sin crear el Track (para las secciones del índice A-Z). */
+        public String titleAt(int position) {
+            if (cursor == null || !cursor.moveToPosition(position)) return null;
+            checkId(position);
+            return cursor.getString(2);
+        }
+
+        // La fila actual del Cursor tiene que ser la canción de la cola en esa posición
+        private void checkId(int position) {
+            if (position >= expected.size() || cursor.getLong(0) != expected.get(position).id) {
+                throw new IllegalStateException("El índice no coincide con la cola en la fila " + position);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /** Devuelve las firmas de todas las filas indexadas (_ID -> firma). */
+    public Map<Long, Signature> loadSignatures() {
+        Map<Long, Signature> out = new HashMap<>();
+        String[] cols = {COL_ID, COL_DATE_MODIFIED, COL_SIZE};
+        try (Cursor c = getReadableDatabase().query(TABLE, cols, null, null, null, null, null)) {
+            if (c == null) return out;
+            while (c.moveToNext()) {
+                out.put(c.getLong(0), new Signature(c.getLong(1), c.getLong(2)));
+            }
+        }
+        return out;
+    }
+
+    public boolean isEmpty() {
+        try (Cursor c = getReadableDatabase().rawQuery("SELECT 1 FROM " + TABLE + " LIMIT 1", null)) {
+            return c == null || !c.moveToFirst();
+        }
+    }
+
+    /**
+     * Aplica en una sola transacción las filas nuevas/modificadas y las borradas.
+     * Solo se tocan las filas que cambiaron; el resto del índice queda igual.
+     */
+    public void applyChanges(List<Entry> upserts, List<Long> deletedIds) {
+        if (upserts.isEmpty() && deletedIds.isEmpty()) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " ("
+                + COL_ID + ", " + COL_PATH + ", " + COL_TITLE + ", " + COL_ARTIST + ", " + COL_ALBUM + ", "
+                + COL_DURATION + ", " + COL_DATE_MODIFIED + ", " + COL_SIZE + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+             SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE " + COL_ID + " = ?")) {
+
+            for (Entry e : upserts) {
+                Track t = e.track;
+                insert.clearBindings();
+                insert.bindLong(1, t.id);
+                insert.bindString(2, t.path);
+                bindNullable(insert, 3, t.title);
+                bindNullable(insert, 4, t.artist);
+                bindNullable(insert, 5, t.album);
+                insert.bindLong(6, t.durationMs);
+                insert.bindLong(7, e.dateModified);
+                insert.bindLong(8, e.size);
+                insert.executeInsert();
+            }
+            for (long id : deletedIds) {
+                delete.bindLong(1, id);
+                delete.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Vacía el índice (por ejemplo si MediaStore cambió de versión y los _ID ya no son fiables). */
+    public void clear() {
+        getWritableDatabase().delete(TABLE, null, null);
+    }
+
+    private static void bindNullable(SQLiteStatement st, int index, String value) {
+        if (value == null) st.bindNull(index);
+        else st.bindString(index, value);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.melodira;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+/**
+ * Observa MediaStore.Audio y convierte las notificaciones de cambio en LibraryDelta.
+ * Las notificaciones llegan en ráfagas (una por archivo al copiar un álbum), así que se agrupan:
+ * esperamos DEBOUNCE_MS sin cambios nuevos, o como mucho MAX_DELAY_MS desde el primero,
+ * y entonces hacemos una sola sincronización incremental del índice en un hilo propio.
+ * El delta resultante se aplica a MusicLibrary en el hilo principal.
+ */
+public class LibraryWatcher {
+    private static final String TAG = "LibraryWatcher";
+
+    private static final long DEBOUNCE_MS = 1500;
+    private static final long MAX_DELAY_MS = 5000;
+
+    private final Context context;
+    private final HandlerThread thread;
+    private final Handler worker;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ContentObserver observer;
+
+    private long firstPendingAt = 0; // Solo se toca desde el hilo del watcher
+
+    private final Runnable syncRunnable = this::sync;
+
+    public LibraryWatcher(Context context) {
+        this.context = context.getApplicationContext();
+        thread = new HandlerThread("LibraryWatcher");
+        thread.start();
+        worker = new Handler(thread.getLooper());
+
+        observer = new ContentObserver(worker) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                scheduleSync();
+            }
+        };
+    }
+
+    public void start() {
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    public void stop() {
+        context.getContentResolver().unregisterContentObserver(observer);
+        worker.removeCallbacks(syncRunnable);
+        thread.quitSafely();
+    }
+
+    // Corre en el hilo del watcher (el ContentObserver usa su Handler)
+    private void scheduleSync() {
+        long now = SystemClock.uptimeMillis();
+        if (firstPendingAt == 0) firstPendingAt = now;
+
+        worker.removeCallbacks(syncRunnable);
+        long delay = Math.min(DEBOUNCE_MS, Math.max(0, firstPendingAt + MAX_DELAY_MS - now));
+        worker.postDelayed(syncRunnable, delay);
+    }
+
+    private void sync() {
+        firstPendingAt = 0;
+        try {
+            LibraryDelta delta = MusicScanner.syncMediaStoreIndex(context, LibraryIndex.getInstance(context));
+            if (delta.isEmpty()) return;
+
+            Log.d(TAG, "Cambios en MediaStore: " + delta);
+            mainHandler.post(() -> MusicLibrary.getInstance().applyDelta(delta));
+        } catch (Exception e) {
+            Log.w(TAG, "Error sincronizando el índice: " + e.getMessage());
+        }
+    }
+}
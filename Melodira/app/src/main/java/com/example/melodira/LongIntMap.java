@@ -0,0 +1,146 @@
+package com.example.melodira;
+
+import java.util.Arrays;
+
+/**
+ * Mapa long -> int con direccionamiento abierto (sondeo lineal) sobre dos arrays primitivos: sin
+ * Long ni Integer por entrada, ni nodos como HashMap. Sirve para los índices id de canción ->
+ * posición/fila que se consultan en cada clic, resaltado o scroll.
+ * <p>
+ * Capacidad potencia de dos y carga máxima 1/2. El borrado desplaza hacia atrás las entradas del
+ * mismo grupo (sin marcas de borrado), así las búsquedas no se degradan con el uso.
+ * No es thread-safe; un mapa que ya no se modifica se puede leer desde cualquier hilo.
+ */
+public final class LongIntMap {
+
+    /** Lo que devuelve {@link #get} si la clave no está. */
+    public static final int MISSING = -1;
+
+    private static final long EMPTY = 0; // La clave 0 va aparte (hasZeroKey)
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public int get(long key) {
+        if (key == EMPTY) return hasZeroKey ? zeroValue : MISSING;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return values[i];
+            if (k == EMPTY) return MISSING;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) return hasZeroKey;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return true;
+            if (k == EMPTY) return false;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == EMPTY) {
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) rehash(keys.length * 2);
+    }
+
+    /** Solo si la clave no estaba: para quedarse con la primera posición de una canción repetida. */
+    public void putIfAbsent(long key, int value) {
+        if (!containsKey(key)) put(key, value);
+    }
+
+    public void remove(long key) {
+        if (key == EMPTY) {
+            if (hasZeroKey) size--;
+            hasZeroKey = false;
+            return;
+        }
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) return;
+            i = (i + 1) & mask;
+        }
+        size--;
+        // Desplazamiento hacia atrás: cada entrada siguiente del grupo que pueda ocupar el hueco lo ocupa
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // j puede bajar al hueco si su posición ideal no está entre el hueco (excluido) y j
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    // Hash de Fibonacci: los _ID de MediaStore son consecutivos y sin mezclar caerían todos juntos
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == EMPTY) continue;
+            int j = slot(k);
+            while (keys[j] != EMPTY) j = (j + 1) & mask;
+            keys[j] = k;
+            values[j] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,479 @@
+package com.example.melodira;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lector ligero de etiquetas ID3 (v1, v2.2, v2.3 y v2.4) y de la duración de un MP3, en Java puro.
+ * Solo lee lo necesario a través del FileChannel: la cabecera ID3v2 y las cabeceras de sus frames
+ * (los datos de frames que no interesan, como la carátula APIC, se saltan), el trailer ID3v1
+ * y la primera trama MPEG. La duración sale de la cabecera Xing/Info (con el retardo y relleno
+ * del encoder si hay cabecera LAME) o VBRI; si no hay, se estima como CBR o se cuentan las tramas.
+ * No depende de Android, así que se puede probar en la JVM.
+ */
+public final class Mp3TagReader {
+
+    /** Lo que se pudo leer. Los campos de texto quedan en null si la etiqueta no los trae. */
+    public static final class Result {
+        public String title;
+        public String artist;
+        public String album;
+        public long durationMs;
+
+        long tlenMs; // TLEN de la etiqueta: solo se usa si no hay tramas MPEG legibles
+
+        boolean hasAllText() {
+            return title != null && artist != null && album != null;
+        }
+    }
+
+    // Cuánto buscamos la primera trama después de la etiqueta (basura, APE, relleno...)
+    private static final int SYNC_SEARCH_BYTES = 64 * 1024;
+    // Si las primeras tramas tienen todas el mismo bitrate, lo tratamos como CBR
+    private static final int CBR_PROBE_FRAMES = 8;
+
+    private Mp3TagReader() {}
+
+    public static Result read(FileChannel ch) throws IOException {
+        Result r = new Result();
+        long fileSize = ch.size();
+
+        long audioStart = readId3v2(ch, r);
+        long audioEnd = fileSize;
+        if (readId3v1(ch, fileSize, r)) {
+            audioEnd -= 128;
+        }
+
+        long duration = readDuration(ch, audioStart, audioEnd);
+        r.durationMs = duration > 0 ? duration : r.tlenMs;
+        return r;
+    }
+
+    // --- ID3v2 ---
+
+    // Devuelve la posición donde empieza el audio (0 si no hay etiqueta)
+    private static long readId3v2(FileChannel ch, Result r) throws IOException {
+        ByteBuffer h = readAt(ch, 0, 10);
+        if (h.limit() < 10 || h.get(0) != 'I' || h.get(1) != 'D' || h.get(2) != '3') return 0;
+
+        int major = h.get(3) & 0xFF;
+        int flags = h.get(5) & 0xFF;
+        int tagSize = syncsafe(h, 6);
+        boolean footer = major >= 4 && (flags & 0x10) != 0;
+        long audioStart = 10L + tagSize + (footer ? 10 : 0);
+
+        if (major < 2 || major > 4) return audioStart; // Versión desconocida: solo la saltamos
+
+        Source src;
+        if ((flags & 0x80) != 0 && major < 4) {
+            // Desincronización a nivel de etiqueta (v2.2/v2.3): hay que deshacerla antes de leer frames
+            src = new ArraySource(resync(toArray(readAt(ch, 10, tagSize))));
+        } else {
+            src = new ChannelSource(ch, 10);
+        }
+        parseFrames(src, major, flags, src.length(tagSize), r);
+        return audioStart;
+    }
+
+    private static void parseFrames(Source src, int major, int tagFlags, int tagSize, Result r) throws IOException {
+        int pos = 0;
+
+        if (major >= 3 && (tagFlags & 0x40) != 0) {
+            ByteBuffer eh = src.read(pos, 4);
+            if (eh.limit() < 4) return;
+            // v2.4: tamaño syncsafe que se incluye a sí mismo; v2.3: entero normal sin contar esos 4 bytes
+            pos += major == 4 ? syncsafe(eh, 0) : eh.getInt(0) + 4;
+        }
+
+        int headerLen = major == 2 ? 6 : 10;
+        while (pos + headerLen <= tagSize && !r.hasAllText()) {
+            ByteBuffer fh = src.read(pos, headerLen);
+            if (fh.limit() < headerLen || fh.get(0) == 0) break; // Relleno: se acabaron los frames
+
+            String id;
+            int size;
+            int frameFlags = 0;
+            if (major == 2) {
+                id = ascii(fh, 0, 3);
+                size = ((fh.get(3) & 0xFF) << 16) | ((fh.get(4) & 0xFF) << 8) | (fh.get(5) & 0xFF);
+            } else {
+                id = ascii(fh, 0, 4);
+                size = major == 4 ? syncsafe(fh, 4) : fh.getInt(4);
+                frameFlags = fh.getShort(8) & 0xFFFF;
+            }
+            pos += headerLen;
+            if (size <= 0 || pos + size > tagSize) break;
+
+            int field = fieldFor(id);
+            if (field != FIELD_NONE && isPlainFrame(major, frameFlags)) {
+                byte[] data = toArray(src.read(pos, size));
+                int skip = 0;
+                if (major == 4) {
+                    if ((frameFlags & 0x0040) != 0) skip += 1;           // Grupo
+                    if ((frameFlags & 0x0001) != 0) skip += 4;           // Indicador de longitud
+                    if ((frameFlags & 0x0002) != 0) data = resync(data); // Desincronización del frame
+                } else if (major == 3 && (frameFlags & 0x0020) != 0) {
+                    skip += 1;                                           // Grupo
+                }
+                String text = decodeText(data, skip);
+                assign(r, field, text);
+            }
+            pos += size;
+        }
+    }
+
+    private static final int FIELD_NONE = 0;
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_ARTIST = 2;
+    private static final int FIELD_ALBUM = 3;
+    private static final int FIELD_LENGTH = 4;
+
+    private static int fieldFor(String id) {
+        switch (id) {
+            case "TIT2": case "TT2": return FIELD_TITLE;
+            case "TPE1": case "TP1": return FIELD_ARTIST;
+            case "TALB": case "TAL": return FIELD_ALBUM;
+            case "TLEN": case "TLE": return FIELD_LENGTH;
+            default: return FIELD_NONE;
+        }
+    }
+
+    // Frames comprimidos o cifrados no se pueden leer sin más: los ignoramos
+    private static boolean isPlainFrame(int major, int flags) {
+        if (major == 3) return (flags & 0x00C0) == 0;
+        if (major == 4) return (flags & 0x000C) == 0;
+        return true;
+    }
+
+    private static void assign(Result r, int field, String text) {
+        if (text == null) return;
+        switch (field) {
+            case FIELD_TITLE: if (r.title == null) r.title = text; break;
+            case FIELD_ARTIST: if (r.artist == null) r.artist = text; break;
+            case FIELD_ALBUM: if (r.album == null) r.album = text; break;
+            case FIELD_LENGTH:
+                try {
+                    r.tlenMs = Long.parseLong(text.trim());
+                } catch (NumberFormatException ignored) {
+                }
+                break;
+        }
+    }
+
+    // Primer byte = codificación; nos quedamos con el primer valor (v2.4 separa varios con \0)
+    static String decodeText(byte[] data, int offset) {
+        if (data.length <= offset) return null;
+        int enc = data[offset] & 0xFF;
+        int start = offset + 1;
+        Charset cs;
+        boolean wide;
+        switch (enc) {
+            case 1: cs = StandardCharsets.UTF_16; wide = true; break;
+            case 2: cs = StandardCharsets.UTF_16BE; wide = true; break;
+            case 3: cs = StandardCharsets.UTF_8; wide = false; break;
+            default: cs = StandardCharsets.ISO_8859_1; wide = false; break;
+        }
+
+        int end = start;
+        if (wide) {
+            while (end + 1 < data.length && !(data[end] == 0 && data[end + 1] == 0)) end += 2;
+        } else {
+            while (end < data.length && data[end] != 0) end++;
+        }
+        String s = new String(data, start, end - start, cs).trim();
+        if (!s.isEmpty() && s.charAt(0) == '\uFEFF') s = s.substring(1).trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    // --- ID3v1 ---
+
+    private static boolean readId3v1(FileChannel ch, long fileSize, Result r) throws IOException {
+        if (fileSize < 128) return false;
+        ByteBuffer b = readAt(ch, fileSize - 128, 128);
+        if (b.limit() < 128 || b.get(0) != 'T' || b.get(1) != 'A' || b.get(2) != 'G') return false;
+
+        if (r.title == null) r.title = latin1Field(b, 3, 30);
+        if (r.artist == null) r.artist = latin1Field(b, 33, 30);
+        if (r.album == null) r.album = latin1Field(b, 63, 30);
+        return true;
+    }
+
+    private static String latin1Field(ByteBuffer b, int offset, int len) {
+        int end = offset;
+        while (end < offset + len && b.get(end) != 0) end++;
+        byte[] bytes = new byte[end - offset];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = b.get(offset + i);
+        String s = new String(bytes, StandardCharsets.ISO_8859_1).trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    // --- Duración ---
+
+    private static long readDuration(FileChannel ch, long start, long end) throws IOException {
+        if (end - start < 4) return 0;
+        ByteBuffer buf = readAt(ch, start, (int) Math.min(SYNC_SEARCH_BYTES, end - start));
+
+        for (int i = 0; i + 4 <= buf.limit(); i++) {
+            FrameHeader fh = FrameHeader.parse(buf.getInt(i));
+            if (fh == null) continue;
+
+            long frameStart = start + i;
+            long next = frameStart + fh.frameLength;
+            if (next + 4 <= end) {
+                // Confirmamos con la trama siguiente para no caer en un falso sincronismo
+                FrameHeader second = FrameHeader.parse(readAt(ch, next, 4).getInt(0));
+                if (second == null || !second.sameStream(fh)) continue;
+            }
+
+            ByteBuffer first = readAt(ch, frameStart, (int) Math.min(512, end - frameStart));
+            long d = xingDuration(first, fh);
+            if (d > 0) return d;
+            d = vbriDuration(first, fh);
+            if (d > 0) return d;
+            return estimateOrCountFrames(ch, frameStart, end, fh);
+        }
+        return 0;
+    }
+
+    private static long xingDuration(ByteBuffer b, FrameHeader fh) {
+        if (fh.layer != 3) return 0;
+        int p = 4 + fh.sideInfoLength();
+        if (p + 8 > b.limit()) return 0;
+        String tag = ascii(b, p, 4);
+        if (!tag.equals("Xing") && !tag.equals("Info")) return 0;
+
+        int flags = b.getInt(p + 4);
+        p += 8;
+        if ((flags & 0x1) == 0 || p + 4 > b.limit()) return 0;
+        long frames = b.getInt(p) & 0xFFFFFFFFL;
+        p += 4;
+        if ((flags & 0x2) != 0) p += 4;   // bytes
+        if ((flags & 0x4) != 0) p += 100; // TOC
+        if ((flags & 0x8) != 0) p += 4;   // calidad
+
+        long samples = frames * fh.samplesPerFrame;
+        // Cabecera LAME: retardo y relleno del encoder (12 bits cada uno) a 21 bytes del inicio
+        if (p + 24 <= b.limit() && ascii(b, p, 4).matches("LAME|Lavf|Lavc")) {
+            int b0 = b.get(p + 21) & 0xFF, b1 = b.get(p + 22) & 0xFF, b2 = b.get(p + 23) & 0xFF;
+            int delay = (b0 << 4) | (b1 >> 4);
+            int padding = ((b1 & 0x0F) << 8) | b2;
+            if (delay + padding < samples) samples -= delay + padding;
+        }
+        return samples * 1000 / fh.sampleRate;
+    }
+
+    private static long vbriDuration(ByteBuffer b, FrameHeader fh) {
+        int p = 4 + 32; // VBRI siempre va 32 bytes después de la cabecera
+        if (p + 18 > b.limit() || !ascii(b, p, 4).equals("VBRI")) return 0;
+        long frames = b.getInt(p + 14) & 0xFFFFFFFFL;
+        return frames * fh.samplesPerFrame * 1000 / fh.sampleRate;
+    }
+
+    // Sin cabecera VBR: si las primeras tramas comparten bitrate es CBR y basta con el tamaño;
+    // si no, contamos las tramas saltando de cabecera en cabecera.
+    private static long estimateOrCountFrames(FileChannel ch, long firstFrame, long end, FrameHeader first)
+            throws IOException {
+        ChannelWindow w = new ChannelWindow(ch, end);
+        long pos = firstFrame;
+        long frames = 0;
+        long samples = 0;
+        boolean constant = true;
+
+        while (pos + 4 <= end) {
+            FrameHeader h = FrameHeader.parse(w.getInt(pos));
+            if (h == null || !h.sameStream(first)) break;
+            if (h.bitrateKbps != first.bitrateKbps) constant = false;
+
+            frames++;
+            samples += h.samplesPerFrame;
+            pos += h.frameLength;
+
+            if (frames == CBR_PROBE_FRAMES && constant) {
+                return (end - firstFrame) * 8 / first.bitrateKbps;
+            }
+        }
+        return samples * 1000 / first.sampleRate;
+    }
+
+    // --- Cabecera de trama MPEG ---
+
+    static final class FrameHeader {
+        private static final int[][] BITRATES = {
+                {32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // MPEG1 L1
+                {32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // MPEG1 L2
+                {32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},     // MPEG1 L3
+                {32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // MPEG2 L1
+                {8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}          // MPEG2 L2/L3
+        };
+        private static final int[][] SAMPLE_RATES = {
+                {11025, 12000, 8000},  // MPEG2.5
+                null,                  // reservado
+                {22050, 24000, 16000}, // MPEG2
+                {44100, 48000, 32000}  // MPEG1
+        };
+
+        final int version;  // 3 = MPEG1, 2 = MPEG2, 0 = MPEG2.5
+        final int layer;    // 1, 2 o 3
+        final int bitrateKbps;
+        final int sampleRate;
+        final boolean mono;
+        final int samplesPerFrame;
+        final int frameLength;
+
+        private FrameHeader(int version, int layer, int bitrateKbps, int sampleRate, boolean padding, boolean mono) {
+            this.version = version;
+            this.layer = layer;
+            this.bitrateKbps = bitrateKbps;
+            this.sampleRate = sampleRate;
+            this.mono = mono;
+
+            if (layer == 1) {
+                samplesPerFrame = 384;
+                frameLength = (12 * bitrateKbps * 1000 / sampleRate + (padding ? 1 : 0)) * 4;
+            } else {
+                samplesPerFrame = (layer == 3 && version != 3) ? 576 : 1152;
+                frameLength = (samplesPerFrame / 8) * bitrateKbps * 1000 / sampleRate + (padding ? 1 : 0);
+            }
+        }
+
+        static FrameHeader parse(int h) {
+            if ((h & 0xFFE00000) != 0xFFE00000) return null;
+            int version = (h >>> 19) & 0x3;
+            int layerBits = (h >>> 17) & 0x3;
+            int bitrateIndex = (h >>> 12) & 0xF;
+            int rateIndex = (h >>> 10) & 0x3;
+            if (version == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) {
+                return null; // Reservado o "free format": no sabemos la longitud de la trama
+            }
+
+            int layer = 4 - layerBits;
+            int table;
+            if (version == 3) table = layer - 1;
+            else table = layer == 1 ? 3 : 4;
+
+            int bitrate = BITRATES[table][bitrateIndex - 1];
+            int sampleRate = SAMPLE_RATES[version][rateIndex];
+            boolean padding = ((h >>> 9) & 0x1) != 0;
+            boolean mono = ((h >>> 6) & 0x3) == 3;
+            return new FrameHeader(version, layer, bitrate, sampleRate, padding, mono);
+        }
+
+        int sideInfoLength() {
+            if (version == 3) return mono ? 17 : 32;
+            return mono ? 9 : 17;
+        }
+
+        boolean sameStream(FrameHeader o) {
+            return version == o.version && layer == o.layer && sampleRate == o.sampleRate;
+        }
+    }
+
+    // --- Utilidades de lectura ---
+
+    private interface Source {
+        ByteBuffer read(int pos, int len) throws IOException;
+        int length(int declared) throws IOException;
+    }
+
+    // Lee directamente del canal a partir de un desplazamiento (sin cargar toda la etiqueta)
+    private static final class ChannelSource implements Source {
+        private final FileChannel ch;
+        private final long base;
+
+        ChannelSource(FileChannel ch, long base) {
+            this.ch = ch;
+            this.base = base;
+        }
+
+        @Override public ByteBuffer read(int pos, int len) throws IOException {
+            return readAt(ch, base + pos, len);
+        }
+
+        @Override public int length(int declared) throws IOException {
+            return (int) Math.max(0, Math.min(declared, ch.size() - base));
+        }
+    }
+
+    private static final class ArraySource implements Source {
+        private final byte[] data;
+
+        ArraySource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override public ByteBuffer read(int pos, int len) {
+            if (pos >= data.length) return ByteBuffer.allocate(0);
+            int n = Math.max(0, Math.min(len, data.length - pos));
+            return ByteBuffer.wrap(data, pos, n).slice();
+        }
+
+        @Override public int length(int declared) {
+            return data.length;
+        }
+    }
+
+    // Ventana de 64 KB sobre el canal para leer cabeceras de trama seguidas sin una lectura por trama
+    private static final class ChannelWindow {
+        private final FileChannel ch;
+        private final long end;
+        private ByteBuffer buf = ByteBuffer.allocate(0);
+        private long bufStart = 0;
+
+        ChannelWindow(FileChannel ch, long end) {
+            this.ch = ch;
+            this.end = end;
+        }
+
+        int getInt(long pos) throws IOException {
+            if (pos < bufStart || pos + 4 > bufStart + buf.limit()) {
+                bufStart = pos;
+                buf = readAt(ch, pos, (int) Math.min(64 * 1024, end - pos));
+                if (buf.limit() < 4) return 0;
+            }
+            return buf.getInt((int) (pos - bufStart));
+        }
+    }
+
+    static ByteBuffer readAt(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(Math.max(0, len));
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos + b.position());
+            if (n <= 0) break;
+        }
+        b.flip();
+        return b;
+    }
+
+    private static byte[] toArray(ByteBuffer b) {
+        byte[] out = new byte[b.remaining()];
+        b.duplicate().get(out);
+        return out;
+    }
+
+    // Deshace la desincronización ID3: cada 0xFF 0x00 vuelve a ser 0xFF
+    static byte[] resync(byte[] in) {
+        byte[] out = new byte[in.length];
+        int n = 0;
+        for (int i = 0; i < in.length; i++) {
+            out[n++] = in[i];
+            if ((in[i] & 0xFF) == 0xFF && i + 1 < in.length && in[i + 1] == 0) i++;
+        }
+        byte[] trimmed = new byte[n];
+        System.arraycopy(out, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    private static int syncsafe(ByteBuffer b, int offset) {
+        return ((b.get(offset) & 0x7F) << 21) | ((b.get(offset + 1) & 0x7F) << 14)
+                | ((b.get(offset + 2) & 0x7F) << 7) | (b.get(offset + 3) & 0x7F);
+    }
+
+    private static String ascii(ByteBuffer b, int offset, int len) {
+        char[] c = new char[len];
+        for (int i = 0; i < len; i++) c[i] = (char) (b.get(offset + i) & 0xFF);
+        return new String(c);
+    }
+}
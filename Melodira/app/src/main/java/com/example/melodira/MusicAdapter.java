@@ -1,11 +1,8 @@
 package com.example.melodira;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.media.MediaMetadataRetriever;
-import android.os.Handler;
-import android.os.Looper;
-import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -14,150 +11,287 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.VH> implements SimpleItemTouchHelperCallback.ItemTouchHelperAdapter {
+/**
+ * Adaptador de la lista de canciones. Es de larga vida: la actividad lo crea una vez y le pasa
+ * listas nuevas con submitList (lista completa, resultados de búsqueda, páginas del escaneo).
+ * DiffUtil calcula las diferencias en un hilo de fondo y solo se animan/rebindean las filas que
+ * cambiaron, así el scroll no salta. Los ids son estables (ver {@link #stableIdOf}).
+ * <p>
+ * Con bibliotecas muy grandes la actividad le pasa en cambio una {@link PagedTrackList}
+ * ({@link #submitPaged}): sin diff, y las filas cuya página aún no llegó se dibujan de relleno.
+ * <p>
+ * Arrastrar: al empezar, la lista del differ pasa a ser una {@link ReorderableTrackList} y cada paso
+ * la mueve en el sitio (O(log n)) con notifyItemMoved. Al soltar se avisa una sola vez con la canción
+ * arrastrada y la que quedó delante ({@link OnItemMoved}), no con posiciones: si la cola cambió entretanto
+ * siguen valiendo. Cuando el servicio publica la cola nueva, el diff contra la lista ya movida sale vacío
+ * y no se anima nada dos veces. Si llega otra cola en mitad del arrastre, la lista movida se descarta y
+ * al soltar no se manda nada (la fila ya volvió a donde dice el servicio).
+ */
+public class MusicAdapter extends ListAdapter<Track, MusicAdapter.VH> implements SimpleItemTouchHelperCallback.ItemTouchHelperAdapter {
 
     public interface OnItemClick { void onItemClicked(int position); }
 
-    private List<Track> items;
+    /** after: la canción que quedó justo delante de moved (null si quedó la primera). */
+    public interface OnItemMoved { void onItemMoved(Track moved, Track after); }
+
+    // Payload de "solo cambió el resaltado": no se vuelve a tocar texto ni carátula
+    private static final Object PAYLOAD_SELECTION = new Object();
+
+    // Compartido por toda la app: un adaptador nuevo no crea hilos nuevos
+    private static final ExecutorService DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static final DiffUtil.ItemCallback<Track> DIFF_CALLBACK = new DiffUtil.ItemCallback<Track>() {
+        @Override
+        public boolean areItemsTheSame(Track a, Track b) {
+            return a == b || stableIdOf(a) == stableIdOf(b);
+        }
+
+        @Override
+        public boolean areContentsTheSame(Track a, Track b) {
+            return Objects.equals(a.title, b.title) && Objects.equals(a.artist, b.artist)
+                    && Objects.equals(a.album, b.album) && Objects.equals(a.path, b.path)
+                    && a.durationMs == b.durationMs;
+        }
+    };
 
     // --- CORRECCIÓN 1: Variable correcta para guardar la canción seleccionada ---
     private Track selectedTrack;
     private OnItemClick listener;
+    // Modo paginado: mientras no sea null manda sobre la lista de ListAdapter (que queda vacía)
+    private PagedTrackList paged;
+    private final PagedTrackList.Listener pageListener = (from, count) -> notifyItemRangeChanged(from, count);
+
+    // --- Arrastrar ---
+    private OnItemMoved moveListener;
+    private boolean dragEnabled;
+    private ReorderableTrackList dragList;       // La lista del differ mientras se reordena
+    private int submitted, committed;            // Generaciones de submitList: distintas = diff en curso
+    private int dragFrom = RecyclerView.NO_POSITION, dragTo;
+
+    // --- OPTIMIZACIÓN: Caché y cargador compartidos ---
+    private final ArtworkCache artworkCache;
+    private final CoverLoader coverLoader;
+
+    public MusicAdapter(Context context, OnItemClick l) {
+        super(new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).setBackgroundThreadExecutor(DIFF_EXECUTOR).build());
+        listener = l;
+        // La caché es de toda la app: sobrevive a que se cree otro adaptador
+        artworkCache = ArtworkCache.getInstance(context);
+        coverLoader = CoverLoader.getInstance(context);
+        setHasStableIds(true);
+    }
 
-    // --- OPTIMIZACIÓN: Caché y Hilos ---
-    private LruCache<String, Bitmap> memoryCache;
-    private ExecutorService executorService = Executors.newFixedThreadPool(4);
-    private Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Id estable de una canción: su Track.id (el _ID de MediaStore, o para las de SAF el hash de la
+     * ruta de Track.idForPath). Es el mismo en cada escaneo.
+     */
+    static long stableIdOf(Track t) {
+        return t.id;
+    }
 
-    // --- CORRECCIÓN 2: El constructor recibe Track y lo guarda en la variable correcta ---
-    public MusicAdapter(List<Track> list, Track currentTrack, OnItemClick l) {
-        items = list;
-        this.selectedTrack = currentTrack; // Guardamos el objeto Track
-        listener = l;
+    @Override
+    public long getItemId(int position) {
+        Track t = getItem(position);
+        return t != null ? stableIdOf(t) : RecyclerView.NO_ID;
+    }
 
-        // Configuramos la memoria caché (usamos 1/8 de la memoria disponible)
-        final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
-        final int cacheSize = maxMemory / 8;
-        memoryCache = new LruCache<String, Bitmap>(cacheSize) {
-            @Override
-            protected int sizeOf(String key, Bitmap bitmap) {
-                return bitmap.getByteCount() / 1024;
-            }
-        };
+    /**
+     * Pasa a mostrar una lista paginada (o cambia por otra, p. ej. porque el índice cambió). No hay
+     * diff: con los ids estables el RecyclerView mantiene el scroll. La lista la cierra quien la creó.
+     */
+    public void submitPaged(PagedTrackList list) {
+        if (list == paged) return;
+        if (paged != null) {
+            paged.setListener(null);
+            paged = list;
+            list.setListener(pageListener);
+            notifyDataSetChanged();
+            return;
+        }
+        super.submitList(null); // Quita las filas de la lista normal (sin diff)
+        paged = list;
+        list.setListener(pageListener);
+        notifyItemRangeInserted(0, list.size());
+    }
+
+    /** Vuelve a la lista normal (resultados de búsqueda, biblioteca pequeña). */
+    @Override
+    public void submitList(List<Track> list) {
+        if (paged != null) {
+            int count = paged.size();
+            paged.setListener(null);
+            paged = null;
+            notifyItemRangeRemoved(0, count);
+        }
+        if (list != dragList) dragList = null;
+        int generation = ++submitted;
+        // Si llega otra lista antes de terminar el diff, este callback no se llama (solo el de la última)
+        super.submitList(list, () -> committed = generation);
+    }
+
+    public boolean isPaged() {
+        return paged != null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return paged != null ? paged.size() : super.getItemCount();
+    }
+
+    // O(1): la lista del servicio es una IndexedTrackList y la paginada indexa sus páginas cargadas
+    // (una fila que no se ve no hay que resaltarla). Los resultados de búsqueda se recorren, son pocos
+    private int positionOf(Track t) {
+        return paged != null ? paged.indexOf(t) : getCurrentList().indexOf(t);
     }
 
     @NonNull
     @Override
     public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_track, parent, false);
-        return new VH(v);
+        VH holder = new VH(v);
+        // Un solo listener por ViewHolder (no uno nuevo en cada bind)
+        v.setOnClickListener(view -> {
+            int pos = holder.getBindingAdapterPosition();
+            if (pos == RecyclerView.NO_POSITION || getItem(pos) == null) return;
+            if (listener != null) listener.onItemClicked(pos);
+            // Actualizamos visualmente pasando el objeto Track
+            setSelected(getItem(pos));
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.contains(PAYLOAD_SELECTION)) {
+            bindSelection(holder, getItem(position));
+            return;
+        }
+        onBindViewHolder(holder, position);
     }
 
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
-        Track t = items.get(position);
+        Track t = getItem(position);
+        if (t == null) {
+            bindPlaceholder(holder); // Su página está de camino: llegará con notifyItemRangeChanged
+            return;
+        }
 
         holder.tvTitle.setText(t.title != null ? t.title : "Sin Título");
         holder.tvArtist.setText(t.artist != null ? t.artist : "Desconocido");
 
-        String imageKey = t.path;
-        Bitmap cachedBitmap = getBitmapFromMemCache(imageKey);
+        // acquire: el bitmap queda marcado como pintado y la caché no lo reutiliza mientras tanto
+        Bitmap cachedBitmap = artworkCache.acquire(t.path, ArtworkCache.Size.SMALL);
 
         if (cachedBitmap != null) {
             // A. TIENE PORTADA REAL EN CACHÉ
-            holder.ivMiniCover.setImageBitmap(cachedBitmap);
-            holder.ivMiniCover.clearColorFilter();
-            holder.ivMiniCover.setScaleType(ImageView.ScaleType.CENTER_CROP);
-            holder.ivMiniCover.setPadding(0, 0, 0, 0);
+            coverLoader.cancel(holder); // Lo que esta fila tuviera pendiente ya no sirve
+            holder.ivMiniCover.setTag(t.path);
+            showCover(holder, cachedBitmap);
 
         } else {
             // B. NO TIENE PORTADA
-            holder.ivMiniCover.setImageResource(R.drawable.ic_note_minimal);
-            holder.ivMiniCover.setColorFilter(android.graphics.Color.DKGRAY);
-            holder.ivMiniCover.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
-            int padding = 20;
-            holder.ivMiniCover.setPadding(padding, padding, padding, padding);
+            showNoCover(holder);
 
-            loadCoverAsync(holder, t.path, position);
+            holder.ivMiniCover.setTag(t.path);
+            if (artworkCache.isKnownMissing(t.path, ArtworkCache.Size.SMALL)) {
+                coverLoader.cancel(holder);
+            } else {
+                loadCoverAsync(holder, t.path);
+            }
         }
 
-        // --- CORRECCIÓN 3: Comparamos Objetos, no números ---
+        bindSelection(holder, t);
+    }
+
+    private void bindPlaceholder(VH holder) {
+        coverLoader.cancel(holder);
+        holder.tvTitle.setText("");
+        holder.tvArtist.setText("");
+        holder.ivMiniCover.setTag(null);
+        showNoCover(holder);
+        bindSelection(holder, null);
+    }
+
+    private void showNoCover(VH holder) {
+        releaseCover(holder);
+        holder.ivMiniCover.setImageResource(R.drawable.ic_note_minimal);
+        holder.ivMiniCover.setColorFilter(android.graphics.Color.DKGRAY);
+        holder.ivMiniCover.setScaleType(ImageView.ScaleType.CENTER_INSIDE);
+        int padding = 20;
+        holder.ivMiniCover.setPadding(padding, padding, padding, padding);
+    }
+
+    // --- CORRECCIÓN 3: Comparamos Objetos, no números ---
+    private void bindSelection(VH holder, Track t) {
         // Si la canción de esta fila (t) es igual a la seleccionada (selectedTrack)
-        if (selectedTrack != null && t.equals(selectedTrack)) {
+        if (selectedTrack != null && selectedTrack.equals(t)) {
             holder.card.setCardBackgroundColor(0xFFEAEAEA); // Gris seleccionado
         } else {
             holder.card.setCardBackgroundColor(0x00000000); // Transparente
         }
-
-        holder.itemView.setOnClickListener(v -> {
-            if (listener != null) listener.onItemClicked(holder.getAdapterPosition());
-            // Actualizamos visualmente pasando el objeto Track
-            setSelected(t);
-        });
     }
 
-    // --- CORRECCIÓN 4: setSelected ahora acepta Track ---
+    /** Mueve el resaltado: solo se rebindean la fila vieja y la nueva. */
     public void setSelected(Track track) {
+        if (track == selectedTrack) return;
+        int oldPos = selectedTrack != null ? positionOf(selectedTrack) : -1;
+        int newPos = track != null ? positionOf(track) : -1;
         this.selectedTrack = track;
-        notifyDataSetChanged(); // Refresca la lista para pintar el nuevo seleccionado
-    }
-
-    // Metodo para cargar en segundo plano
-    private void loadCoverAsync(VH holder, String path, int position) {
-        holder.ivMiniCover.setTag(path);
-
-        executorService.execute(() -> {
-            Bitmap bitmap = null;
-            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-            try {
-                mmr.setDataSource(path);
-                byte[] data = mmr.getEmbeddedPicture();
-                if (data != null) {
-                    BitmapFactory.Options options = new BitmapFactory.Options();
-                    options.inJustDecodeBounds = true;
-                    BitmapFactory.decodeByteArray(data, 0, data.length, options);
-
-                    options.inSampleSize = calculateInSampleSize(options, 60, 60);
-                    options.inJustDecodeBounds = false;
-
-                    bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
-                }
-            } catch (Exception e) {
-                // Fallo silencioso
-            } finally {
-                try { mmr.release(); } catch (Exception ignored) {}
-            }
+        if (oldPos >= 0) notifyItemChanged(oldPos, PAYLOAD_SELECTION);
+        if (newPos >= 0) notifyItemChanged(newPos, PAYLOAD_SELECTION);
+    }
 
-            if (bitmap != null) {
-                addBitmapToMemoryCache(path, bitmap);
-                Bitmap finalBitmap = bitmap;
-                mainHandler.post(() -> {
-                    if (path.equals(holder.ivMiniCover.getTag())) {
-                        holder.ivMiniCover.setImageBitmap(finalBitmap);
-                        holder.ivMiniCover.clearColorFilter();
-                        holder.ivMiniCover.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        holder.ivMiniCover.setPadding(0, 0, 0, 0);
-                    }
-                });
-            }
+    public Track getSelected() {
+        return selectedTrack;
+    }
+
+    // Metodo para cargar en segundo plano: el cargador compartido prioriza las filas pedidas más
+    // recientemente (las que están en pantalla) y cancela la petición anterior de este ViewHolder
+    private void loadCoverAsync(VH holder, String path) {
+        coverLoader.load(holder, path, ArtworkCache.Size.SMALL, CoverLoader.Priority.VISIBLE, (p, bitmap) -> {
+            if (bitmap == null || !p.equals(holder.ivMiniCover.getTag())) return;
+            // No pintamos el bitmap que llega tal cual: lo pedimos marcado (si lo expulsaron entretanto, sin carátula)
+            Bitmap acquired = artworkCache.acquire(p, ArtworkCache.Size.SMALL);
+            if (acquired != null) showCover(holder, acquired);
         });
     }
 
-    private void addBitmapToMemoryCache(String key, Bitmap bitmap) {
-        if (getBitmapFromMemCache(key) == null && bitmap != null) {
-            memoryCache.put(key, bitmap);
-        }
+    // bitmap ya viene de acquire; soltamos el que tuviera la fila antes
+    private void showCover(VH holder, Bitmap bitmap) {
+        if (holder.cover != bitmap) releaseCover(holder);
+        else artworkCache.release(bitmap); // El mismo otra vez: no contamos dos marcas
+        holder.cover = bitmap;
+        holder.ivMiniCover.setImageBitmap(bitmap);
+        holder.ivMiniCover.clearColorFilter();
+        holder.ivMiniCover.setScaleType(ImageView.ScaleType.CENTER_CROP);
+        holder.ivMiniCover.setPadding(0, 0, 0, 0);
     }
 
-    private Bitmap getBitmapFromMemCache(String key) {
-        return memoryCache.get(key);
+    // La fila salió de pantalla: su carátula ya no corre prisa
+    @Override
+    public void onViewRecycled(@NonNull VH holder) {
+        super.onViewRecycled(holder);
+        coverLoader.cancel(holder);
+        // Sin pintar y soltado: su bitmap ya puede volver al pool si la caché lo expulsa
+        holder.ivMiniCover.setImageDrawable(null);
+        releaseCover(holder);
+    }
+
+    private void releaseCover(VH holder) {
+        artworkCache.release(holder.cover);
+        holder.cover = null;
     }
 
     public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
@@ -175,33 +309,66 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.VH> implemen
         return inSampleSize;
     }
 
+    /** Quién aplica el movimiento a la cola del servicio al soltar; solo con la lista de la cola. */
+    public void setOnItemMoved(OnItemMoved listener) {
+        moveListener = listener;
+    }
+
+    /** Solo la cola completa se puede reordenar (en resultados de búsqueda las posiciones no son de la cola). */
+    public void setDragEnabled(boolean enabled) {
+        dragEnabled = enabled;
+    }
+
     @Override
-    public int getItemCount() { return items == null ? 0 : items.size(); }
+    public boolean isDragEnabled() {
+        return dragEnabled && paged == null;
+    }
 
     @Override
-    public void onItemMove(int fromPosition, int toPosition) {
-        if (fromPosition < toPosition) {
-            for (int i = fromPosition; i < toPosition; i++) {
-                Collections.swap(items, i, i + 1);
-            }
-        } else {
-            for (int i = fromPosition; i > toPosition; i--) {
-                Collections.swap(items, i, i - 1);
-            }
+    public void onDragStarted(int position) {
+        if (!isDragEnabled() || position == RecyclerView.NO_POSITION) return;
+        dragFrom = dragTo = position;
+        // Una copia reordenable por arrastre (O(n) una vez); la siguiente lista del servicio la sustituye
+        if (dragList == null) {
+            dragList = new ReorderableTrackList(getCurrentList());
+            submitList(dragList); // Mismo contenido: el diff no cambia nada
         }
+    }
+
+    // Mueve en el sitio la lista que tiene el differ: getItem ya lee el orden nuevo. O(log n)
+    // false mientras el differ no ha puesto dragList: la fila no se mueve y el siguiente onMove lo reintenta
+    @Override
+    public boolean onItemMove(int fromPosition, int toPosition) {
+        if (dragList == null || dragFrom == RecyclerView.NO_POSITION || committed != submitted) return false;
+        if (fromPosition == RecyclerView.NO_POSITION || toPosition == RecyclerView.NO_POSITION) return false;
+        dragList.move(fromPosition, toPosition);
         notifyItemMoved(fromPosition, toPosition);
+        dragTo = toPosition;
+        return true;
+    }
+
+    @Override
+    public void onDragFinished() {
+        int from = dragFrom, to = dragTo;
+        dragFrom = RecyclerView.NO_POSITION;
+        // dragList null: otra cola llegó durante el arrastre y sustituyó a la movida
+        if (from == RecyclerView.NO_POSITION || from == to || dragList == null || moveListener == null) return;
+        moveListener.onItemMoved(dragList.get(to), to > 0 ? dragList.get(to - 1) : null);
     }
 
     @Override
     public void onItemDismiss(int position) {
+        if (paged != null) return;
+        List<Track> items = new ArrayList<>(getCurrentList());
         items.remove(position);
-        notifyItemRemoved(position);
+        submitList(items);
     }
 
     public static class VH extends RecyclerView.ViewHolder {
         CardView card;
         TextView tvTitle, tvArtist;
         ImageView ivMiniCover;
+        Bitmap cover; // Marcado con ArtworkCache.acquire mientras esta fila lo pinta
 
         public VH(View v) {
             super(v);
@@ -213,7 +380,9 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.VH> implemen
     }
 
     // En MusicAdapter.java
+    // null solo en modo paginado: fila cuya página aún no llegó
+    @Override
     public Track getItem(int position) {
-        return items.get(position);
+        return paged != null ? paged.get(position) : super.getItem(position);
     }
 }
@@ -0,0 +1,209 @@
+package com.example.melodira;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Biblioteca en memoria compartida por toda la app (una sola instancia por proceso).
+ * Se carga una vez con el resultado del escaneo y después solo se le aplican LibraryDelta,
+ * sin reconstruirla. Las canciones se guardan en un {@link TrackStore}: un Track por canción, con artista
+ * y álbum compartidos, que es el mismo objeto que acaba en la cola del servicio. Usar solo desde el hilo
+ * principal.
+ */
+public class MusicLibrary {
+
+    public interface Listener {
+        void onLibraryChanged(LibraryDelta delta);
+    }
+
+    // Mismo orden que el escaneo y que LibraryIndex (ORDER BY título COLLATE NOCASE, _ID): por título con
+    // compareTitles y, a igual título, por id. Nunca hay empates entre canciones distintas, así la cola
+    // y un Cursor del índice con las mismas canciones tienen el mismo orden fila a fila
+    public static final Comparator<Track> TITLE_ORDER = (a, b) -> {
+        int c = compareTitles(a.title, b.title);
+        return c != 0 ? c : Long.compare(a.id, b.id);
+    };
+
+    /**
+     * Compara títulos igual que COLLATE NOCASE de SQLite: solo A-Z se pasan a minúsculas (no las letras
+     * con tilde ni otros alfabetos) y el resto va por punto de código, que es el orden de los bytes UTF-8.
+     * null va antes que cualquier título, como NULL en SQLite.
+     */
+    public static int compareTitles(String a, String b) {
+        if (a == null || b == null) return a == null ? (b == null ? 0 : -1) : 1;
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n) {
+            int ca = a.codePointAt(i), cb = b.codePointAt(i);
+            if (ca != cb) {
+                if (ca >= 'A' && ca <= 'Z') ca += 'a' - 'A';
+                if (cb >= 'A' && cb <= 'Z') cb += 'a' - 'A';
+                if (ca != cb) return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca); // Iguales tras plegar: mismo tamaño en los dos
+        }
+        return Integer.compare(a.length(), b.length());
+    }
+
+    private static final MusicLibrary INSTANCE = new MusicLibrary();
+
+    public static MusicLibrary getInstance() {
+        return INSTANCE;
+    }
+
+    // Las canciones; el orden por título va aparte (filas de store)
+    private final TrackStore store = new TrackStore();
+    private int[] order = new int[0];
+    private int size;
+    private final List<Track> tracksView = new TracksView();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private boolean loaded;
+
+    private MusicLibrary() {}
+
+    public void setTracks(List<Track> list) {
+        store.clear();
+        size = 0;
+        addTracks(list);
+    }
+
+    /**
+     * Carga inicial por páginas (escaneo en streaming): inserta cada canción en su posición por título.
+     * No avisa a los listeners; quien carga decide qué hacer con la cola del servicio.
+     * Devuelve las canciones tal como quedaron guardadas (los Track de la biblioteca, con artista y álbum
+     * compartidos): es lo que hay que pasar a la cola, no la página original.
+     */
+    public List<Track> addTracks(List<Track> page) {
+        loaded = true;
+        List<Track> stored = new ArrayList<>(page.size());
+        for (Track t : page) {
+            if (store.rowOf(t.id) >= 0) continue;
+            int row = store.add(t);
+            // Si la página viene ordenada (desde el índice) esto siempre cae al final
+            insertInOrder(row);
+            stored.add(store.track(row));
+        }
+        return stored;
+    }
+
+    /** true si ya se cargó en este proceso (después solo se le aplican deltas). */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Vista de solo lectura en orden por título; get devuelve el Track guardado, sin copiarlo. */
+    public List<Track> getTracks() {
+        return tracksView;
+    }
+
+    public Track findById(long id) {
+        int row = store.rowOf(id);
+        return row >= 0 ? store.track(row) : null;
+    }
+
+    public void addListener(Listener l) { listeners.add(l); }
+
+    public void removeListener(Listener l) { listeners.remove(l); }
+
+    /**
+     * Aplica los cambios en el sitio:
+     * - Modificadas: se reescribe su fila (si cambió el título, también su posición).
+     * - Borradas: se liberan sus filas y se quitan del orden en una sola pasada.
+     * - Nuevas: se insertan en su posición ordenada por título.
+     * Después se avisa a los listeners con el mismo delta, pero con las canciones ya como los Track de la
+     * biblioteca (la cola del servicio las guarda así, con los textos compartidos).
+     */
+    public void applyDelta(LibraryDelta delta) {
+        if (delta.isEmpty()) return;
+
+        List<Track> updated = new ArrayList<>(delta.updated.size());
+        for (Track u : delta.updated) {
+            int row = store.rowOf(u.id);
+            if (row < 0) continue;
+            boolean moved = store.compareTitle(row, u.title) != 0;
+            if (moved) removeFromOrder(row);
+            store.set(row, u);
+            if (moved) insertInOrder(row);
+            updated.add(store.track(row));
+        }
+
+        if (!delta.removedIds.isEmpty()) {
+            Set<Integer> gone = new HashSet<>();
+            for (long id : delta.removedIds) {
+                int row = store.rowOf(id);
+                if (row >= 0) gone.add(row);
+            }
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!gone.contains(order[i])) order[kept++] = order[i];
+            }
+            size = kept;
+            for (int row : gone) store.remove(row);
+        }
+
+        List<Track> added = new ArrayList<>(delta.added.size());
+        for (Track t : delta.added) {
+            if (store.rowOf(t.id) >= 0) continue;
+            int row = store.add(t);
+            insertInOrder(row);
+            added.add(store.track(row));
+        }
+
+        LibraryDelta stored = new LibraryDelta(added, updated, delta.removedIds);
+        for (Listener l : listeners) {
+            l.onLibraryChanged(stored);
+        }
+    }
+
+    // Búsqueda binaria sobre el orden de TITLE_ORDER (sin empates: a igual título decide el id)
+    private void insertInOrder(int row) {
+        Track t = store.track(row);
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (TITLE_ORDER.compare(store.track(order[mid]), t) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        if (size == order.length) order = Arrays.copyOf(order, Math.max(16, size * 2));
+        System.arraycopy(order, lo, order, lo + 1, size - lo);
+        order[lo] = row;
+        size++;
+    }
+
+    private void removeFromOrder(int row) {
+        for (int i = 0; i < size; i++) {
+            if (order[i] == row) {
+                System.arraycopy(order, i + 1, order, i, size - i - 1);
+                size--;
+                return;
+            }
+        }
+    }
+
+    private final class TracksView extends AbstractList<Track> implements RandomAccess {
+        @Override
+        public Track get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Índice " + index);
+            return store.track(order[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /** Posición donde insertar t en una lista ordenada por título (búsqueda binaria). */
+    public static int insertionPoint(List<Track> sorted, Track t) {
+        int pos = Collections.binarySearch(sorted, t, TITLE_ORDER);
+        return pos >= 0 ? pos + 1 : -(pos + 1);
+    }
+}
@@ -7,77 +7,291 @@ import android.database.Cursor;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 import android.text.TextUtils;
 import android.util.Log;
 
-import androidx.documentfile.provider.DocumentFile;
-
+import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MusicScanner {
     private static final String TAG = "MusicScanner";
     private static final String PREFS = "melodira_prefs";
     private static final String KEY_TREE_URI = "tree_uri";
+    private static final String KEY_MS_VERSION = "mediastore_version";
+    private static final String KEY_MS_GENERATION = "mediastore_generation";
+
+    private static final String MUSIC_SELECTION = MediaStore.Audio.Media.IS_MUSIC + " != 0";
+    private static final int ID_CHUNK = 500;
+
+    private static final String KEY_SCAN_WORKERS = "scan_workers";
+    // Cola entre la enumeración y los workers: suficiente para que no se queden sin trabajo
+    private static final int SCAN_QUEUE_CAPACITY = 64;
+
+    private static final String AUTHORITY_EXTERNAL_STORAGE = "com.android.externalstorage.documents";
+    private static final String AUTHORITY_DOWNLOADS = "com.android.providers.downloads.documents";
+    private static final String AUTHORITY_MEDIA = "com.android.providers.media.documents";
+
+    // 0._ID 1.RUTA 2.TÍTULO 3.ARTISTA 4.ÁLBUM 5.DURACIÓN 6.DATE_MODIFIED 7.SIZE
+    private static final String[] FULL_PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.DATA,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.DATE_MODIFIED,
+            MediaStore.Audio.Media.SIZE
+    };
+
+    /** Tamaño de página por defecto del escaneo en streaming. */
+    public static final int PAGE_SIZE = 200;
+
+    /** Recibe la biblioteca por páginas mientras se escanea. Se llama desde el hilo del escaneo. */
+    public interface PageListener {
+        /** {@code page} es una lista nueva en cada llamada: se puede guardar tal cual. */
+        void onPage(List<Track> page);
+    }
 
     /**
-     * Main entry: intenta MediaStore; si no encuentra nada intenta escanear un DocumentFile tree
-     * previamente guardado en SharedPreferences (SAF). Devuelve lista (posible vacía).
+     * Main entry: sincroniza el índice persistente con MediaStore (solo lo que cambió)
+     * y devuelve la biblioteca desde el índice. Devuelve lista (posible vacía).
      */
     public static List<Track> scanDownloadsAndDocuments(Context context) {
-        List<Track> list = new ArrayList<>();
+        LibraryIndex index = LibraryIndex.getInstance(context);
+        try {
+            long start = SystemClock.elapsedRealtime();
+            LibraryDelta delta = syncMediaStoreIndex(context, index);
+            Log.d(TAG, "Índice sincronizado: " + delta + " en "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return index.loadTracks();
+    }
 
-        String[] projection = {
-                MediaStore.Audio.Media.DATA,     // 0. LA RUTA REAL
-                MediaStore.Audio.Media.TITLE,    // 1. EL TÍTULO
-                MediaStore.Audio.Media.ARTIST,
-                MediaStore.Audio.Media.ALBUM,
-                MediaStore.Audio.Media.DURATION
+    /**
+     * Versión en streaming de scanDownloadsAndDocuments: entrega la biblioteca por páginas a medida
+     * que se lee, para poder empezar a reproducir sin esperar a tenerla entera.
+     * - Si ya hay índice: las páginas salen de él (ordenadas por título) y DESPUÉS se sincroniza con
+     *   MediaStore. Lo que haya cambiado se devuelve como LibraryDelta para aplicarlo con
+     *   MusicLibrary.applyDelta, igual que los cambios de LibraryWatcher.
+     * - Primer arranque (índice vacío): las páginas salen de la lectura de MediaStore mientras se llena
+     *   el índice, sin orden entre páginas. Devuelve LibraryDelta.EMPTY (todo llegó en las páginas).
+     * Bloquea hasta terminar: llamar desde un hilo de fondo.
+     */
+    public static LibraryDelta scanDownloadsAndDocuments(Context context, int pageSize, PageListener listener) {
+        LibraryIndex index = LibraryIndex.getInstance(context);
+        long start = SystemClock.elapsedRealtime();
+        try {
+            if (!index.isEmpty()) {
+                index.loadTracks(pageSize, listener);
+                Log.d(TAG, "Índice entregado en " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+                LibraryDelta delta = syncMediaStoreIndex(context, index);
+                Log.d(TAG, "Índice sincronizado: " + delta + " en "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+                return delta;
+            }
+
+            LibraryDelta delta = syncMediaStoreIndex(context, index, pageSize, listener);
+            Log.d(TAG, "Índice creado: " + delta + " en " + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return LibraryDelta.EMPTY;
+    }
+
+    /**
+     * Compara MediaStore con el índice y aplica solo las altas, cambios y bajas.
+     * - Android 11+: si la versión y la generación de MediaStore no cambiaron, no se consulta nada.
+     *   Si solo avanzó la generación, se leen únicamente las filas con GENERATION_MODIFIED mayor.
+     * - Versiones anteriores (o si MediaStore cambió de versión): consulta ligera de
+     *   (_ID, DATA, DATE_MODIFIED, SIZE) y lectura completa solo de las filas nuevas o modificadas.
+     * Devuelve las altas, cambios y bajas aplicadas (vacío si no cambió nada).
+     * Es synchronized porque la llaman tanto el escaneo inicial como LibraryWatcher.
+     */
+    static LibraryDelta syncMediaStoreIndex(Context context, LibraryIndex index) {
+        return syncMediaStoreIndex(context, index, ID_CHUNK, null);
+    }
+
+    // Si pageListener no es null, las filas nuevas leídas de MediaStore se le entregan por páginas
+    // (de como mucho pageSize) a medida que se leen, antes de escribir el índice.
+    private static synchronized LibraryDelta syncMediaStoreIndex(Context context, LibraryIndex index,
+                                                                 int pageSize, PageListener pageListener) {
+        SharedPreferences p = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String storedVersion = p.getString(KEY_MS_VERSION, null);
+        long storedGeneration = p.getLong(KEY_MS_GENERATION, -1);
+
+        String version = null;
+        long generation = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            version = MediaStore.getVersion(context);
+            generation = MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL);
+        }
+
+        boolean sameVersion = version != null && version.equals(storedVersion);
+        List<Long> deleted = new ArrayList<>();
+        if (storedVersion != null && !sameVersion) {
+            // MediaStore se reconstruyó: los _ID viejos ya no significan nada
+            deleted.addAll(index.loadSignatures().keySet());
+            index.clear();
+        }
+        if (sameVersion && generation == storedGeneration) {
+            return LibraryDelta.EMPTY;
+        }
+
+        Map<Long, LibraryIndex.Signature> known = index.loadSignatures();
+        List<LibraryIndex.Entry> upserts = new ArrayList<>();
+
+        if (sameVersion && storedGeneration >= 0 && !known.isEmpty()) {
+            collectChangesSinceGeneration(context, storedGeneration, known, upserts, deleted);
+        } else {
+            collectChangesBySignature(context, known, upserts, deleted, pageSize, pageListener);
+        }
+
+        index.applyChanges(upserts, deleted);
+
+        SharedPreferences.Editor editor = p.edit();
+        if (version != null) {
+            editor.putString(KEY_MS_VERSION, version).putLong(KEY_MS_GENERATION, generation);
+        } else {
+            editor.remove(KEY_MS_VERSION).remove(KEY_MS_GENERATION);
+        }
+        editor.apply();
+
+        List<Track> added = new ArrayList<>();
+        List<Track> updated = new ArrayList<>();
+        for (LibraryIndex.Entry e : upserts) {
+            if (known.containsKey(e.track.id)) updated.add(e.track);
+            else added.add(e.track);
+        }
+        return new LibraryDelta(added, updated, deleted);
+    }
+
+    // Android 11+: solo leemos las filas tocadas desde la última generación, y la lista de _ID para las bajas
+    private static void collectChangesSinceGeneration(Context context, long sinceGeneration,
+                                                      Map<Long, LibraryIndex.Signature> known,
+                                                      List<LibraryIndex.Entry> upserts, List<Long> deleted) {
+        ContentResolver cr = context.getContentResolver();
+        String selection = MUSIC_SELECTION + " AND " + MediaStore.Audio.Media.GENERATION_MODIFIED + " > ?";
+        String[] args = {String.valueOf(sinceGeneration)};
+
+        try (Cursor c = cr.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, FULL_PROJECTION, selection, args, null)) {
+            if (c != null) {
+                while (c.moveToNext()) {
+                    LibraryIndex.Entry e = readEntry(c);
+                    if (e != null) {
+                        upserts.add(e);
+                    } else if (known.containsKey(c.getLong(0))) {
+                        // Ya no es un .mp3 (renombrado, etc.)
+                        deleted.add(c.getLong(0));
+                    }
+                }
+            }
+        }
+
+        Set<Long> present = new HashSet<>();
+        try (Cursor c = cr.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
+                new String[]{MediaStore.Audio.Media._ID}, MUSIC_SELECTION, null, null)) {
+            if (c != null) {
+                while (c.moveToNext()) present.add(c.getLong(0));
+            }
+        }
+        for (Long id : known.keySet()) {
+            if (!present.contains(id)) deleted.add(id);
+        }
+    }
+
+    // Camino general: consulta ligera de firmas y lectura completa solo de lo nuevo o modificado
+    private static void collectChangesBySignature(Context context, Map<Long, LibraryIndex.Signature> known,
+                                                  List<LibraryIndex.Entry> upserts, List<Long> deleted,
+                                                  int pageSize, PageListener pageListener) {
+        ContentResolver cr = context.getContentResolver();
+        String[] light = {
+                MediaStore.Audio.Media._ID,
+                MediaStore.Audio.Media.DATA,
+                MediaStore.Audio.Media.DATE_MODIFIED,
+                MediaStore.Audio.Media.SIZE
         };
 
-        String selection = MediaStore.Audio.Media.IS_MUSIC + " != 0";
-        String sortOrder = MediaStore.Audio.Media.TITLE + " ASC";
-
-        try (Cursor cursor = context.getContentResolver().query(
-                MediaStore.Audio.Media.EXTERNAL_CONTENT_URI,
-                projection,
-                selection,
-                null,
-                sortOrder
-        )) {
-            if (cursor != null && cursor.moveToFirst()) {
-                int colData = cursor.getColumnIndex(MediaStore.Audio.Media.DATA);
-                int colTitle = cursor.getColumnIndex(MediaStore.Audio.Media.TITLE);
-                int colArtist = cursor.getColumnIndex(MediaStore.Audio.Media.ARTIST);
-                int colAlbum = cursor.getColumnIndex(MediaStore.Audio.Media.ALBUM);
-                int colDur = cursor.getColumnIndex(MediaStore.Audio.Media.DURATION);
-
-                do {
-                    // Obtenemos los datos de la base de datos
-                    String realPath = cursor.getString(colData);   // RUTA (/storage/...)
-                    String realTitle = cursor.getString(colTitle); // TÍTULO (Nombre canción)
-                    String artist = (colArtist != -1) ? cursor.getString(colArtist) : "Desconocido";
-                    String album = (colAlbum != -1) ? cursor.getString(colAlbum) : "Desconocido";
-                    long duration = (colDur != -1) ? cursor.getLong(colDur) : 0;
-
-                    // Filtro de seguridad
-                    if (realPath != null && realPath.endsWith(".mp3")) {
-
-                        // CORRECCIÓN: Aseguramos el orden correcto:
-                        // 1. path, 2. title, 3. artist, 4. album, 5. duration
-                        Track t = new Track(realPath, realTitle, artist, album, duration);
-
-                        list.add(t);
+        List<Long> toFetch = new ArrayList<>();
+        Set<Long> present = new HashSet<>();
+        try (Cursor c = cr.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, light, MUSIC_SELECTION, null, null)) {
+            if (c != null) {
+                while (c.moveToNext()) {
+                    long id = c.getLong(0);
+                    String data = c.getString(1);
+                    if (!isIndexableMp3(data)) continue;
+
+                    present.add(id);
+                    LibraryIndex.Signature sig = known.get(id);
+                    if (sig == null || !sig.matches(c.getLong(2), c.getLong(3))) {
+                        toFetch.add(id);
                     }
+                }
+            }
+        }
+
+        for (Long id : known.keySet()) {
+            if (!present.contains(id)) deleted.add(id);
+        }
 
-                } while (cursor.moveToNext());
+        // Lectura completa por bloques (SQLite limita el número de parámetros por consulta).
+        // En streaming cada bloque es una página.
+        int chunkSize = Math.max(1, Math.min(pageSize, ID_CHUNK));
+        for (int from = 0; from < toFetch.size(); from += chunkSize) {
+            List<Long> chunk = toFetch.subList(from, Math.min(from + chunkSize, toFetch.size()));
+            StringBuilder sel = new StringBuilder(MediaStore.Audio.Media._ID).append(" IN (");
+            String[] args = new String[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                sel.append(i == 0 ? "?" : ",?");
+                args[i] = String.valueOf(chunk.get(i));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            sel.append(')');
+
+            List<Track> page = pageListener != null ? new ArrayList<>(chunk.size()) : null;
+            try (Cursor c = cr.query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, FULL_PROJECTION,
+                    sel.toString(), args, null)) {
+                if (c == null) continue;
+                while (c.moveToNext()) {
+                    LibraryIndex.Entry e = readEntry(c);
+                    if (e == null) continue;
+                    upserts.add(e);
+                    if (page != null) page.add(e.track);
+                }
+            }
+            if (page != null && !page.isEmpty()) pageListener.onPage(page);
         }
-        return list;
+    }
+
+    // Lee una fila con FULL_PROJECTION. Devuelve null si no es un .mp3 indexable.
+    private static LibraryIndex.Entry readEntry(Cursor c) {
+        String realPath = c.getString(1);
+        if (!isIndexableMp3(realPath)) return null;
+
+        long id = c.getLong(0);
+        String realTitle = c.getString(2);
+        String artist = c.isNull(3) ? "Desconocido" : c.getString(3);
+        String album = c.isNull(4) ? "Desconocido" : c.getString(4);
+        long duration = c.isNull(5) ? 0 : c.getLong(5);
+
+        Track t = new Track(id, realPath, realTitle, artist, album, duration);
+        return new LibraryIndex.Entry(t, c.getLong(6), c.getLong(7));
+    }
+
+    // Mismo filtro de seguridad que el escaneo original
+    private static boolean isIndexableMp3(String path) {
+        return path != null && path.endsWith(".mp3");
     }
 
     /**
@@ -142,89 +356,150 @@ public class MusicScanner {
     }
 
     /**
-     * Escanea un treeUri (DocumentFile) recursivamente y devuelve todos los mp3 encontrados.
+     * Escanea un treeUri (SAF) recursivamente y devuelve todos los mp3 encontrados.
+     * Es un pipeline: SafTreeScanner enumera (una consulta por carpeta, carpetas en paralelo)
+     * y varios workers leen las etiquetas a la vez (ver scanWorkerCount).
      * Debes asegurarte de haber tomado persistable permissions antes de llamar a esto.
      */
+    public static List<Track> scanDocumentTree(Context context, Uri treeUri) {
+        List<Track> tracks = new ArrayList<>();
+        runDocumentTreePipeline(context, treeUri, tracks::add);
 
-    /*
-    public static List<Track> scanDocumentTree(Context ctx, Uri treeUri) {
-        List<Track> out = new ArrayList<>();
+        // Los workers terminan en cualquier orden: dejamos el mismo orden que MediaStore
+        Collections.sort(tracks, MusicLibrary.TITLE_ORDER);
+        return tracks;
+    }
+
+    /**
+     * Versión en streaming de scanDocumentTree: cada vez que los workers completan pageSize canciones
+     * se entregan como una página (ordenada por título dentro de sí misma). Devuelve el total.
+     */
+    public static int scanDocumentTree(Context context, Uri treeUri, int pageSize, PageListener listener) {
+        List<Track> page = new ArrayList<>();
+        int[] total = {0};
+        runDocumentTreePipeline(context, treeUri, t -> {
+            page.add(t);
+            total[0]++;
+            if (page.size() >= pageSize) {
+                deliverPage(page, listener);
+            }
+        });
+        deliverPage(page, listener);
+        return total[0];
+    }
+
+    private static void deliverPage(List<Track> page, PageListener listener) {
+        if (page.isEmpty()) return;
+        List<Track> out = new ArrayList<>(page);
+        Collections.sort(out, MusicLibrary.TITLE_ORDER);
+        page.clear();
+        listener.onPage(out);
+    }
+
+    private static void runDocumentTreePipeline(Context context, Uri treeUri, ScanPipeline.Collector<Track> collector) {
+        ScanPipeline<SafTreeScanner.Entry, Track> pipeline =
+                new ScanPipeline<>(scanWorkerCount(context, treeUri), SCAN_QUEUE_CAPACITY);
         try {
-            DocumentFile tree = DocumentFile.fromTreeUri(ctx, treeUri);
-            if (tree == null || !tree.exists()) return out;
-            traverseDocumentFile(tree, out);
-        } catch (Exception e) {
-            Log.w(TAG, "scanDocumentTree error: " + e.getMessage());
+            ScanPipeline.Stats stats = pipeline.run(
+                    sink -> SafTreeScanner.walk(context, treeUri, sink),
+                    file -> readTrack(context, file),
+                    collector);
+            Log.d(TAG, "Escaneo SAF: " + stats);
+            if (stats.enumerationError() != null) {
+                Log.w(TAG, "Error enumerando " + treeUri + ": " + stats.enumerationError().getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return out;
     }
-    */
 
-    public static List<Track> scanDocumentTree(Context context, Uri treeUri) {
-        List<Track> tracks = new ArrayList<>();
-        DocumentFile dir = DocumentFile.fromTreeUri(context, treeUri);
-
-        if (dir != null && dir.isDirectory()) {
-            for (DocumentFile file : dir.listFiles()) {
-                if (file.isFile() && file.getName() != null && file.getName().toLowerCase().endsWith(".mp3")) {
-
-                    // 1. Preparamos las variables
-                    String path = file.getUri().toString();
-                    String title = file.getName().replace(".mp3", "");
-                    String artist = "Desconocido";
-                    String album = "Desconocido";
-                    long duration = 0;
-
-                    // 2. Intentamos leer metadatos reales
-                    MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-                    try {
-                        mmr.setDataSource(context, file.getUri());
-
-                        String metaTitle = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-                        String metaArtist = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
-                        String metaAlbum = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
-                        String metaDuration = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-
-                        if (metaTitle != null && !metaTitle.isEmpty()) title = metaTitle;
-                        if (metaArtist != null && !metaArtist.isEmpty()) artist = metaArtist;
-                        if (metaAlbum != null) album = metaAlbum;
-                        if (metaDuration != null) duration = Long.parseLong(metaDuration);
-
-                    } catch (Exception e) {
-                        // Si falla, se quedan los valores por defecto definidos arriba
-                    } finally {
-                        try { mmr.release(); } catch (Exception ignored) {}
-                    }
+    // Worker del pipeline: metadatos de un archivo
+    private static Track readTrack(Context context, SafTreeScanner.Entry file) {
+
+        // 1. Preparamos las variables
+        String path = file.uri.toString();
+        String title = file.name != null ? file.name.replace(".mp3", "") : "Sin Título";
+        String artist = "Desconocido";
+        String album = "Desconocido";
+        long duration = 0;
+
+        // 2. Intentamos leer metadatos reales: primero las etiquetas ID3 directamente del archivo
+        Mp3TagReader.Result tags = readTags(context, file.uri);
+        if (tags != null) {
+            if (!TextUtils.isEmpty(tags.title)) title = tags.title;
+            if (!TextUtils.isEmpty(tags.artist)) artist = tags.artist;
+            if (tags.album != null) album = tags.album;
+            duration = tags.durationMs;
+        }
 
-                    // 3. AHORA SÍ creamos el Track con todos los datos juntos
-                    // CORRECCIÓN: Usamos el constructor con argumentos
-                    Track t = new Track(path, title, artist, album, duration);
-                    tracks.add(t);
-                }
+        // Solo si no se pudo parsear (o no salió la duración) pagamos el MediaMetadataRetriever
+        if (tags == null || duration <= 0) {
+            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
+            try {
+                mmr.setDataSource(context, file.uri);
+
+                String metaTitle = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+                String metaArtist = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
+                String metaAlbum = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
+                String metaDuration = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+
+                if (metaTitle != null && !metaTitle.isEmpty()) title = metaTitle;
+                if (metaArtist != null && !metaArtist.isEmpty()) artist = metaArtist;
+                if (metaAlbum != null) album = metaAlbum;
+                if (metaDuration != null) duration = Long.parseLong(metaDuration);
+
+            } catch (Exception e) {
+                // Si falla, se quedan los valores por defecto definidos arriba
+            } finally {
+                try { mmr.release(); } catch (Exception ignored) {}
             }
         }
-        return tracks;
+
+        // 3. Creamos el Track con todos los datos juntos
+        return new Track(path, title, artist, album, duration);
     }
 
-    private static void traverseDocumentFile(DocumentFile node, List<Track> out) {
-        if (node == null || !node.exists()) return;
-        if (node.isDirectory()) {
-            for (DocumentFile child : node.listFiles()) {
-                traverseDocumentFile(child, out);
-            }
-        } else if (node.isFile()) {
-            String name = node.getName() != null ? node.getName() : "";
-            if (name.toLowerCase().endsWith(".mp3")) {
+    /**
+     * Cuántos workers de metadatos usar para este árbol: el valor guardado con setScanWorkerCount,
+     * o si es 0 (automático) según los núcleos y si el árbol está en memoria interna, SD o en la nube.
+     */
+    static int scanWorkerCount(Context ctx, Uri treeUri) {
+        int configured = ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE).getInt(KEY_SCAN_WORKERS, 0);
+        if (configured > 0) return configured;
+        return ScanPipeline.defaultWorkerCount(storageOf(treeUri), Runtime.getRuntime().availableProcessors());
+    }
 
-                String path = node.getUri().toString();
-                String title = name.replace(".mp3", ""); // Quitamos la extensión para que se vea mejor
+    // 0 = automático
+    public static void setScanWorkerCount(Context ctx, int workers) {
+        SharedPreferences p = ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        p.edit().putInt(KEY_SCAN_WORKERS, Math.max(0, workers)).apply();
+    }
 
-                // CORRECCIÓN: Creamos el Track con datos directos
-                // Como este método es simple, no calculamos duración ni artista
-                Track t = new Track(path, title, "Desconocido", "Desconocido", 0);
+    private static ScanPipeline.Storage storageOf(Uri treeUri) {
+        String authority = treeUri.getAuthority();
+        if (AUTHORITY_EXTERNAL_STORAGE.equals(authority)) {
+            // Los ids de este proveedor son "<volumen>:<ruta>"; "primary" es la memoria interna
+            String docId = DocumentsContract.getTreeDocumentId(treeUri);
+            return docId != null && docId.startsWith("primary:")
+                    ? ScanPipeline.Storage.INTERNAL : ScanPipeline.Storage.REMOVABLE;
+        }
+        if (AUTHORITY_DOWNLOADS.equals(authority) || AUTHORITY_MEDIA.equals(authority)) {
+            return ScanPipeline.Storage.INTERNAL;
+        }
+        return ScanPipeline.Storage.REMOTE;
+    }
 
-                out.add(t);
+    // Lee las etiquetas con Mp3TagReader sobre el descriptor del documento. null si no se pudo.
+    private static Mp3TagReader.Result readTags(Context context, Uri uri) {
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r")) {
+            if (pfd == null) return null;
+            try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+                 FileChannel ch = in.getChannel()) {
+                return Mp3TagReader.read(ch);
             }
+        } catch (Exception e) {
+            Log.w(TAG, "No se pudieron leer las etiquetas de " + uri + ": " + e.getMessage());
+            return null;
         }
     }
 
@@ -10,32 +10,39 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.IntentFilter;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.media.MediaMetadataRetriever;
-import android.media.MediaPlayer;
-import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.ValueAnimator;
+import android.view.Choreographer;
 
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servicio de reproducción. Un solo escritor: todo lo que toca el reproductor o la cola se ejecuta
+ * como comando en el hilo "Playback" (ver {@link #command}), sea quien sea el que llama (actividades,
+ * notificación, MediaSession, foco de audio, LibraryWatcher). Los getters no tocan nada de eso: leen la
+ * última {@link PlaybackSnapshot} publicada, así que se pueden llamar desde cualquier hilo.
+ */
 public class MusicService extends Service {
 
-    public static final String ACTION_TRACK_CHANGED = "com.example.melodira.TRACK_CHANGED";
-    public static final String ACTION_QUEUE_UPDATED = "com.example.melodira.QUEUE_UPDATED";
-
     // Acciones para los botones de la notificación
     public static final String ACTION_PLAY = "com.example.melodira.ACTION_PLAY";
     public static final String ACTION_PAUSE = "com.example.melodira.ACTION_PAUSE";
@@ -44,20 +51,76 @@ public class MusicService extends Service {
 
     private static final String CHANNEL_ID = "MusicChannel";
 
+    private static final String PREFS = "melodira_prefs";
+    private static final String KEY_CROSSFADE_MS = "crossfade_ms";
+    private static final int MAX_CROSSFADE_MS = 12000;
+
+    // Estado de la cola en disco para arrancar en caliente (ver QueueSnapshot)
+    private static final String STATE_FILE = "queue_state.bin";
+    private static final long SAVE_DELAY_MS = 1000;          // Como mucho una escritura por segundo
+    private static final long SAVE_WHILE_PLAYING_MS = 15000; // Sonando, la posición avanza sin comandos
+
     private final IBinder binder = new LocalBinder();
-    private MediaPlayer player;
-    private List<Track> playlist = new ArrayList<>();
-    private int currentIndex = -1;
 
-    private List<Track> playbackOrder;
-    private boolean isShuffle = false;
-    private boolean isRepeatOne = false;
+    // Hilo de comandos: aquí se crea el motor (y le llegan los callbacks de MediaPlayer)
+    private HandlerThread playbackThread;
+    private Handler playbackHandler;
+    // Lo que leen los demás hilos; se reemplaza entera después de cada comando
+    private volatile PlaybackSnapshot snapshot = PlaybackSnapshot.EMPTY;
+    // Las fotos con lo que cambió, entregadas en el hilo principal una vez por frame. El servicio se
+    // construye en el hilo principal: este es su Choreographer (postFrameCallback vale desde cualquier hilo)
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final PlaybackStateBus stateBus = new PlaybackStateBus(r -> choreographer.postFrameCallback(t -> r.run()));
+    // Sube con cada cambio de la cola o del orden: solo entonces se copian las listas de la foto
+    private int queueVersion;
+    private int publishedQueueVersion = -1;
+
+    // --- Solo desde el hilo de reproducción ---
+    // Dos MediaPlayer con prepareAsync y la siguiente canción ya encadenada (ver PlaybackEngine)
+    private PlaybackEngine engine;
+    // Índice en la cola de la canción que el motor tiene precargada, -1 si ninguna
+    private int preloadedIndex = -1;
+    // Cola, orden de reproducción (aleatorio o no) y canción actual: todo lo lleva QueueManager
+    private final QueueManager queue = new QueueManager();
 
     private MediaSessionCompat mediaSession;
     private android.media.AudioManager audioManager;
     private android.media.AudioFocusRequest focusRequest; // Para Android 8.0+
     private boolean resumeOnFocusGain = false; // ¿Debemos reanudar si nos interrumpieron momentáneamente?
 
+    // Vigila MediaStore y nos pasa solo los cambios (altas/bajas/modificaciones)
+    private LibraryWatcher libraryWatcher;
+    private final MusicLibrary.Listener libraryListener = delta -> command(() -> applyLibraryDelta(delta));
+
+    // --- Estado de sesión por canción (ver bindSessionToTrack) ---
+    private final PlaybackStateCompat.Builder playbackStateBuilder = new PlaybackStateCompat.Builder()
+            .setActions(PlaybackStateCompat.ACTION_PLAY | PlaybackStateCompat.ACTION_PAUSE |
+                    PlaybackStateCompat.ACTION_SKIP_TO_NEXT | PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
+                    PlaybackStateCompat.ACTION_SEEK_TO);
+    private Track sessionTrack;                  // Canción a la que corresponde sessionArt (y los metadatos publicados)
+    private Bitmap sessionArt;                   // Ya reducida a tamaño de notificación; marcada con ArtworkCache.acquire
+    private PendingIntent contentIntent, deleteIntent;
+    private NotificationCompat.Action prevAction, playAction, pauseAction, nextAction;
+    // Lo último que se publicó en la notificación, para no repetirla si no cambió nada
+    private Track notifiedTrack;
+    private Bitmap notifiedArt;
+    private boolean notifiedPlaying;
+
+    // --- Arranque en caliente ---
+    private File stateFile;
+    // Escrituras del estado y la resolución de ids al restaurar: nunca en el hilo de reproducción
+    private ExecutorService stateExecutor;
+    // La cola restaurada todavía es solo la canción actual (los ids aún no se buscaron en el índice)
+    private volatile boolean restoring;
+    // Solo desde el hilo de reproducción
+    private int resumePositionMs = -1;   // Posición guardada, mientras el motor prepara la canción restaurada
+    private long saveDueAt;              // Cuándo toca la próxima escritura programada (0: ninguna)
+    private int savedQueueVersion = -1;  // La cola ya copiada en los saved* (no se tocan: se comparten)
+    private long[] savedIds;
+    private int[] savedOrder;
+    private Track[] savedUnindexed;
+    private final Runnable saveStateRunnable = this::saveState;
+
     public class LocalBinder extends Binder {
         MusicService getService() { return MusicService.this; }
     }
@@ -66,7 +129,15 @@ public class MusicService extends Service {
     public void onCreate() {
         super.onCreate();
         audioManager = (android.media.AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        player = new MediaPlayer();
+
+        playbackThread = new HandlerThread("Playback", Process.THREAD_PRIORITY_AUDIO);
+        playbackThread.start();
+        playbackHandler = new Handler(playbackThread.getLooper());
+        int crossfadeMs = getSharedPreferences(PREFS, MODE_PRIVATE).getInt(KEY_CROSSFADE_MS, 0);
+        command(() -> {
+            engine = new PlaybackEngine(this, engineCallback);
+            engine.setCrossfadeMs(crossfadeMs);
+        });
 
         // Inicializar MediaSession
         mediaSession = new MediaSessionCompat(this, "MusicService");
@@ -84,10 +155,6 @@ public class MusicService extends Service {
         });
         mediaSession.setActive(true);
 
-        player.setOnCompletionListener(mp -> {
-            playTrack(getNextIndex());
-        });
-
         // Registrar el receptor para los botones de la notificación
         IntentFilter filter = new IntentFilter();
         filter.addAction(ACTION_PLAY);
@@ -97,12 +164,262 @@ public class MusicService extends Service {
         registerReceiver(notificationReceiver, filter, RECEIVER_NOT_EXPORTED);
 
         createNotificationChannel();
+        createNotificationActions();
+
+        MusicLibrary.getInstance().addListener(libraryListener);
+        libraryWatcher = new LibraryWatcher(this);
+        libraryWatcher.start();
+
+        // Al final: el comando usa la sesión y los canales de notificación de arriba
+        stateFile = new File(getFilesDir(), STATE_FILE);
+        stateExecutor = Executors.newSingleThreadExecutor();
+        restoring = stateFile.isFile();
+        if (restoring) command(this::restoreSavedState);
+    }
+
+    private final PlaybackEngine.Callback engineCallback = new PlaybackEngine.Callback() {
+        @Override
+        public void onTrackStarted(Track track, long timeToFirstAudioMs, boolean gapless) {
+            if (gapless) {
+                // Entró sola la precargada: movemos el cursor de la cola hasta ella
+                if (preloadedIndex >= 0 && preloadedIndex < queue.size() && queue.get(preloadedIndex).equals(track)) {
+                    queue.jumpTo(preloadedIndex);
+                }
+            }
+            preloadNext();
+            bindSessionToTrack(track); // Metadatos y carátula: una vez por canción
+            if (track.durationMs <= 0) publishSessionMetadata(); // Ahora el reproductor ya sabe la duración
+            updateMediaSessionState(PlaybackStateCompat.STATE_PLAYING); // Actualizar estado para la barra
+            showNotification(track);
+            publishSnapshot();
+        }
+
+        @Override
+        public void onCompletion(Track track) {
+            // No había siguiente encadenada (falló la precarga o la cola cambió a último momento)
+            doPlayTrack(queue.nextIndex());
+        }
+
+        @Override
+        public void onError(Track track, int what, int extra) {
+            Log.e("MusicService", "Error FATAL al reproducir: " + (track != null ? track.path : "?"));
+            updateMediaSessionState(PlaybackStateCompat.STATE_PAUSED);
+            updateNotificationState();
+            publishSnapshot();
+        }
+    };
+
+    // --- Hilo de comandos y fotos de estado ---
+
+    // Todas las mutaciones pasan por aquí: se ejecutan en orden en el hilo de reproducción y al
+    // terminar cada una se publica la foto nueva
+    private void command(Runnable r) {
+        playbackHandler.post(() -> {
+            r.run();
+            publishSnapshot();
+        });
+    }
+
+    /**
+     * Publica la foto nueva y la pasa a stateBus con lo que cambió. Los comandos la llaman al terminar;
+     * lo que pasa fuera de un comando (callbacks del motor, fin del fundido) la llama a mano.
+     * Solo desde el hilo de reproducción.
+     */
+    private void publishSnapshot() {
+        PlaybackSnapshot old = snapshot;
+        List<Track> tracks = old.queue;
+        List<Track> order = old.playbackOrder;
+        if (queueVersion != publishedQueueVersion) {
+            // Con índice id -> posición: la UI busca canciones en ellas en O(1)
+            tracks = new IndexedTrackList(queue.getTracks());
+            order = new IndexedTrackList(queue.getPlaybackOrder());
+            publishedQueueVersion = queueVersion;
+        }
+        boolean started = engine != null && engine.isPlaying();
+        int duration = engine != null ? engine.getDuration() : 0;
+        Track current = queue.current();
+        if (duration <= 0 && current != null) duration = (int) current.durationMs; // La del escaneo hasta que prepare
+        snapshot = new PlaybackSnapshot(tracks, order,
+                queue.currentIndex(), queue.nextIndex(), queue.prevIndex(),
+                queue.isShuffle(), queue.isRepeatOne(), isPlayingNow(),
+                duration, currentPositionMs(),
+                started ? SystemClock.elapsedRealtime() : 0, // 0: la posición no avanza sola
+                engine != null ? engine.getCrossfadeMs() : 0);
+        stateBus.publish(snapshot, PlaybackStateBus.changesBetween(old, snapshot));
+        scheduleSave();
+    }
+
+    // La del motor; mientras prepara la canción restaurada todavía no la sabe: la guardada
+    private int currentPositionMs() {
+        if (engine == null) return 0;
+        if (resumePositionMs >= 0 && engine.getState() == PlaybackEngine.State.PREPARING) return resumePositionMs;
+        return engine.getPosition();
+    }
+
+    public PlaybackSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /** Los cambios de estado para la UI, juntados por frame (en lugar de broadcasts). */
+    public PlaybackStateBus getStateBus() {
+        return stateBus;
+    }
+
+    /**
+     * true mientras la cola guardada de la sesión anterior se está resolviendo: la actual ya está
+     * cargada y el resto llega enseguida (cambio QUEUE en el bus), así que no hay que rellenarla.
+     */
+    public boolean isRestoringQueue() {
+        return restoring;
+    }
+
+    // Precarga en el segundo reproductor la siguiente según el orden actual. Hay que llamarlo cada vez
+    // que cambia qué va después: nueva canción, cola, aleatorio o repetir.
+    private void preloadNext() {
+        int next = queue.currentIndex() >= 0 ? queue.nextIndex() : -1;
+        preloadedIndex = next;
+        engine.preloadNext(next >= 0 ? queue.get(next) : null);
+        // Cuando cambia la siguiente también puede cambiar la anterior: las dos vecinas a la vez
+        preloadNeighbourArtwork();
+    }
+
+    /**
+     * Calienta la caché con las carátulas de la siguiente y la anterior en el orden de reproducción,
+     * a los dos tamaños que se pintan (notificación/pantalla de bloqueo y portada del reproductor).
+     * Así un salto, venga de la app, de la notificación o de los auriculares, se pinta al momento.
+     * Los textos no hace falta: título, artista, álbum y duración ya vienen en el Track desde el escaneo.
+     */
+    private void preloadNeighbourArtwork() {
+        if (queue.currentIndex() < 0) return;
+        CoverLoader loader = CoverLoader.getInstance(this);
+        ArtworkCache cache = ArtworkCache.getInstance(this);
+        ArtworkCache.Size coverSize = ArtworkCache.nowPlayingSize(this);
+        int[] neighbours = {queue.nextIndex(), queue.prevIndex()};
+        // Cola LIFO del cargador: la siguiente (la más probable) se pide la última para que salga primero
+        for (int i = neighbours.length - 1; i >= 0; i--) {
+            if (neighbours[i] < 0 || neighbours[i] >= queue.size()) continue;
+            String path = queue.get(neighbours[i]).path;
+            if (!cache.isResolved(path, coverSize)) loader.prefetch(path, coverSize);
+            if (!cache.isResolved(path, ArtworkCache.Size.MEDIUM)) loader.prefetch(path, ArtworkCache.Size.MEDIUM);
+        }
+    }
+
+    // --- Arranque en caliente: estado de la cola en disco ---
+
+    /**
+     * Primer comando tras morir el proceso: lee el estado guardado (mapeado en memoria, un par de ms)
+     * y deja la canción actual cargada y en pausa en su posición, con sesión y notificación, antes de
+     * cualquier escaneo. El resto de la cola se resuelve luego en segundo plano (applyRestoredQueue).
+     */
+    private void restoreSavedState() {
+        QueueSnapshot saved = QueueSnapshot.readFrom(stateFile);
+        if (saved == null || !restoring) {
+            restoring = false;
+            return;
+        }
+        // Mientras tanto la cola es solo la actual: con eso ya se pinta todo
+        queue.restore(Collections.singletonList(saved.current), new int[]{0}, 0, saved.shuffle, saved.repeatOne);
+        queueVersion++;
+        resumePositionMs = saved.positionMs;
+        engine.load(saved.current, false);
+        engine.seekTo(saved.positionMs); // Queda pendiente hasta que termine de preparar
+        bindSessionToTrack(saved.current);
+        updateMediaSessionState(PlaybackStateCompat.STATE_PAUSED);
+        showNotification(saved.current);
+
+        // Los ids del resto contra el índice: una consulta por id, fuera del hilo de reproducción.
+        // Las de SAF no están en el índice: vienen enteras en saved.unindexed
+        LibraryIndex index = LibraryIndex.getInstance(this);
+        stateExecutor.execute(() -> {
+            List<Track> resolved;
+            try {
+                resolved = index.loadTracks(saved.ids);
+            } catch (RuntimeException e) {
+                // Sin índice legible la cola se queda en la actual; que la UI pueda volver a llenarla
+                Log.e("MusicService", "No se pudo resolver la cola guardada: " + e.getMessage());
+                command(() -> restoring = false);
+                return;
+            }
+            command(() -> applyRestoredQueue(saved, resolved));
+        });
+    }
+
+    // resolved: la cola guardada en orden de lista, null donde el id ya no está en el índice
+    private void applyRestoredQueue(QueueSnapshot saved, List<Track> resolved) {
+        if (!restoring) return; // Entretanto llegó otra cola (setQueue): esa manda
+        restoring = false;
+        // La actual es el mismo objeto que ya tienen el motor y la sesión (y si su archivo desapareció,
+        // el motor ya dio el error: que se vea en su sitio)
+        resolved.set(saved.currentIndex, saved.current);
+        for (int i = 0; i < resolved.size(); i++) {
+            if (resolved.get(i) == null && saved.unindexed[i] != null) resolved.set(i, saved.unindexed[i]);
+        }
+        // Los modos que se hayan cambiado mientras tanto, sobre el orden guardado
+        boolean shuffle = queue.isShuffle();
+        queue.restore(resolved, saved.order, saved.currentIndex, saved.shuffle, queue.isRepeatOne());
+        if (shuffle != saved.shuffle) queue.setShuffle(shuffle);
+        queueVersion++;
+        preloadNext();
+    }
+
+    // Desde publishSnapshot: los cambios de un segundo se juntan en una sola escritura
+    private void scheduleSave() {
+        scheduleSave(SAVE_DELAY_MS);
+    }
+
+    private void scheduleSave(long delayMs) {
+        long due = SystemClock.uptimeMillis() + delayMs;
+        if (saveDueAt != 0 && saveDueAt <= due) return; // Ya hay una antes
+        playbackHandler.removeCallbacks(saveStateRunnable);
+        playbackHandler.postAtTime(saveStateRunnable, due);
+        saveDueAt = due;
+    }
+
+    /**
+     * Copia el estado (las listas solo si cambió la cola) y lo escribe en stateExecutor. Mientras se
+     * restaura no guarda nada: la cola de una sola canción pisaría la guardada entera.
+     */
+    private void saveState() {
+        saveDueAt = 0;
+        if (restoring || stateExecutor.isShutdown()) return;
+        Track current = queue.current();
+        if (queue.isEmpty()) {
+            stateExecutor.execute(stateFile::delete);
+            return;
+        }
+        if (current == null) return; // Cola sin empezar: mejor lo que hubiera guardado
+
+        if (savedQueueVersion != queueVersion) {
+            long[] ids = new long[queue.size()];
+            Track[] unindexed = new Track[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                Track t = queue.get(i);
+                ids[i] = t.id;
+                // Los ids de SAF (Track.idForPath) llevan el bit de signo y no están en LibraryIndex
+                if (t.id < 0) unindexed[i] = t;
+            }
+            savedIds = ids;
+            savedUnindexed = unindexed;
+            savedOrder = queue.getOrder();
+            savedQueueVersion = queueVersion;
+        }
+        QueueSnapshot state = new QueueSnapshot(savedIds, savedOrder, savedUnindexed, queue.currentIndex(),
+                current, currentPositionMs(), queue.isShuffle(), queue.isRepeatOne());
+        stateExecutor.execute(() -> {
+            try {
+                state.writeTo(stateFile);
+            } catch (IOException e) {
+                Log.w("MusicService", "No se pudo guardar el estado de la cola", e);
+            }
+        });
+        if (isPlayingNow()) scheduleSave(SAVE_WHILE_PLAYING_MS);
     }
 
     // Receptor para clicks en la notificación
     private final BroadcastReceiver notificationReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
+            // play()/pause()/next()/prev() solo encolan el comando: el receptor vuelve enseguida
             String action = intent.getAction();
             if (action == null) return;
             switch (action) {
@@ -129,208 +446,316 @@ public class MusicService extends Service {
     }
 
     public void setQueue(List<Track> newQueue) {
-        this.playlist = newQueue;
-        this.playbackOrder = new ArrayList<>(newQueue);
-        this.isShuffle = false;
+        // Copiamos aquí: el comando corre más tarde y quien llama puede seguir usando su lista
+        List<Track> copy = new ArrayList<>(newQueue);
+        command(() -> doSetQueue(copy));
     }
 
-    public List<Track> getQueue() {
-        return playlist;
+    private void doSetQueue(List<Track> newQueue) {
+        // QueueManager guarda su propia copia: applyLibraryDelta la modifica en el sitio
+        queue.setTracks(newQueue);
+        restoring = false; // Una cola nueva manda sobre la restaurada que estuviera pendiente
+        queueVersion++;
+        preloadNext();
     }
 
-    public void playTrack(int index) {
-        if (playlist == null || playlist.isEmpty()) return;
-        if (index < 0 || index >= playlist.size()) return;
+    /**
+     * Aplica a la cola los cambios detectados por LibraryWatcher sin reconstruirla: las modificadas se
+     * cambian en su sitio por el Track nuevo de la biblioteca, las borradas se quitan y las nuevas se
+     * insertan en su posición.
+     */
+    private void applyLibraryDelta(LibraryDelta delta) {
+        if (queue.isEmpty()) return;
 
-        // 1. PEDIR FOCO ANTES DE TODO
-        if (!requestAudioFocus()) {
-            return; // Si Spotify no nos deja, no tocamos.
-        }
+        queue.replaceAll(delta.updated);
 
-        currentIndex = index;
-        Track track = playlist.get(index);
-
-        try {
-            player.reset();
-            Log.d("MusicService", "Intentando reproducir: " + track.path);
+        if (!delta.removedIds.isEmpty()) {
+            Set<Long> gone = new HashSet<>(delta.removedIds);
+            // Si la canción actual se borró, QueueManager sigue desde la misma posición del orden
+            queue.removeIf(t -> gone.contains(t.id));
+        }
+        queue.addSorted(delta.added, MusicLibrary.TITLE_ORDER);
+        queueVersion++;
+        preloadNext();
+    }
 
-            if (track.path.startsWith("content://")) {
-                player.setDataSource(getApplicationContext(), Uri.parse(track.path));
+    /**
+     * Añade una página del escaneo a la cola sin cortar lo que suena. Cada canción entra en su
+     * posición por título (en aleatorio, en un punto al azar del orden), igual que las altas de LibraryWatcher.
+     */
+    public void appendToQueue(List<Track> tracks) {
+        if (tracks == null || tracks.isEmpty()) return;
+        List<Track> page = new ArrayList<>(tracks);
+        command(() -> {
+            if (queue.isEmpty()) {
+                Collections.sort(page, MusicLibrary.TITLE_ORDER);
+                doSetQueue(page);
             } else {
-                player.setDataSource(track.path);
+                // Una sola mezcla por página; la actual sigue siendo la actual aunque cambie de índice
+                queue.addSorted(page, MusicLibrary.TITLE_ORDER);
+                queueVersion++;
+                preloadNext();
             }
+        });
+    }
 
-            player.prepare();
-            player.start();
+    /**
+     * Deja moved justo detrás de after en el orden de reproducción (after null: al principio). La UI lo
+     * manda una vez al soltar una fila arrastrada; la canción actual no cambia. O(log n).
+     */
+    public void moveInQueue(Track moved, Track after) {
+        command(() -> {
+            // Las posiciones se buscan aquí, con la cola de ahora: las de la lista de la UI pueden ser viejas
+            int index = snapshot.queue.indexOf(moved);
+            int afterIndex = after != null ? snapshot.queue.indexOf(after) : -1;
+            if (index < 0 || (after != null && afterIndex < 0)) return; // Ya no está en la cola
+            queue.moveAfter(index, afterIndex);
+            queueVersion++;
+            preloadNext(); // Puede haber cambiado cuál va antes o después de la actual
+        });
+    }
 
-            showNotification(track);
-            updateMediaSessionState(PlaybackStateCompat.STATE_PLAYING); // Actualizar estado para la barra
-            sendBroadcast(new Intent(ACTION_TRACK_CHANGED));
+    /** La cola en orden de lista (solo lectura, de la última foto). */
+    public List<Track> getQueue() {
+        return snapshot.queue;
+    }
 
-        } catch (Exception e) {
-            Log.e("MusicService", "Error FATAL al reproducir: " + e.getMessage());
-            e.printStackTrace();
+    public void playTrack(int index) {
+        command(() -> doPlayTrack(index));
+    }
+
+    private void doPlayTrack(int index) {
+        if (index < 0 || index >= queue.size()) return;
+
+        // 1. PEDIR FOCO ANTES DE TODO
+        if (!requestAudioFocus()) {
+            return; // Si Spotify no nos deja, no tocamos.
         }
+
+        queue.jumpTo(index);
+        resumePositionMs = -1;
+        Track track = queue.get(index);
+        Log.d("MusicService", "Intentando reproducir: " + track.path);
+
+        // Asíncrono: el resto (sesión, notificación) se hace en onTrackStarted cuando ya suena.
+        // Si era la precargada, el motor la usa directamente sin volver a prepararla.
+        engine.setVolume(1.0f);
+        engine.load(track, true);
+        // Metadatos, carátula (normalmente ya precargada) y notificación al momento, sin esperar a que suene
+        bindSessionToTrack(track);
+        updateMediaSessionState(PlaybackStateCompat.STATE_BUFFERING);
+        showNotification(track);
+        publishSnapshot(); // La UI ya puede mostrar el título
     }
 
     public void play() {
+        command(this::doPlay);
+    }
+
+    private void doPlay() {
         // 1. PEDIR FOCO
         if (!requestAudioFocus()) {
             return;
         }
 
-        if (player != null && !player.isPlaying()) {
-            // Preparamos volumen en 0 antes de arrancar
-            player.setVolume(0.0f, 0.0f);
-            player.start();
+        if (engine.getTrack() != null && !engine.isPlaying()) {
+            // Arranca en silencio y sube en 0.8 s; la rampa corre en el hilo de audio, no en la UI
+            engine.startWithFadeIn(800);
 
-            // Fade-in rápido (500ms o medio segundo)
-            fadeIn();
-
-            updateNotificationState();
             updateMediaSessionState(PlaybackStateCompat.STATE_PLAYING);
-            sendBroadcast(new Intent(ACTION_TRACK_CHANGED));
+            updateNotificationState();
         }
     }
 
-    private void fadeIn() {
-        ValueAnimator fadeAnim = ValueAnimator.ofFloat(0.0f, 1.0f);
-        fadeAnim.setDuration(800); // 0.8 segundos para entrar suave
-        fadeAnim.addUpdateListener(animation -> {
-            if (player != null) {
-                float volume = (float) animation.getAnimatedValue();
-                player.setVolume(volume, volume);
-            }
-        });
-        fadeAnim.start();
+    public void pause() {
+        command(this::doPause);
     }
 
-    public void pause() {
-        if (player != null && player.isPlaying()) {
+    private void doPause() {
+        if (engine.isPlaying()) {
             // En lugar de pausar de golpe, iniciamos el fade-out
             fadeOutAndPause();
+        } else if (engine.isPlayWhenReady()) {
+            // Todavía preparando: que no arranque al terminar
+            engine.pause();
+            updateMediaSessionState(PlaybackStateCompat.STATE_PAUSED);
+            updateNotificationState();
         }
     }
 
     private void fadeOutAndPause() {
-        // Animamos de 1.0 (Volumen Máximo) a 0.0 (Silencio)
-        ValueAnimator fadeAnim = ValueAnimator.ofFloat(1.0f, 0.0f);
-        fadeAnim.setDuration(1500); // 1.5 segundos de duración
-
-        fadeAnim.addUpdateListener(animation -> {
-            if (player != null) {
-                float volume = (float) animation.getAnimatedValue();
-                player.setVolume(volume, volume);
+        // De 1.0 (volumen máximo) a 0.0 (silencio) en 1.5 segundos, desde el hilo de audio
+        // onDone vuelve al hilo de reproducción (el del motor)
+        engine.fadeOut(1500, () -> {
+            // Solo pausamos cuando el volumen ya llegó a 0
+            if (engine != null) {
+                engine.pause();
+                // IMPORTANTE: Resetear volumen al máximo para la próxima vez que demos Play
+                engine.setVolume(1.0f);
+
+                // Actualizamos estado y notificación (solo cambia el botón: la carátula ya está hecha)
+                updateMediaSessionState(PlaybackStateCompat.STATE_PAUSED);
+                updateNotificationState();
+                publishSnapshot();
             }
         });
+    }
 
-        fadeAnim.addListener(new AnimatorListenerAdapter() {
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                // Solo pausamos cuando el volumen ya llegó a 0
-                if (player != null) {
-                    player.pause();
-                    // IMPORTANTE: Resetear volumen al máximo para la próxima vez que demos Play
-                    player.setVolume(1.0f, 1.0f);
-
-                    // Actualizamos notificaciones y estado
-                    updateNotificationState();
-                    updateMediaSessionState(PlaybackStateCompat.STATE_PAUSED);
-                    sendBroadcast(new Intent(ACTION_TRACK_CHANGED));
-                }
-            }
-        });
+    /**
+     * Duración del fundido cruzado entre canciones en ms (0 = sin fundido, cambio sin hueco).
+     * Se guarda en preferencias y se aplica enseguida, también a la canción que está sonando.
+     */
+    public void setCrossfadeMs(int ms) {
+        int clamped = Math.max(0, Math.min(MAX_CROSSFADE_MS, ms));
+        getSharedPreferences(PREFS, MODE_PRIVATE).edit().putInt(KEY_CROSSFADE_MS, clamped).apply();
+        command(() -> engine.setCrossfadeMs(clamped));
+    }
 
-        fadeAnim.start();
+    public int getCrossfadeMs() {
+        return snapshot.crossfadeMs;
     }
 
+    // Siguiente/anterior se calculan al ejecutar el comando, no con la foto: si llegan dos seguidos
+    // el segundo avanza desde donde dejó el primero
     public void next() {
-        if (playlist.isEmpty()) return;
-        playTrack(getNextIndex());
+        command(() -> {
+            if (!queue.isEmpty()) doPlayTrack(queue.nextIndex());
+        });
     }
 
     public void prev() {
-        if (playlist.isEmpty()) return;
-        playTrack(getPrevIndex());
+        command(() -> {
+            if (!queue.isEmpty()) doPlayTrack(queue.prevIndex());
+        });
     }
 
     public void seekTo(int pos) {
-        if (player != null) {
-            player.seekTo(pos);
+        command(() -> {
+            if (engine == null) return;
+            resumePositionMs = -1;
+            engine.seekTo(pos);
             // Actualizar la barra de progreso de la notificación
-            updateMediaSessionState(player.isPlaying() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED);
-        }
+            updateMediaSessionState(engine.isPlaying() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED);
+        });
+    }
+
+    // Estado real del motor: solo desde el hilo de reproducción
+    private boolean isPlayingNow() {
+        // Mientras prepara una canción que va a sonar también cuenta como "reproduciendo" (botón de pausa)
+        return engine != null && (engine.isPlaying()
+                || (engine.getState() == PlaybackEngine.State.PREPARING && engine.isPlayWhenReady()));
     }
 
     public boolean isPlaying() {
-        return player != null && player.isPlaying();
+        return snapshot.playing;
     }
 
     public int getDuration() {
-        return (player != null) ? player.getDuration() : 0;
+        return snapshot.durationMs;
     }
 
+    /** Posición extrapolada desde la última foto: no espera al hilo de reproducción. */
     public int getPosition() {
-        return (player != null) ? player.getCurrentPosition() : 0;
+        return snapshot.positionAt(SystemClock.elapsedRealtime());
     }
 
     public int getCurrentIndex() {
-        return currentIndex;
+        return snapshot.currentIndex;
     }
 
     // --- ACTUALIZACIÓN DE LA SESIÓN (Para la barra de progreso) ---
+    // Solo empuja el PlaybackStateCompat: play, pausa y seek no tocan metadatos ni carátula
     private void updateMediaSessionState(int state) {
         if (mediaSession == null) return;
 
-        PlaybackStateCompat.Builder playbackStateBuilder = new PlaybackStateCompat.Builder()
-                .setActions(PlaybackStateCompat.ACTION_PLAY | PlaybackStateCompat.ACTION_PAUSE |
-                        PlaybackStateCompat.ACTION_SKIP_TO_NEXT | PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS |
-                        PlaybackStateCompat.ACTION_SEEK_TO)
-                .setState(state, getPosition(), 1.0f); // Posición actual y velocidad (1.0x)
-
+        playbackStateBuilder.setState(state, currentPositionMs(), 1.0f); // Posición actual y velocidad (1.0x)
         mediaSession.setPlaybackState(playbackStateBuilder.build());
+    }
 
-        // Actualizar metadatos (Duración, título, etc.) para la pantalla de bloqueo
-        Track track = getCurrentTrack();
-        if (track != null) {
-            MediaMetadataCompat.Builder metadataBuilder = new MediaMetadataCompat.Builder()
-                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, track.title)
-                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, track.artist)
-                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, getDuration());
-
-            Bitmap art = getAlbumArt(track.path);
-            if (art != null) {
-                metadataBuilder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, art);
-            }
+    /**
+     * Estado de sesión por canción: se llama al cambiar de pista y no hace nada si es la misma.
+     * Publica enseguida los metadatos (con la carátula si ya está en memoria) y, si hace falta,
+     * carga la carátula a tamaño de notificación en segundo plano y vuelve a publicar al tenerla.
+     */
+    private void bindSessionToTrack(Track track) {
+        if (track == sessionTrack) return;
+        sessionTrack = track;
+
+        ArtworkCache cache = ArtworkCache.getInstance(this);
+        // La sesión conserva el bitmap (lo vuelve a enviar a cada controlador): marcado mientras sea el
+        // actual, y el anterior solo se suelta cuando ya se publicó el nuevo
+        Bitmap previousArt = sessionArt;
+        sessionArt = cache.acquire(track.path, ArtworkCache.Size.MEDIUM);
+        publishSessionMetadata();
+        cache.release(previousArt);
+
+        if (sessionArt == null && !cache.isKnownMissing(track.path, ArtworkCache.Size.MEDIUM)) {
+            // Con el cargador compartido: si el precargado de esta carátula ya está en marcha, se engancha a él
+            CoverLoader.getInstance(this).load(this, track.path, ArtworkCache.Size.MEDIUM, CoverLoader.Priority.VISIBLE, (path, art) -> {
+                if (art == null) return;
+                playbackHandler.post(() -> {
+                    if (sessionTrack != track) return; // Ya cambió la canción
+                    Bitmap acquired = cache.acquire(track.path, ArtworkCache.Size.MEDIUM);
+                    if (acquired == null) return; // Expulsada entretanto: sin carátula hasta la próxima
+                    Bitmap placeholderArt = sessionArt; // null salvo carrera con otra carga
+                    sessionArt = acquired;
+                    publishSessionMetadata();
+                    updateNotificationState();
+                    cache.release(placeholderArt);
+                });
+            });
+        } else {
+            CoverLoader.getInstance(this).cancel(this); // Lo que se cargaba para la canción anterior ya no hace falta
+        }
+    }
 
-            mediaSession.setMetadata(metadataBuilder.build());
+    // Actualizar metadatos (Duración, título, etc.) para la pantalla de bloqueo
+    private void publishSessionMetadata() {
+        if (mediaSession == null || sessionTrack == null) return;
+
+        MediaMetadataCompat.Builder metadataBuilder = new MediaMetadataCompat.Builder()
+                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, sessionTrack.title)
+                .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, sessionTrack.artist)
+                .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, sessionTrack.album)
+                // La del escaneo: al saltar se publica antes de que el reproductor la sepa
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION,
+                        sessionTrack.durationMs > 0 ? sessionTrack.durationMs : engine.getDuration());
+        if (sessionArt != null) {
+            metadataBuilder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, sessionArt);
         }
+        mediaSession.setMetadata(metadataBuilder.build());
     }
 
     // --- NOTIFICACIONES MEJORADAS (MEDIA STYLE) ---
 
-    private void showNotification(Track track) {
-        updateMediaSessionState(isPlaying() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED);
-
+    // Los PendingIntent y las acciones no cambian nunca: se crean una sola vez
+    private void createNotificationActions() {
         // Intent para abrir la app al tocar la notif
         Intent notIntent = new Intent(this, NowPlayingActivity.class);
         notIntent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
-        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, notIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        // Botón Prev
-        Intent prevIntent = new Intent(ACTION_PREV);
-        PendingIntent prevPending = PendingIntent.getBroadcast(this, 1, prevIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        // Botón Play/Pause
-        Intent playPauseIntent = new Intent(isPlaying() ? ACTION_PAUSE : ACTION_PLAY);
-        PendingIntent playPausePending = PendingIntent.getBroadcast(this, 2, playPauseIntent, PendingIntent.FLAG_IMMUTABLE);
-        int playPauseIcon = isPlaying() ? R.drawable.ic_pause_minimal : R.drawable.ic_play_minimal;
+        contentIntent = PendingIntent.getActivity(this, 0, notIntent, PendingIntent.FLAG_IMMUTABLE);
+        deleteIntent = androidx.media.session.MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_STOP);
+
+        // Botones Prev, Play, Pause y Next
+        prevAction = new NotificationCompat.Action(R.drawable.ic_prev_minimal, "Previous",
+                PendingIntent.getBroadcast(this, 1, new Intent(ACTION_PREV), PendingIntent.FLAG_IMMUTABLE));
+        playAction = new NotificationCompat.Action(R.drawable.ic_play_minimal, "Play/Pause",
+                PendingIntent.getBroadcast(this, 2, new Intent(ACTION_PLAY), PendingIntent.FLAG_IMMUTABLE));
+        pauseAction = new NotificationCompat.Action(R.drawable.ic_pause_minimal, "Play/Pause",
+                PendingIntent.getBroadcast(this, 4, new Intent(ACTION_PAUSE), PendingIntent.FLAG_IMMUTABLE));
+        nextAction = new NotificationCompat.Action(R.drawable.ic_next_minimal, "Next",
+                PendingIntent.getBroadcast(this, 3, new Intent(ACTION_NEXT), PendingIntent.FLAG_IMMUTABLE));
+    }
 
-        // Botón Next
-        Intent nextIntent = new Intent(ACTION_NEXT);
-        PendingIntent nextPending = PendingIntent.getBroadcast(this, 3, nextIntent, PendingIntent.FLAG_IMMUTABLE);
+    private void showNotification(Track track) {
+        boolean playing = isPlayingNow();
+        Bitmap largeIcon = track == sessionTrack ? sessionArt : null;
 
-        Bitmap largeIcon = getAlbumArt(track.path);
+        // Si no cambió nada visible (misma canción, mismo botón, misma carátula) no la volvemos a publicar
+        if (track == notifiedTrack && playing == notifiedPlaying && largeIcon == notifiedArt) return;
+        notifiedTrack = track;
+        notifiedPlaying = playing;
+        notifiedArt = largeIcon;
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle(track.title)
@@ -338,7 +763,7 @@ public class MusicService extends Service {
                 .setSmallIcon(R.drawable.ic_note_minimal)
                 .setLargeIcon(largeIcon)
                 .setContentIntent(contentIntent)
-                .setDeleteIntent(androidx.media.session.MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_STOP))
+                .setDeleteIntent(deleteIntent)
                 .setVisibility(NotificationCompat.VISIBILITY_PUBLIC) // Visible en pantalla de bloqueo
 
                 // --- AQUÍ ESTÁ LA MAGIA DEL MEDIA STYLE ---
@@ -346,40 +771,20 @@ public class MusicService extends Service {
                         .setMediaSession(mediaSession.getSessionToken()) // Conectar con MediaSession
                         .setShowActionsInCompactView(0, 1, 2)) // Mostrar Prev(0), Play(1), Next(2) en vista compacta
 
-                .addAction(new NotificationCompat.Action(R.drawable.ic_prev_minimal, "Previous", prevPending))
-                .addAction(new NotificationCompat.Action(playPauseIcon, "Play/Pause", playPausePending))
-                .addAction(new NotificationCompat.Action(R.drawable.ic_next_minimal, "Next", nextPending));
+                .addAction(prevAction)
+                .addAction(playing ? pauseAction : playAction)
+                .addAction(nextAction);
 
         startForeground(1, builder.build());
     }
 
     private void updateNotificationState() {
-        if (currentIndex != -1 && currentIndex < playlist.size()) {
-            showNotification(playlist.get(currentIndex));
+        Track current = queue.current();
+        if (current != null) {
+            showNotification(current);
         }
     }
 
-    // Helper para obtener carátula (reciclado de tu código de adapter)
-    private Bitmap getAlbumArt(String path) {
-        try {
-            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-            if (path.startsWith("content://")) {
-                retriever.setDataSource(getApplicationContext(), Uri.parse(path));
-            } else {
-                retriever.setDataSource(path);
-            }
-            byte[] art = retriever.getEmbeddedPicture();
-            retriever.release();
-            if (art != null) {
-                return BitmapFactory.decodeByteArray(art, 0, art.length);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        // Retorna null si no hay imagen, Android usará el icono pequeño o gris por defecto
-        return null;
-    }
-
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
@@ -401,87 +806,91 @@ public class MusicService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (player != null) {
-            player.release();
-            player = null;
+        MusicLibrary.getInstance().removeListener(libraryListener);
+        if (libraryWatcher != null) {
+            libraryWatcher.stop();
         }
-        if (mediaSession != null) {
-            mediaSession.release();
-        }
-        unregisterReceiver(notificationReceiver);
+        // Último guardado con la posición de ahora, detrás de los comandos que quedaran
+        playbackHandler.post(() -> {
+            playbackHandler.removeCallbacks(saveStateRunnable);
+            saveState();
+            stateExecutor.shutdown(); // Termina la escritura pendiente y no acepta más
+        });
+        // El motor, la sesión y el receiver se liberan en su hilo, detrás de los comandos que quedaran
+        // (que todavía pueden tocar la sesión o llegar desde la notificación); quitSafely los deja terminar
+        playbackHandler.post(() -> {
+            if (engine != null) {
+                engine.release();
+                engine = null;
+            }
+            if (mediaSession != null) {
+                mediaSession.release();
+            }
+            unregisterReceiver(notificationReceiver);
+        });
+        playbackThread.quitSafely();
+        CoverLoader.getInstance(this).cancel(this);
     }
 
     // --- RESTO DE MÉTODOS (Shuffle, Repeat, getNextIndex, etc.) IGUAL QUE ANTES ---
+    // Los toggles invierten el valor que haya cuando se ejecuta el comando (con dos toques seguidos
+    // la foto aún no tiene el primero). Devuelven lo que previsiblemente va a quedar, para que la UI
+    // no tenga que esperar; si la previsión falla, la foto siguiente (MODES) lo corrige
     public boolean toggleShuffle() {
-        isShuffle = !isShuffle;
-        if (playlist == null || playlist.isEmpty()) return isShuffle;
-        if (isShuffle) {
-            playbackOrder = new ArrayList<>(playlist);
-            Collections.shuffle(playbackOrder);
-        } else {
-            playbackOrder = new ArrayList<>(playlist);
-        }
-        updateNotificationState();
-        return isShuffle;
+        boolean predicted = !snapshot.shuffle; // Antes de encolar: el comando podría publicar ya
+        command(() -> {
+            queue.setShuffle(!queue.isShuffle());
+            queueVersion++; // Cambió el orden de reproducción
+            preloadNext(); // Cambió cuál va después
+            if (!queue.isEmpty()) updateNotificationState();
+        });
+        return predicted;
     }
 
-    public boolean isShuffleEnabled() { return isShuffle; }
+    public boolean isShuffleEnabled() { return snapshot.shuffle; }
 
     public boolean toggleRepeat() {
-        isRepeatOne = !isRepeatOne;
-        return isRepeatOne;
+        boolean predicted = !snapshot.repeatOne; // Antes de encolar: el comando podría publicar ya
+        command(() -> {
+            queue.setRepeatOne(!queue.isRepeatOne());
+            preloadNext();
+        });
+        return predicted;
     }
 
-    public boolean isRepeatOneEnabled() { return isRepeatOne; }
+    public boolean isRepeatOneEnabled() { return snapshot.repeatOne; }
 
+    // Siguiente/anterior en el orden de reproducción, de la última foto
     public int getNextIndex() {
-        if (playlist == null || playlist.isEmpty()) return -1;
-        if (isRepeatOne) return currentIndex;
-        if (playbackOrder.isEmpty()) return -1;
-
-        Track currentTrack = playlist.get(currentIndex);
-        int currentPositionInPlaybackOrder = playbackOrder.indexOf(currentTrack);
-        int nextPositionInPlaybackOrder = currentPositionInPlaybackOrder + 1;
-        if (nextPositionInPlaybackOrder >= playbackOrder.size()) {
-            nextPositionInPlaybackOrder = 0;
-        }
-        Track nextTrack = playbackOrder.get(nextPositionInPlaybackOrder);
-        return playlist.indexOf(nextTrack);
+        return snapshot.nextIndex;
     }
 
     public int getPrevIndex() {
-        if (playbackOrder.isEmpty()) return -1;
-        Track currentTrack = playlist.get(currentIndex);
-        int currentPositionInPlaybackOrder = playbackOrder.indexOf(currentTrack);
-        int prevPositionInPlaybackOrder = currentPositionInPlaybackOrder - 1;
-        if (prevPositionInPlaybackOrder < 0) {
-            prevPositionInPlaybackOrder = playbackOrder.size() - 1;
-        }
-        Track prevTrack = playbackOrder.get(prevPositionInPlaybackOrder);
-        return playlist.indexOf(prevTrack);
+        return snapshot.prevIndex;
     }
 
+    /** La cola en orden de reproducción (solo lectura, de la última foto). */
     public List<Track> getPlaybackOrder() {
-        if (playbackOrder == null) return playlist;
-        return playbackOrder;
+        return snapshot.playbackOrder;
     }
 
     public Track getCurrentTrack() {
-        if (playlist != null && currentIndex >= 0 && currentIndex < playlist.size()) {
-            return playlist.get(currentIndex);
-        }
-        return null;
+        return snapshot.currentTrack();
     }
 
     // --- GESTIÓN DE AUDIO FOCUS ---
 
-    private final android.media.AudioManager.OnAudioFocusChangeListener focusChangeListener = focusChange -> {
+    // Llega en el hilo principal: lo pasamos como comando para que no se cruce con lo que pida el usuario
+    private final android.media.AudioManager.OnAudioFocusChangeListener focusChangeListener =
+            focusChange -> command(() -> onAudioFocusChange(focusChange));
+
+    private void onAudioFocusChange(int focusChange) {
         switch (focusChange) {
             case android.media.AudioManager.AUDIOFOCUS_LOSS:
                 // Pérdida permanente (ej: Spotify empezó a tocar).
                 // Acción: Pausar y NO reanudar automáticamente.
-                if (isPlaying()) {
-                    pause();
+                if (isPlayingNow()) {
+                    doPause();
                     resumeOnFocusGain = false;
                 }
                 break;
@@ -489,8 +898,8 @@ public class MusicService extends Service {
             case android.media.AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
                 // Pérdida temporal (ej: Entra una llamada o Google Assistant habla).
                 // Acción: Pausar, pero recordar que queremos volver.
-                if (isPlaying()) {
-                    pause();
+                if (isPlayingNow()) {
+                    doPause();
                     resumeOnFocusGain = true;
                 }
                 break;
@@ -498,26 +907,26 @@ public class MusicService extends Service {
             case android.media.AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
                 // Pérdida temporal permitiendo bajar volumen (ej: Notificación de WhatsApp).
                 // Acción: Bajar volumen (Ducking).
-                if (player != null) {
-                    player.setVolume(0.2f, 0.2f);
+                if (engine != null) {
+                    engine.setVolume(0.2f);
                 }
                 break;
 
             case android.media.AudioManager.AUDIOFOCUS_GAIN:
                 // Recuperamos el foco (terminó la llamada o la notificación).
-                if (player != null) {
+                if (engine != null) {
                     // Restaurar volumen si hicimos ducking
-                    player.setVolume(1.0f, 1.0f);
+                    engine.setVolume(1.0f);
                 }
 
                 // Si nos pausaron temporalmente (TRANSIENT), reanudamos
                 if (resumeOnFocusGain) {
-                    play();
+                    doPlay();
                     resumeOnFocusGain = false;
                 }
                 break;
         }
-    };
+    }
 
     private boolean requestAudioFocus() {
         int result;
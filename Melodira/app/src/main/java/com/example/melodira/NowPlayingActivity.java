@@ -1,19 +1,18 @@
 package com.example.melodira;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.SeekBar;
@@ -29,6 +28,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -41,50 +42,45 @@ public class NowPlayingActivity extends AppCompatActivity {
     private MusicService musicService;
     private boolean isBound = false;
     private List<Track> pendingTracks = null; // <--- ESTA ES LA CLAVE
+    private boolean pendingReplace = false;    // Las pendientes vienen de una carpeta elegida (reemplazan la cola)
+    private boolean fillingQueue = false;      // La cola del servicio se está llenando con el escaneo en curso
     private boolean bound = false;
-    private Handler handler = new Handler();
 
     private TextView tvTitle, tvArtist, tvAlbum, tvTimeCur, tvTimeTotal;
     private SeekBar seekBar;
     private ImageButton btnPlay, btnPrev, btnNext, btnShuffle, btnRepeat, btnRewind10, btnForward10;
     private ImageView ivCover;
+    private String coverPath; // Canción cuya portada estamos mostrando/cargando
+    private android.graphics.Bitmap coverBitmap; // La que se pinta ahora, marcada con ArtworkCache.acquire
+    private ArtworkCache.Size coverSize = ArtworkCache.Size.LARGE; // Según el ancho de pantalla (onCreate)
 
     private boolean fromUser = false;
 
-    private BroadcastReceiver serviceReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent == null || intent.getAction() == null) return;
-
-            Log.d("DEBUG_APP", "Broadcast recibido: " + intent.getAction());
-
-            String action = intent.getAction();
-            if (action.equals(MusicService.ACTION_TRACK_CHANGED)) {
-                // actualiza metadatos y seekbar
-                refreshMetadata();
-            } else if (action.equals(MusicService.ACTION_QUEUE_UPDATED)) {
-                // la cola cambió; refrescar vista
-                refreshMetadata();
-            }
-        }
-    };
+    // --- Barra de progreso ---
+    private boolean visible = false;         // Entre onStart y onStop
+    private boolean tickerPosted = false;    // progressTicker está pedido para el próximo frame
+    private long shownSecond = -1;           // Lo que dice tvTimeCur, para no reescribirlo en cada frame
 
-    // Busca esto al inicio de tu clase y reemplázalo:
-    private final Runnable updateRunnable = new Runnable() {
-        @Override
-        public void run() {
-            // Verificamos DIRECTAMENTE el servicio, sin variables 'bound' confusas
-            if (musicService != null && musicService.isPlaying()) {
-                long pos = musicService.getPosition();
-                long dur = musicService.getDuration();
+    // Cambios de estado del servicio, juntados por frame; suscrito solo mientras la pantalla se ve
+    private final PlaybackStateBus.Listener stateListener = this::render;
 
-                // Actualizamos la UI
-                updateSeekUi(pos, dur);
+    /**
+     * Avance de la barra sin preguntar al servicio: la foto publicada ya trae posición, instante y si
+     * avanza (el servicio solo publica en transiciones reales: play, pausa, seek, cambio de canción),
+     * y aquí se extrapola en cada frame. Solo está pedido mientras la pantalla se ve y está sonando;
+     * en pausa o en segundo plano no hay ni un callback (ver updateTicker).
+     */
+    private final Choreographer.FrameCallback progressTicker = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            tickerPosted = false;
+            if (!visible || musicService == null) return;
+            PlaybackSnapshot s = musicService.getSnapshot();
+            if (!fromUser) updateSeekUi(s.positionAt(SystemClock.elapsedRealtime()), s.durationMs);
+            if (s.playing) {
+                Choreographer.getInstance().postFrameCallback(this);
+                tickerPosted = true;
             }
-
-            // Se vuelve a llamar a sí mismo cada 500ms (medio segundo)
-            // Lo ponemos FUERA del if para que el bucle nunca muera mientras la app esté abierta
-            handler.postDelayed(this, 500);
         }
     };
 
@@ -98,39 +94,19 @@ public class NowPlayingActivity extends AppCompatActivity {
         ImageButton btnPrev = findViewById(R.id.btnPrev);
         ImageButton btnNext = findViewById(R.id.btnNext);
 
-        // BOTÓN SIGUIENTE
+        // BOTÓN SIGUIENTE: la siguiente del orden de reproducción (respeta aleatorio), la misma que el
+        // servicio ya tiene precargada. La pantalla se actualiza con el bus de estado (TRACK)
         btnNext.setOnClickListener(v -> {
-            if (musicService != null) {
-                List<Track> queue = musicService.getQueue();
-                if (queue != null && !queue.isEmpty()) {
-                    int nextIndex = musicService.getCurrentIndex() + 1;
-
-                    // Si llegamos al final, volvemos al principio (0)
-                    if (nextIndex >= queue.size()) {
-                        nextIndex = 0;
-                    }
-
-                    musicService.playTrack(nextIndex);
-                    refreshMetadata(); // Actualizamos la pantalla de inmediato
-                }
-            }
+            if (musicService != null) musicService.next();
         });
 
-        // BOTÓN ANTERIOR
+        // BOTÓN ANTERIOR: si la canción lleva más de 3 s, vuelve a empezarla; si no, la anterior del orden
         btnPrev.setOnClickListener(v -> {
-            if (musicService != null) {
-                List<Track> queue = musicService.getQueue();
-                if (queue != null && !queue.isEmpty()) {
-                    int prevIndex = musicService.getCurrentIndex() - 1;
-
-                    // Si estamos en el principio y damos atrás, vamos a la última canción
-                    if (prevIndex < 0) {
-                        prevIndex = queue.size() - 1;
-                    }
-
-                    musicService.playTrack(prevIndex);
-                    refreshMetadata(); // Actualizamos la pantalla de inmediato
-                }
+            if (musicService == null) return;
+            if (musicService.getPosition() > 3000) {
+                musicService.seekTo(0);
+            } else {
+                musicService.prev();
             }
         });
 
@@ -160,6 +136,9 @@ public class NowPlayingActivity extends AppCompatActivity {
         seekBar = findViewById(R.id.seekBar);
         btnPlay = findViewById(R.id.btnPlay);
         ivCover = findViewById(R.id.ivCover);
+        // La portada ocupa como mucho el ancho de la pantalla: no decodificamos más grande que eso
+        // (el servicio precarga las de la siguiente y la anterior a este mismo tamaño)
+        coverSize = ArtworkCache.nowPlayingSize(this);
 
         btnPlay.setOnClickListener(v -> {
             // CORRECCIÓN: Ignoramos 'bound' o 'isBound' y preguntamos directo al objeto
@@ -172,8 +151,7 @@ public class NowPlayingActivity extends AppCompatActivity {
                     musicService.play();
                     btnPlay.setImageResource(R.drawable.ic_pause_minimal);
                 }
-                // Sincronizamos el resto de la UI
-                refreshMetadata();
+                // El resto de la UI llega por el bus cuando el servicio ejecute el comando
             }
         });
 
@@ -224,28 +202,6 @@ public class NowPlayingActivity extends AppCompatActivity {
             }
         });
 
-        // Actualizar lógica de los botones Prev/Next para usar la lógica nueva del servicio
-        // Reemplaza tus listeners actuales de btnNext y btnPrev con esto:
-        btnNext.setOnClickListener(v -> {
-            if (musicService != null) {
-                musicService.playTrack(musicService.getNextIndex());
-                refreshMetadata();
-            }
-        });
-
-        btnPrev.setOnClickListener(v -> {
-            if (musicService != null) {
-                // Lógica estándar: si la canción lleva más de 3 seg, reiniciar canción.
-                // Si lleva menos, ir a la anterior.
-                if (musicService.getPosition() > 3000) {
-                    musicService.seekTo(0);
-                } else {
-                    musicService.playTrack(musicService.getPrevIndex());
-                    refreshMetadata();
-                }
-            }
-        });
-
         // ... dentro de onCreate, reemplaza el listener del seekBar ...
 
         seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
@@ -275,12 +231,6 @@ public class NowPlayingActivity extends AppCompatActivity {
 
         findViewById(R.id.btnOpenPlaylist).setOnClickListener(v -> startActivity(new Intent(this, PlaylistActivity.class)));
 
-        // registrar receiver
-        IntentFilter f = new IntentFilter();
-        f.addAction(MusicService.ACTION_TRACK_CHANGED);
-        f.addAction(MusicService.ACTION_QUEUE_UPDATED);
-        ContextCompat.registerReceiver(this, serviceReceiver, f, ContextCompat.RECEIVER_NOT_EXPORTED);
-
         // START: permission + service binding flow
         // Chequeo para Android 11 (R) o superior
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
@@ -332,59 +282,99 @@ public class NowPlayingActivity extends AppCompatActivity {
         }
         // CAMBIO AQUÍ: Usamos 'serviceConnection' (la variable del final)
         bindService(new Intent(this, MusicService.class), serviceConnection, Context.BIND_AUTO_CREATE);
-        handler.post(updateRunnable);
     }
 
 
     /**
-     * Si el servicio ya está conectado, le pasamos la lista encontrada y reproducimos la primera pista.
+     * Escanea la biblioteca en streaming: cada página se pasa a MusicLibrary y a la cola del servicio
+     * en cuanto llega, así la primera canción empieza a sonar sin esperar al resto del escaneo.
      * Si no hay pistas y no hay permisos, lanzamos SAF para que el usuario seleccione la carpeta.
      */
     private void loadTracksAndMaybePlay() {
+        MusicLibrary library = MusicLibrary.getInstance();
+
+        if (library.isLoaded()) {
+            // La biblioteca ya está en memoria (la actividad se recreó): no la volvemos a cargar,
+            // solo sincronizamos y dejamos que el delta llegue a la cola por el listener del servicio
+            if (!library.getTracks().isEmpty()) {
+                offerToQueue(new ArrayList<>(library.getTracks()), true, false);
+            }
+            new Thread(() -> {
+                LibraryDelta delta = MusicScanner.syncMediaStoreIndex(this, LibraryIndex.getInstance(this));
+                if (!delta.isEmpty()) runOnUiThread(() -> library.applyDelta(delta));
+            }).start();
+            return;
+        }
+
         Toast.makeText(this, "Escaneando música...", Toast.LENGTH_SHORT).show();
 
         new Thread(() -> {
-            // 1. Escaneo en segundo plano (rápido)
-            List<Track> tracks = MusicScanner.scanDownloadsAndDocuments(this);
+            // 1. Escaneo en segundo plano, por páginas
+            int[] pages = {0};
+            LibraryDelta delta = MusicScanner.scanDownloadsAndDocuments(this, MusicScanner.PAGE_SIZE, page -> {
+                boolean first = pages[0]++ == 0;
+                runOnUiThread(() -> {
+                    // La biblioteca en memoria se carga una sola vez; después LibraryWatcher le aplica los cambios
+                    // (las páginas del primer escaneo no vienen ordenadas entre sí: addTracks las intercala)
+                    if (first) library.setTracks(Collections.emptyList());
+                    // A la cola van las canciones tal como las guardó la biblioteca (textos compartidos)
+                    List<Track> stored = library.addTracks(page);
+                    // 2. INTENTO DE REPRODUCCIÓN (con la primera página ya suena algo)
+                    offerToQueue(stored, first, false);
+                });
+            });
 
             runOnUiThread(() -> {
-                if (tracks == null || tracks.isEmpty()) {
+                // Cambios de MediaStore encontrados después de entregar el índice guardado
+                library.applyDelta(delta);
+
+                int total = library.getTracks().size();
+                if (total == 0) {
                     Toast.makeText(this, "No se encontraron canciones MP3.", Toast.LENGTH_LONG).show();
                     return;
                 }
-
-                Toast.makeText(this, "¡Encontradas " + tracks.size() + " canciones!", Toast.LENGTH_SHORT).show();
-
-                // 2. INTENTO DE REPRODUCCIÓN
-                if (musicService != null && isBound) {
-                    // Escenario A: El servicio YA está listo
-
-                    // TRUCO DE MAGIA 2.0:
-                    // Solo reiniciamos la lista si NO está sonando nada.
-                    // Así, si cierras y abres la app, no te corta la inspiración.
-                    if (!musicService.isPlaying() && musicService.getQueue().isEmpty()) {
-                        musicService.setQueue(tracks);
-                        musicService.playTrack(0);
-                    } else {
-                        // Opcional: Si ya estaba sonando, quizás solo actualizamos la lista interna
-                        // pero no forzamos el playTrack(0).
-                        // Por ahora, dejémoslo así o forzamos actualización si quieres refrescar archivos nuevos:
-                        musicService.setQueue(tracks);
-                        // musicService.playTrack(0); // <-- Comenta esto si no quieres que se reinicie al abrir
-                    }
-                } else {
-                    // Escenario B: El servicio NO está listo -> Guardamos en espera
-                    Log.d("DEBUG_APP", "Servicio no listo. Guardando en pendingTracks.");
-                    pendingTracks = tracks;
-
-                    // Nos aseguramos de intentar conectar el servicio
-                    startAndBindService();
-                }
+                Toast.makeText(this, "¡Encontradas " + total + " canciones!", Toast.LENGTH_SHORT).show();
             });
         }).start();
     }
 
+    /**
+     * Pasa una página del escaneo a la cola del servicio (hilo principal).
+     * Con la primera página se decide si la cola es nuestra: la tomamos si el servicio no tenía nada
+     * (o si replace, cuando el usuario eligió una carpeta) y arranca la reproducción; las páginas
+     * siguientes se añaden con appendToQueue. Si la cola ya existía no la tocamos: así si cierras
+     * y abres la app no te corta la canción (LibraryWatcher le aplica los cambios de MediaStore).
+     * Tras morir el proceso el servicio recupera la cola guardada (QueueSnapshot) y tampoco se toca.
+     * Si el servicio aún no está conectado, las páginas esperan en pendingTracks.
+     */
+    private void offerToQueue(List<Track> page, boolean first, boolean replace) {
+        if (musicService == null || !isBound) {
+            // El servicio NO está listo -> Guardamos en espera; onServiceConnected las carga
+            if (first || pendingTracks == null) pendingTracks = new ArrayList<>();
+            pendingTracks.addAll(page);
+            if (first) {
+                pendingReplace = replace;
+                // Nos aseguramos de intentar conectar el servicio
+                startAndBindService();
+            }
+            return;
+        }
 
+        if (first) {
+            // Si el servicio está restaurando la cola de la sesión anterior, tampoco: es esa la que sigue
+            fillingQueue = replace || (musicService.getQueue().isEmpty() && !musicService.isRestoringQueue());
+            if (!fillingQueue) return;
+
+            List<Track> queue = new ArrayList<>(page);
+            Collections.sort(queue, MusicLibrary.TITLE_ORDER);
+            musicService.setQueue(queue);
+            if (replace || !musicService.isPlaying()) {
+                musicService.playTrack(0);
+            }
+        } else if (fillingQueue) {
+            musicService.appendToQueue(page);
+        }
+    }
 
     private void launchFolderPicker() {
         try {
@@ -425,128 +415,141 @@ public class NowPlayingActivity extends AppCompatActivity {
 
                     }
                     MusicScanner.saveTreeUri(this, treeUri);
-                    List<Track> safTracks = MusicScanner.scanDocumentTree(this, treeUri);
-
-                    // AÑADIR ESTO:
-                    if (safTracks == null) {
-                        Log.d("DEBUG_APP", "scanDocumentTree devolvió NULL");
-                    } else {
-                        Log.d("DEBUG_APP", "scanDocumentTree encontró " + safTracks.size() + " canciones.");
-                    }
 
-                    if (safTracks != null && !safTracks.isEmpty()) {
-                        Log.d("DEBUG_APP", "Canciones encontradas: " + safTracks.size());
-
-                        if (musicService != null && isBound) {
-                            // Escenario A: El servicio ya está listo
-                            musicService.setQueue(safTracks);
-                            musicService.playTrack(0);
-                        } else {
-                            // Escenario B: El servicio no está listo (tu error actual)
-                            Log.d("DEBUG_APP", "El servicio no está listo, guardando en pendingTracks...");
-                            pendingTracks = safTracks;
-                            // El onServiceConnected se encargará de reproducirlas apenas termine de conectar
-                        }
-                    }
+                    // El recorrido recursivo puede tardar: lo hacemos fuera del hilo principal,
+                    // y la primera página ya reemplaza la cola y empieza a sonar
+                    new Thread(() -> {
+                        int[] pages = {0};
+                        int total = MusicScanner.scanDocumentTree(this, treeUri, MusicScanner.PAGE_SIZE, page -> {
+                            boolean first = pages[0]++ == 0;
+                            runOnUiThread(() -> offerToQueue(page, first, true));
+                        });
+                        Log.d("DEBUG_APP", "scanDocumentTree encontró " + total + " canciones.");
+                    }).start();
                 }
             }
         }
     }
 
-    private void refreshMetadata() {
-        if (musicService == null) return;
-
-        if (musicService != null) {
-            updateShuffleUi(musicService.isShuffleEnabled());
-            updateRepeatUi(musicService.isRepeatOneEnabled());
+    /**
+     * Pinta el estado que llega del bus (ver PlaybackStateBus), rehaciendo solo lo que cambió: con
+     * TRACK textos y carátula, con PLAY_STATE el botón, con POSITION la barra... Al suscribirse llega
+     * todo (ALL). Hilo principal.
+     */
+    private void render(PlaybackSnapshot state, int changes) {
+        if ((changes & PlaybackStateBus.MODES) != 0) {
+            updateShuffleUi(state.shuffle);
+            updateRepeatUi(state.repeatOne);
         }
 
+        Track t = state.currentTrack();
+        if (t == null && !state.queue.isEmpty()) {
+            // Cola sin empezar: se muestra la primera, que cambia con la cola
+            t = state.queue.get(0);
+            if ((changes & PlaybackStateBus.QUEUE) != 0) changes |= PlaybackStateBus.TRACK;
+        }
+        if (t == null) return;
 
-        List<Track> q = musicService.getQueue();
-        int idx = musicService.getCurrentIndex();
-
-        if (q == null || q.isEmpty()) return;
-        if (idx < 0 || idx >= q.size()) idx = 0;
-
-        Track t = q.get(idx);
-
-        runOnUiThread(() -> {
-            // 1. Textos
-            tvTitle.setText(t.title != null ? t.title : "Desconocido");
-            // Esto le dice a Android: "Oye, este texto es importante, muévelo".
-            tvTitle.setSelected(true);
-
-            tvArtist.setText(t.artist != null ? t.artist : "Artista Desconocido");
-            // Si quieres que el artista también se mueva:
-            tvArtist.setSelected(true);
-            if (tvAlbum != null) tvAlbum.setText(t.album != null ? t.album : "");
+        if ((changes & PlaybackStateBus.TRACK) != 0) showTrack(t);
 
-            // 2. Seekbar y Tiempos
-            long dur = t.durationMs > 0 ? t.durationMs : musicService.getDuration();
-            long pos = musicService.getPosition();
+        // Seekbar y tiempos (desde aquí la barra la mueve progressTicker mientras suena)
+        if ((changes & (PlaybackStateBus.TRACK | PlaybackStateBus.POSITION)) != 0 && !fromUser) {
+            long dur = t.durationMs > 0 ? t.durationMs : state.durationMs;
+            long pos = state.positionAt(SystemClock.elapsedRealtime());
             if (dur > 0) {
                 seekBar.setMax((int) dur);
                 seekBar.setProgress((int) pos);
-                tvTimeTotal.setText(formatTime(dur)); // Asegúrate de actualizar el texto total
+                tvTimeTotal.setText(formatTime(dur));
             }
             tvTimeCur.setText(formatTime(pos));
+            shownSecond = pos / 1000;
+        }
 
-            // 3. Botón Play/Pause
-            if (btnPlay != null) {
-                btnPlay.setImageResource(musicService.isPlaying() ?
-                        R.drawable.ic_pause_minimal : R.drawable.ic_play_minimal);
-            }
-
-            // 4. --- CARGA DE PORTADA (NUEVO) ---
-            // Usamos un hilo de fondo rápido para no congelar la UI decodificando la imagen
-            new Thread(() -> {
-                android.graphics.Bitmap artBitmap = null;
-                try {
-                    android.media.MediaMetadataRetriever mmr = new android.media.MediaMetadataRetriever();
-                    // Importante: Usar el URI parseado
-                    mmr.setDataSource(this, Uri.parse(t.path));
-
-                    byte[] artBytes = mmr.getEmbeddedPicture();
-                    if (artBytes != null) {
-                        artBitmap = android.graphics.BitmapFactory.decodeByteArray(artBytes, 0, artBytes.length);
-                    }
-                    mmr.release();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        // Botón Play/Pause, y la barra avanza sola solo si suena
+        if ((changes & PlaybackStateBus.PLAY_STATE) != 0 && btnPlay != null) {
+            btnPlay.setImageResource(state.playing ? R.drawable.ic_pause_minimal : R.drawable.ic_play_minimal);
+        }
+        updateTicker(state.playing);
+    }
 
-                // Volvemos al hilo principal para pintar la imagen
-                android.graphics.Bitmap finalArt = artBitmap;
-                // Dentro de refreshMetadata -> runOnUiThread de la imagen...
+    // Textos y carátula de la canción actual: solo cuando cambia de canción
+    private void showTrack(Track t) {
+        tvTitle.setText(t.title != null ? t.title : "Desconocido");
+        // Esto le dice a Android: "Oye, este texto es importante, muévelo".
+        tvTitle.setSelected(true);
+
+        tvArtist.setText(t.artist != null ? t.artist : "Artista Desconocido");
+        // Si quieres que el artista también se mueva:
+        tvArtist.setSelected(true);
+        if (tvAlbum != null) tvAlbum.setText(t.album != null ? t.album : "");
+
+        // Primero la caché en memoria (instantáneo); si no, un hilo de fondo (disco o MP3)
+        ArtworkCache artwork = ArtworkCache.getInstance(this);
+        coverPath = t.path;
+        // Normalmente ya está: el servicio la precargó cuando esta canción pasó a ser la siguiente/anterior
+        CoverLoader loader = CoverLoader.getInstance(this);
+        android.graphics.Bitmap cached = artwork.acquire(t.path, coverSize);
+        if (cached != null || artwork.isKnownMissing(t.path, coverSize)) {
+            loader.cancel(this);
+            showCover(cached);
+            return;
+        }
+        // Si no, el cargador compartido (si el precargado está en marcha, nos enganchamos a él).
+        // El resultado llega en el hilo principal y solo se pinta si no cambió la canción mientras tanto;
+        // se vuelve a pedir con acquire porque el bitmap entregado no está protegido contra el pool
+        loader.load(this, t.path, coverSize, CoverLoader.Priority.VISIBLE, (path, art) -> {
+            if (path.equals(coverPath)) showCover(artwork.acquire(path, coverSize));
+        });
+    }
 
-                runOnUiThread(() -> {
-                    if (ivCover != null) {
-                        if (finalArt != null) {
-                            // CASO 1: Hay portada real
-                            // Cambiamos a centerCrop para que la foto llene el cuadro
-                            ivCover.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                            ivCover.setPadding(0, 0, 0, 0); // Quitamos el padding
-                            ivCover.setImageBitmap(finalArt);
-                        } else {
-                            // CASO 2: No hay portada (Usar Nota Musical)
-                            int padding = (int) (80 * getResources().getDisplayMetrics().density);
-                            ivCover.setPadding(padding, padding, padding, padding);
-
-                            ivCover.setImageResource(R.drawable.ic_note_minimal);
-                        }
+    // art viene de ArtworkCache.acquire (o es null): soltamos la que se pintaba antes
+    private void showCover(android.graphics.Bitmap art) {
+        if (ivCover == null) return;
+        ArtworkCache.getInstance(this).release(coverBitmap);
+        coverBitmap = art;
+        if (art != null) {
+            // CASO 1: Hay portada real
+            // Cambiamos a centerCrop para que la foto llene el cuadro
+            ivCover.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            ivCover.setPadding(0, 0, 0, 0); // Quitamos el padding
+            ivCover.setImageBitmap(art);
+        } else {
+            // CASO 2: No hay portada (Usar Nota Musical)
+            int padding = (int) (80 * getResources().getDisplayMetrics().density);
+            ivCover.setPadding(padding, padding, padding, padding);
 
-                    }
-                });
-            }).start();
-            // -----------------------------------
-        });
+            ivCover.setImageResource(R.drawable.ic_note_minimal);
+        }
     }
 
 
+    // Se llama en cada frame mientras suena: solo toca lo que cambió a la vista
     private void updateSeekUi(long pos, long dur) {
-        tvTimeCur.setText(formatTime(pos));
-        tvTimeTotal.setText(formatTime(dur));
-        if (dur > 0) seekBar.setProgress((int) pos);
+        if (pos / 1000 != shownSecond) {
+            shownSecond = pos / 1000;
+            tvTimeCur.setText(formatTime(pos));
+        }
+        if (dur <= 0) return;
+        if (seekBar.getMax() != dur) {
+            seekBar.setMax((int) dur);
+            tvTimeTotal.setText(formatTime(dur));
+        }
+        // Menos de un píxel de avance no se ve: no invalidamos la barra por eso
+        long msPerPixel = dur / Math.max(1, seekBar.getWidth());
+        if (Math.abs(pos - seekBar.getProgress()) >= Math.max(1, msPerPixel)) seekBar.setProgress((int) pos);
+    }
+
+    // Pide el tick del próximo frame si la pantalla se ve y está sonando; si no, lo quita. playing: el
+    // de la foto que se está pintando, no el del servicio (puede ir ya por otra que aún no llegó)
+    private void updateTicker(boolean playing) {
+        boolean run = visible && musicService != null && playing;
+        if (run && !tickerPosted) {
+            Choreographer.getInstance().postFrameCallback(progressTicker);
+            tickerPosted = true;
+        } else if (!run && tickerPosted) {
+            Choreographer.getInstance().removeFrameCallback(progressTicker);
+            tickerPosted = false;
+        }
     }
 
     private String formatTime(long ms) {
@@ -559,8 +562,11 @@ public class NowPlayingActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        handler.removeCallbacks(updateRunnable);
-        try { unregisterReceiver(serviceReceiver); } catch (Exception ignored) {}
+        Choreographer.getInstance().removeFrameCallback(progressTicker);
+        CoverLoader.getInstance(this).cancel(this);
+        ArtworkCache.getInstance(this).release(coverBitmap);
+        coverBitmap = null;
+        if (musicService != null) musicService.getStateBus().unsubscribe(stateListener);
         if (bound) {
             unbindService(serviceConnection);
             bound = false;
@@ -593,23 +599,25 @@ public class NowPlayingActivity extends AppCompatActivity {
 
             // AQUÍ ESTÁ LA MAGIA:
             // Si teníamos canciones esperando (porque el permiso se dio apenas), las cargamos ahora.
+            // Si el escaneo sigue, las páginas que falten se añadirán a la cola al llegar.
             if (pendingTracks != null && !pendingTracks.isEmpty()) {
                 Log.d("DEBUG_APP", "Cargando " + pendingTracks.size() + " canciones de la lista de espera.");
 
-                musicService.setQueue(pendingTracks);
-                musicService.playTrack(0); // Esto inicia la reproducción automáticamente
-
+                List<Track> pending = pendingTracks;
                 pendingTracks = null; // Limpiamos la lista de espera
+                offerToQueue(pending, true, pendingReplace);
             }
 
-            // Actualizamos la pantalla (título, artista, etc.)
-            refreshMetadata();
+            // Actualizamos la pantalla (título, artista, etc.): al suscribirse llega el estado entero
+            if (visible) musicService.getStateBus().subscribe(stateListener);
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
+            if (musicService != null) musicService.getStateBus().unsubscribe(stateListener);
             musicService = null;
             isBound = false;
+            updateTicker(false);
         }
     };
 
@@ -627,17 +635,19 @@ public class NowPlayingActivity extends AppCompatActivity {
         }
         bindService(intent, serviceConnection, Context.BIND_AUTO_CREATE);
 
-        // AGREGAR ESTO: Iniciar el reloj
-        handler.removeCallbacks(updateRunnable); // Por seguridad para no duplicar
-        handler.post(updateRunnable);
+        // Al volver, el estado entero (y la barra vuelve a avanzar si suena); sin servicio todavía, al conectar
+        visible = true;
+        if (musicService != null) musicService.getStateBus().subscribe(stateListener);
     }
 
     @Override
     protected void onStop() {
         super.onStop();
 
-        // AGREGAR ESTO: Detener el reloj para ahorrar batería
-        handler.removeCallbacks(updateRunnable);
+        // En segundo plano la pantalla no cuesta nada: ni frames, ni entregas del bus, ni llamadas al servicio
+        visible = false;
+        updateTicker(false);
+        if (musicService != null) musicService.getStateBus().unsubscribe(stateListener);
 
         if (isBound) {
             unbindService(serviceConnection);
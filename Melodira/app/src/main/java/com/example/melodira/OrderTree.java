@@ -0,0 +1,227 @@
+package com.example.melodira;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Secuencia de enteros distintos (índices de canción) como treap implícito: árbol de orden
+ * estadístico donde la clave es la posición y cada nodo guarda el tamaño de su subárbol.
+ * <ul>
+ *   <li>{@link #get}, {@link #insert}, {@link #remove} y {@link #move}: O(log n) esperado.</li>
+ *   <li>{@link #indexOf}: O(log n), subiendo por los padres desde el nodo del valor.</li>
+ *   <li>Construir desde un array y {@link #toArray}: O(n).</li>
+ * </ul>
+ * Los nodos no son objetos: el nodo de un valor v es la posición v de unos arrays paralelos (hijos,
+ * padre, tamaño, prioridad), así que no hay una búsqueda aparte para pasar de valor a nodo.
+ * No es thread-safe.
+ */
+final class OrderTree {
+
+    private static final int NIL = -1;
+
+    private final Random random;
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    private int[] parent = new int[0];
+    private int[] size = new int[0];   // 0: el valor no está en la secuencia
+    private int[] priority = new int[0];
+    private int root = NIL;
+
+    // Resultado de split (no se puede devolver un par sin crear objetos)
+    private int splitLeft, splitRight;
+
+    OrderTree(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Secuencia con values en ese orden. Construcción O(n) con una pila (árbol cartesiano por
+     * prioridad): el resultado es el mismo treap que insertando uno a uno, sin los n log n.
+     */
+    OrderTree(int[] values, Random random) {
+        this(random);
+        int max = -1;
+        for (int v : values) max = Math.max(max, v);
+        ensureCapacity(max + 1);
+
+        int[] stack = new int[values.length];
+        int top = 0;
+        for (int v : values) {
+            if (size[v] != 0) throw new IllegalArgumentException("Valor repetido: " + v);
+            reset(v);
+            int last = NIL;
+            while (top > 0 && priority[stack[top - 1]] < priority[v]) {
+                last = stack[--top];
+                update(last);
+            }
+            setLeft(v, last);
+            if (top > 0) setRight(stack[top - 1], v);
+            stack[top++] = v;
+        }
+        while (top > 0) update(stack[--top]);
+        root = values.length > 0 ? stack[0] : NIL;
+        if (root != NIL) parent[root] = NIL;
+    }
+
+    int size() {
+        return root == NIL ? 0 : size[root];
+    }
+
+    /** Valor en la posición k. */
+    int get(int k) {
+        checkIndex(k, size());
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            if (k < leftSize) {
+                node = left[node];
+            } else if (k == leftSize) {
+                return node;
+            } else {
+                k -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    /** Posición de value, o -1 si no está. */
+    int indexOf(int value) {
+        if (value < 0 || value >= size.length || size[value] == 0) return -1;
+        int rank = sizeOf(left[value]);
+        for (int node = value; parent[node] != NIL; node = parent[node]) {
+            int p = parent[node];
+            if (right[p] == node) rank += sizeOf(left[p]) + 1;
+        }
+        return rank;
+    }
+
+    /** Inserta value (que no puede estar ya) en la posición k; los de k en adelante avanzan uno. */
+    void insert(int k, int value) {
+        checkIndex(k, size() + 1);
+        if (value < 0) throw new IllegalArgumentException("Valor negativo: " + value);
+        ensureCapacity(value + 1);
+        if (size[value] != 0) throw new IllegalArgumentException("Valor repetido: " + value);
+        reset(value);
+        split(root, k);
+        int a = splitLeft, b = splitRight;
+        root = merge(merge(a, value), b);
+        parent[root] = NIL;
+    }
+
+    /** Quita y devuelve el valor de la posición k. */
+    int remove(int k) {
+        checkIndex(k, size());
+        split(root, k);
+        int a = splitLeft;
+        split(splitRight, 1);
+        int value = splitLeft, b = splitRight;
+        size[value] = 0;
+        root = merge(a, b);
+        if (root != NIL) parent[root] = NIL;
+        return value;
+    }
+
+    /** Mueve el valor de la posición from a la posición to (como quitar e insertar). */
+    void move(int from, int to) {
+        if (from == to) {
+            checkIndex(from, size());
+            return;
+        }
+        checkIndex(to, size());
+        insert(to, remove(from));
+    }
+
+    int[] toArray() {
+        int[] out = new int[size()];
+        // Recorrido en orden sin recursión: bajar por la izquierda, anotar, seguir por la derecha
+        int[] stack = new int[64];
+        int top = 0, w = 0;
+        int node = root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = node;
+                node = left[node];
+            }
+            node = stack[--top];
+            out[w++] = node;
+            node = right[node];
+        }
+        return out;
+    }
+
+    // Separa t en sus primeros k elementos (splitLeft) y el resto (splitRight)
+    private void split(int t, int k) {
+        if (t == NIL) {
+            splitLeft = splitRight = NIL;
+            return;
+        }
+        int leftSize = sizeOf(left[t]);
+        if (k <= leftSize) {
+            split(left[t], k);
+            setLeft(t, splitRight);
+            update(t);
+            splitRight = t;
+        } else {
+            split(right[t], k - leftSize - 1);
+            setRight(t, splitLeft);
+            update(t);
+            splitLeft = t;
+        }
+        if (splitLeft != NIL) parent[splitLeft] = NIL;
+        if (splitRight != NIL) parent[splitRight] = NIL;
+    }
+
+    // Une a (entero antes) con b; la raíz es la de mayor prioridad
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priority[a] > priority[b]) {
+            setRight(a, merge(right[a], b));
+            update(a);
+            return a;
+        } else {
+            setLeft(b, merge(a, left[b]));
+            update(b);
+            return b;
+        }
+    }
+
+    private void setLeft(int node, int child) {
+        left[node] = child;
+        if (child != NIL) parent[child] = node;
+    }
+
+    private void setRight(int node, int child) {
+        right[node] = child;
+        if (child != NIL) parent[child] = node;
+    }
+
+    private void update(int node) {
+        size[node] = 1 + sizeOf(left[node]) + sizeOf(right[node]);
+    }
+
+    private int sizeOf(int node) {
+        return node == NIL ? 0 : size[node];
+    }
+
+    private void reset(int v) {
+        left[v] = right[v] = parent[v] = NIL;
+        size[v] = 1;
+        priority[v] = random.nextInt();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= size.length) return;
+        int n = Math.max(capacity, size.length * 2);
+        left = Arrays.copyOf(left, n);
+        right = Arrays.copyOf(right, n);
+        parent = Arrays.copyOf(parent, n);
+        size = Arrays.copyOf(size, n);
+        priority = Arrays.copyOf(priority, n);
+    }
+
+    private static void checkIndex(int k, int bound) {
+        if (k < 0 || k >= bound) throw new IndexOutOfBoundsException("Posición " + k);
+    }
+}
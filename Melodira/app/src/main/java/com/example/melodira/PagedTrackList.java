@@ -0,0 +1,216 @@
+package com.example.melodira;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Executor;
+
+/**
+ * Lista de canciones de tamaño fijo que se lee por páginas de una {@link PageSource} (un Cursor del
+ * índice, ver LibraryIndex.openTitleCursor) y solo guarda las páginas cercanas a lo que se está mirando.
+ * <ul>
+ *   <li>{@link #get} de una posición sin cargar devuelve null (fila de relleno) y pide su página en
+ *   segundo plano; al llegar se avisa con {@link Listener#onRangeLoaded} para rebindear esas filas.</li>
+ *   <li>Al tocar una página se piden también la anterior y la siguiente.</li>
+ *   <li>Con más de maxPages cargadas se descartan las más lejanas a la última tocada.</li>
+ *   <li>Si el origen deja de valer (loadPage lanza IllegalStateException) se cierra la lista y se avisa
+ *   con {@link #setOnSourceChanged}: quien la muestra tiene que cambiarla por otra.</li>
+ * </ul>
+ * Lo que no crece con la biblioteca es el trabajo de la pantalla: montar la lista es leer una página
+ * (sin diff de la lista entera) y solo hay maxPages páginas de filas. La cola del servicio, eso sí,
+ * sigue teniendo un Track por canción.
+ * Las páginas se leen en loader (un solo hilo: el Cursor no es thread-safe) y todo lo demás, incluido
+ * get, va en el hilo de delivery (el principal).
+ */
+public final class PagedTrackList extends AbstractList<Track> implements RandomAccess {
+
+    /** Origen de las páginas. Solo se llama desde el hilo loader. */
+    public interface PageSource {
+        /**
+         * Canciones [offset, offset + limit) en orden de lista. Puede devolver menos si la tabla encogió.
+         * IllegalStateException: el origen ya no corresponde a esta lista.
+         */
+        List<Track> loadPage(int offset, int limit);
+
+        default void close() {}
+    }
+
+    public interface Listener {
+        /** Las filas [from, from + count) ya tienen su canción. */
+        void onRangeLoaded(int from, int count);
+    }
+
+    private final PageSource source;
+    private final int size;
+    private final int pageSize;
+    private final int maxPages;
+    private final Executor loader;
+    private final Executor delivery;
+
+    private final Track[][] pages;
+    private final boolean[] loading;
+    private final LongIntMap positionById = new LongIntMap(); // Solo de las páginas cargadas
+    private int loadedPages;
+    private int lastPage = -1;
+    private Listener listener;
+    private Runnable onSourceChanged;
+    private volatile boolean closed; // También se lee en el hilo loader
+
+    public PagedTrackList(PageSource source, int size, int pageSize, int maxPages,
+                          Executor loader, Executor delivery) {
+        if (pageSize <= 0 || maxPages < 3) throw new IllegalArgumentException("pageSize/maxPages");
+        this.source = source;
+        this.size = size;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.loader = loader;
+        this.delivery = delivery;
+        int pageCount = (size + pageSize - 1) / pageSize;
+        pages = new Track[pageCount][];
+        loading = new boolean[pageCount];
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Se llama (en delivery) si una página descubre que el origen ya no vale. La lista queda cerrada. */
+    public void setOnSourceChanged(Runnable action) {
+        onSourceChanged = action;
+    }
+
+    /** La canción en index, o null si su página aún no está cargada (queda pedida). */
+    @Override
+    public Track get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Índice " + index);
+        int page = index / pageSize;
+        touch(page);
+        Track[] rows = pages[page];
+        return rows != null ? rows[index - page * pageSize] : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** true si index ya tiene su canción (get no devolverá null). No pide nada. */
+    public boolean isLoaded(int index) {
+        return index >= 0 && index < size && pages[index / pageSize] != null;
+    }
+
+    /** Busca por id solo en las páginas cargadas (las que se ven o están cerca): -1 si no está en ellas. */
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Track ? positionById.get(((Track) o).id) : -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Carga ya, en el hilo que llama, la página de position y sus vecinas. Para llamarlo desde el hilo
+     * loader antes de publicar la lista: así la primera pantalla se dibuja sin filas de relleno.
+     * Las excepciones de loadPage llegan a quien llama.
+     */
+    public void prime(int position) {
+        if (size == 0) return;
+        int page = Math.max(0, Math.min(position, size - 1)) / pageSize;
+        lastPage = page;
+        for (int p = Math.max(0, page - 1); p <= Math.min(pages.length - 1, page + 1); p++) {
+            if (pages[p] == null) store(p, source.loadPage(p * pageSize, pageLength(p)));
+        }
+    }
+
+    /** Deja de cargar y cierra el origen (en el hilo loader, detrás de lo que esté en curso). */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        listener = null;
+        onSourceChanged = null;
+        loader.execute(source::close);
+    }
+
+    private void touch(int page) {
+        if (page == lastPage && pages[page] != null) return;
+        lastPage = page;
+        request(page);
+        if (page > 0) request(page - 1);
+        if (page + 1 < pages.length) request(page + 1);
+    }
+
+    private void request(int page) {
+        if (closed || pages[page] != null || loading[page]) return;
+        loading[page] = true;
+        int from = page * pageSize;
+        int count = pageLength(page);
+        loader.execute(() -> {
+            List<Track> rows = null;
+            boolean stale = false;
+            try {
+                if (!closed) rows = source.loadPage(from, count);
+            } catch (IllegalStateException e) {
+                stale = true;
+            } catch (RuntimeException e) {
+                // Base de datos cerrada o borrada a medias: la página se queda sin cargar
+            }
+            List<Track> loaded = rows;
+            boolean changed = stale;
+            delivery.execute(() -> {
+                if (changed) onStale();
+                else onLoaded(page, loaded);
+            });
+        });
+    }
+
+    // El origen no es el de esta lista: no se guarda nada más y se avisa una sola vez
+    private void onStale() {
+        if (closed) return;
+        Runnable action = onSourceChanged;
+        close();
+        if (action != null) action.run();
+    }
+
+    private void onLoaded(int page, List<Track> rows) {
+        loading[page] = false;
+        // Sin filas (error o lista cerrada): la página se volverá a pedir la próxima vez que se toque
+        if (closed || rows == null) return;
+        store(page, rows);
+        evictFarPages();
+        if (listener != null) listener.onRangeLoaded(page * pageSize, pageLength(page));
+    }
+
+    private void store(int page, List<Track> rows) {
+        // Si la tabla encogió desde que se contó, las filas que faltan quedan como relleno
+        Track[] copy = new Track[pageLength(page)];
+        for (int i = 0; i < copy.length && i < rows.size(); i++) {
+            copy[i] = rows.get(i);
+            positionById.putIfAbsent(copy[i].id, page * pageSize + i);
+        }
+        if (pages[page] == null) loadedPages++;
+        pages[page] = copy;
+    }
+
+    private void evictFarPages() {
+        while (loadedPages > maxPages) {
+            int far = -1;
+            for (int p = 0; p < pages.length; p++) {
+                if (pages[p] != null && (far < 0 || Math.abs(p - lastPage) > Math.abs(far - lastPage))) far = p;
+            }
+            int from = far * pageSize;
+            for (Track t : pages[far]) {
+                // Solo si apunta a esta página (un id repetido puede estar en otra que sigue cargada)
+                int pos = t != null ? positionById.get(t.id) : LongIntMap.MISSING;
+                if (pos >= from && pos < from + pageSize) positionById.remove(t.id);
+            }
+            pages[far] = null;
+            loadedPages--;
+        }
+    }
+
+    private int pageLength(int page) {
+        return Math.min(pageSize, size - page * pageSize);
+    }
+}
@@ -0,0 +1,493 @@
+package com.example.melodira;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Envuelve dos MediaPlayer: el que suena y el de la siguiente canción, ya preparado y encadenado con
+ * setNextMediaPlayer para que el cambio de canción no tenga hueco.
+ * <p>
+ * Todo se prepara con prepareAsync (nunca bloquea el hilo que llama). Como MediaPlayer lanza
+ * IllegalStateException si se le pide algo en un estado que no toca, el estado de cada reproductor
+ * se lleva aquí explícitamente y cada operación lo comprueba antes:
+ * <pre>
+ *   IDLE -> PREPARING -> PREPARED -> STARTED <-> PAUSED
+ *                                      |
+ *                                  COMPLETED (sin siguiente encadenada)
+ *   cualquiera -> ERROR (hasta el próximo load)
+ * </pre>
+ * Se mide el tiempo hasta el primer audio de cada canción: desde load() hasta start(), o 0 si entró
+ * encadenada sin hueco.
+ * <p>
+ * Con fundido cruzado (setCrossfadeMs &gt; 0) no se encadena: unos segundos antes del final se arranca
+ * la siguiente a volumen 0 y las dos se solapan mientras {@link AudioFader} baja una y sube la otra
+ * desde su hilo de audio. La saliente sigue sonando en un tercer reproductor hasta que termina el fundido.
+ * <p>
+ * No es thread-safe: se usa desde un solo hilo, el mismo con cuyo Looper se crearon los MediaPlayer
+ * (ahí llegan sus callbacks).
+ */
+public class PlaybackEngine {
+    private static final String TAG = "PlaybackEngine";
+
+    public enum State { IDLE, PREPARING, PREPARED, STARTED, PAUSED, COMPLETED, ERROR }
+
+    public interface Callback {
+        /** La canción empezó a sonar. timeToFirstAudioMs es 0 si entró encadenada (sin hueco). */
+        void onTrackStarted(Track track, long timeToFirstAudioMs, boolean gapless);
+
+        /** La canción terminó y no había siguiente encadenada. */
+        void onCompletion(Track track);
+
+        void onError(Track track, int what, int extra);
+    }
+
+    private final Context context;
+    private final Callback callback;
+
+    // Reproductor actual
+    private MediaPlayer player;
+    private State state = State.IDLE;
+    private Track track;
+    private boolean playWhenReady;
+    private long loadStartedAt;
+    private int pendingSeekMs = -1;
+
+    // Siguiente canción, preparándose en paralelo
+    private MediaPlayer nextPlayer;
+    private State nextState = State.IDLE;
+    private Track nextTrack;
+    private boolean nextChained;
+
+    // Fundido cruzado: 0 = desactivado (cambio sin hueco con setNextMediaPlayer)
+    private int crossfadeMs;
+    // La canción saliente mientras dura el fundido, y el reproductor libre para la próxima precarga
+    private MediaPlayer fadingOut;
+    private MediaPlayer spare;
+    private final AudioFader fader = new AudioFader();
+    // Hilo del motor (el que lo creó): aquí vuelven los finales de rampa y el disparo del fundido
+    private final Handler handler = new Handler(Looper.myLooper());
+    private final Runnable crossfadeTrigger = this::startCrossfade;
+    // Cambia en cada load(): un fadeOut viejo no debe pausar la canción nueva
+    private int loadGeneration;
+
+    // Tiempo hasta el primer audio (solo de las cargas con hueco)
+    private long lastTimeToFirstAudioMs = -1;
+    private long totalTimeToFirstAudioMs;
+    private int measuredLoads;
+
+    public PlaybackEngine(Context context, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.callback = callback;
+        player = createPlayer();
+        nextPlayer = createPlayer();
+    }
+
+    private MediaPlayer createPlayer() {
+        MediaPlayer mp = new MediaPlayer();
+        mp.setOnPreparedListener(this::onPrepared);
+        mp.setOnCompletionListener(this::onCompletion);
+        mp.setOnErrorListener(this::onError);
+        return mp;
+    }
+
+    // --- Carga ---
+
+    /** Carga la canción en el reproductor actual (asíncrono). Si playWhenReady, arranca al terminar de preparar. */
+    public void load(Track t, boolean playWhenReady) {
+        this.playWhenReady = playWhenReady;
+        pendingSeekMs = -1;
+        loadStartedAt = SystemClock.elapsedRealtime();
+        loadGeneration++;
+        finishCrossfade();
+        fader.cancel(player);
+
+        // Si justo es la que ya teníamos preparada, la promovemos en vez de volver a prepararla
+        if (t == nextTrack && (nextState == State.PREPARED || nextState == State.PREPARING)) {
+            swapPlayers();
+            setVolume(1.0f);
+            if (state == State.PREPARED) onPrepared(player);
+            return;
+        }
+
+        track = t;
+        // El siguiente encadenado era el siguiente de la canción anterior: ya no vale
+        clearNext();
+        if (prepare(player, t)) {
+            state = State.PREPARING;
+        } else {
+            state = State.ERROR;
+            reportOpenFailure(player, t);
+        }
+    }
+
+    /**
+     * Prepara t en el segundo reproductor y, cuando esté listo, lo encadena al actual.
+     * Si ya estaba preparada o preparándose, no hace nada. null quita lo que hubiera.
+     */
+    public void preloadNext(Track t) {
+        if (t == null) {
+            clearNext();
+            return;
+        }
+        if (t == nextTrack && nextState != State.ERROR) return;
+
+        clearNext();
+        nextTrack = t;
+        if (prepare(nextPlayer, t)) {
+            nextState = State.PREPARING;
+        } else {
+            nextState = State.ERROR;
+            reportOpenFailure(nextPlayer, t);
+        }
+    }
+
+    private boolean prepare(MediaPlayer mp, Track t) {
+        try {
+            mp.reset();
+            if (t.path.startsWith("content://")) {
+                mp.setDataSource(context, Uri.parse(t.path));
+            } else {
+                mp.setDataSource(t.path);
+            }
+            mp.prepareAsync();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "No se pudo abrir " + t.path + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * No se pudo ni abrir el archivo (setDataSource lanzó): se trata igual que un error de MediaPlayer,
+     * por {@link #onError}, y ya fuera de la llamada de quien cargó (que todavía no ha terminado).
+     */
+    private void reportOpenFailure(MediaPlayer mp, Track t) {
+        handler.post(() -> {
+            boolean stillLoaded = mp == player ? t == track && state == State.ERROR
+                    : mp == nextPlayer && t == nextTrack && nextState == State.ERROR;
+            if (stillLoaded) onError(mp, MediaPlayer.MEDIA_ERROR_UNKNOWN, MediaPlayer.MEDIA_ERROR_IO);
+        });
+    }
+
+    private void clearNext() {
+        handler.removeCallbacks(crossfadeTrigger);
+        if (nextChained && isReady(state)) {
+            player.setNextMediaPlayer(null);
+        }
+        nextChained = false;
+        if (nextState != State.IDLE) {
+            nextPlayer.reset();
+        }
+        nextState = State.IDLE;
+        nextTrack = null;
+    }
+
+    private void swapPlayers() {
+        handler.removeCallbacks(crossfadeTrigger);
+        if (isReady(state) && nextChained) player.setNextMediaPlayer(null);
+        player.reset();
+
+        MediaPlayer old = player;
+        player = nextPlayer;
+        state = nextState;
+        track = nextTrack;
+
+        nextPlayer = old;
+        nextState = State.IDLE;
+        nextTrack = null;
+        nextChained = false;
+    }
+
+    private void chainNext() {
+        if (nextState != State.PREPARED || !isReady(state) || state == State.COMPLETED) return;
+        if (crossfadeMs > 0) {
+            scheduleCrossfade();
+        } else if (!nextChained) {
+            player.setNextMediaPlayer(nextPlayer);
+            nextChained = true;
+        }
+    }
+
+    // --- Fundido cruzado ---
+
+    /** Duración del fundido cruzado en ms; 0 lo desactiva y vuelve al encadenado sin hueco. */
+    public void setCrossfadeMs(int ms) {
+        crossfadeMs = Math.max(0, ms);
+        handler.removeCallbacks(crossfadeTrigger);
+        if (crossfadeMs > 0 && nextChained) {
+            // Con fundido la siguiente se arranca a mano: desencadenamos
+            if (isReady(state)) player.setNextMediaPlayer(null);
+            nextChained = false;
+        }
+        chainNext();
+    }
+
+    public int getCrossfadeMs() {
+        return crossfadeMs;
+    }
+
+    // Programa el arranque del fundido para que termine justo con la canción actual
+    private void scheduleCrossfade() {
+        handler.removeCallbacks(crossfadeTrigger);
+        if (state != State.STARTED || nextState != State.PREPARED) return;
+        int duration = player.getDuration();
+        if (duration <= 0) return; // Sin duración conocida no sabemos cuándo empezar
+        long delay = duration - player.getCurrentPosition() - fadeLength(duration);
+        handler.postDelayed(crossfadeTrigger, Math.max(0, delay));
+    }
+
+    // En canciones muy cortas el fundido no puede ocupar más de la mitad
+    private int fadeLength(int duration) {
+        return Math.min(crossfadeMs, duration / 2);
+    }
+
+    private void startCrossfade() {
+        if (crossfadeMs <= 0 || state != State.STARTED || nextState != State.PREPARED) return;
+
+        // La posición puede haberse desviado del cálculo (buffering): si falta, reprogramamos
+        int duration = player.getDuration();
+        int remaining = duration - player.getCurrentPosition();
+        int fadeMs = fadeLength(duration);
+        if (remaining > fadeMs + 50) {
+            handler.postDelayed(crossfadeTrigger, remaining - fadeMs);
+            return;
+        }
+        fadeMs = Math.max(1, Math.min(fadeMs, remaining));
+        finishCrossfade(); // Por si quedaba otro a medias
+
+        MediaPlayer out = player;
+        MediaPlayer in = nextPlayer;
+        in.setVolume(0f, 0f);
+        in.start();
+        Log.d(TAG, "Fundido de " + fadeMs + " ms a " + nextTrack.path);
+
+        // La entrante pasa a ser la actual; la saliente queda sonando aparte hasta que se apague
+        fadingOut = out;
+        player = in;
+        state = State.STARTED;
+        track = nextTrack;
+        nextPlayer = spare != null ? spare : createPlayer();
+        spare = null;
+        nextState = State.IDLE;
+        nextTrack = null;
+        nextChained = false;
+
+        fader.fade(out, v -> out.setVolume(v, v), 1f, 0f, fadeMs, AudioFader.Curve.EQUAL_POWER,
+                () -> handler.post(() -> {
+                    if (fadingOut == out) finishCrossfade();
+                }));
+        fader.fade(in, v -> in.setVolume(v, v), 0f, 1f, fadeMs, AudioFader.Curve.EQUAL_POWER, null);
+
+        callback.onTrackStarted(track, 0, true);
+    }
+
+    // Corta el fundido en curso: la saliente se para ya y la actual queda a volumen completo
+    private void finishCrossfade() {
+        if (fadingOut == null) return;
+        fader.cancel(fadingOut);
+        fadingOut.reset();
+        spare = fadingOut;
+        fadingOut = null;
+        setVolume(1.0f);
+    }
+
+    // --- Fundidos de play/pausa ---
+
+    /**
+     * Arranca la actual entrando desde silencio. El volumen 0 se pone aquí mismo, antes de start: si
+     * fuera por el hilo de audio como {@link #setVolume}, el primer trozo podría sonar a volumen completo.
+     */
+    public void startWithFadeIn(long durationMs) {
+        if (isReady(state)) {
+            fader.cancel(player);
+            player.setVolume(0f, 0f);
+        }
+        start(); // Si aún está preparando, arranca al terminar (la rampa ya la habrá bajado)
+        fadeIn(durationMs);
+    }
+
+    /** Sube el volumen de la actual de 0 a 1 desde el hilo de audio. */
+    public void fadeIn(long durationMs) {
+        MediaPlayer mp = player;
+        fader.fade(mp, v -> mp.setVolume(v, v), 0f, 1f, durationMs, AudioFader.Curve.LINEAR, null);
+    }
+
+    /**
+     * Baja el volumen de la actual a 0 y después ejecuta onDone en el hilo del motor, salvo que
+     * mientras tanto se haya cargado otra canción.
+     */
+    public void fadeOut(long durationMs, Runnable onDone) {
+        MediaPlayer mp = player;
+        int generation = loadGeneration;
+        fader.fade(mp, v -> mp.setVolume(v, v), 1f, 0f, durationMs, AudioFader.Curve.LINEAR,
+                () -> handler.post(() -> {
+                    if (generation == loadGeneration && mp == player) onDone.run();
+                }));
+    }
+
+    // --- Callbacks de MediaPlayer ---
+
+    private void onPrepared(MediaPlayer mp) {
+        if (mp == nextPlayer) {
+            nextState = State.PREPARED;
+            chainNext();
+            return;
+        }
+        if (mp != player) return;
+
+        state = State.PREPARED;
+        if (pendingSeekMs >= 0) {
+            player.seekTo(pendingSeekMs);
+            pendingSeekMs = -1;
+        }
+        if (playWhenReady) {
+            player.start();
+            state = State.STARTED;
+            long ttfa = SystemClock.elapsedRealtime() - loadStartedAt;
+            recordTimeToFirstAudio(ttfa);
+            callback.onTrackStarted(track, ttfa, false);
+        }
+        chainNext();
+    }
+
+    private void onCompletion(MediaPlayer mp) {
+        if (mp != player) return;
+
+        if (nextChained) {
+            // MediaPlayer ya arrancó el siguiente por su cuenta: solo cambiamos los papeles
+            Log.d(TAG, "Cambio sin hueco a " + nextTrack.path);
+            state = State.COMPLETED;
+            nextChained = false; // Ya se usó: no hay que desencadenarlo
+            swapPlayers();
+            state = State.STARTED;
+            playWhenReady = true;
+            callback.onTrackStarted(track, 0, true);
+            return;
+        }
+        state = State.COMPLETED;
+        callback.onCompletion(track);
+    }
+
+    private boolean onError(MediaPlayer mp, int what, int extra) {
+        if (mp == nextPlayer) {
+            // Falló la precarga: al terminar la actual se cargará normalmente
+            Log.w(TAG, "Falló la precarga de " + (nextTrack != null ? nextTrack.path : "?") + " (" + what + ", " + extra + ")");
+            nextState = State.ERROR;
+            nextChained = false;
+            return true;
+        }
+        if (mp != player) return true;
+        Log.e(TAG, "Error de reproducción (" + what + ", " + extra + ") en " + (track != null ? track.path : "?"));
+        state = State.ERROR;
+        callback.onError(track, what, extra);
+        return true; // true: que no llame además a onCompletion
+    }
+
+    // --- Control ---
+
+    public void start() {
+        playWhenReady = true;
+        if (state == State.PREPARED || state == State.PAUSED || state == State.COMPLETED) {
+            player.start();
+            state = State.STARTED;
+            chainNext(); // Con fundido, vuelve a programar su arranque desde la posición actual
+        }
+        // PREPARING: arranca solo al terminar de preparar
+    }
+
+    public void pause() {
+        playWhenReady = false;
+        handler.removeCallbacks(crossfadeTrigger);
+        finishCrossfade();
+        if (state == State.STARTED) {
+            player.pause();
+            state = State.PAUSED;
+        }
+    }
+
+    public void seekTo(int ms) {
+        if (isReady(state)) {
+            finishCrossfade();
+            player.seekTo(ms);
+            if (crossfadeMs > 0) chainNext();
+        } else if (state == State.PREPARING) {
+            pendingSeekMs = ms;
+        }
+    }
+
+    /** Fija el volumen de la actual y corta cualquier rampa suya (p. ej. al bajar por ducking). */
+    public void setVolume(float volume) {
+        // En cualquier estado menos ERROR es válido; el siguiente entra siempre a volumen completo.
+        // Va por el hilo de audio para quedar ordenado detrás de las rampas ya en marcha.
+        if (state == State.ERROR) return;
+        MediaPlayer mp = player;
+        fader.cancel(mp);
+        fader.post(() -> {
+            try {
+                mp.setVolume(volume, volume);
+            } catch (IllegalStateException ignored) {
+                // Se reseteó entre tanto
+            }
+        });
+    }
+
+    public boolean isPlaying() {
+        return state == State.STARTED && player.isPlaying();
+    }
+
+    /** true si va a sonar en cuanto termine de preparar (o ya suena). */
+    public boolean isPlayWhenReady() {
+        return playWhenReady;
+    }
+
+    public int getDuration() {
+        return isReady(state) ? player.getDuration() : 0;
+    }
+
+    public int getPosition() {
+        return isReady(state) ? player.getCurrentPosition() : 0;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Track getTrack() {
+        return track;
+    }
+
+    public void release() {
+        handler.removeCallbacks(crossfadeTrigger);
+        fader.release();
+        if (fadingOut != null) fadingOut.release();
+        if (spare != null) spare.release();
+        player.release();
+        nextPlayer.release();
+        state = State.IDLE;
+        nextState = State.IDLE;
+    }
+
+    // --- Métricas ---
+
+    private void recordTimeToFirstAudio(long ms) {
+        lastTimeToFirstAudioMs = ms;
+        totalTimeToFirstAudioMs += ms;
+        measuredLoads++;
+        Log.d(TAG, "Primer audio en " + ms + " ms (media " + totalTimeToFirstAudioMs / measuredLoads
+                + " ms en " + measuredLoads + " cargas): " + track.path);
+    }
+
+    /** Último tiempo hasta el primer audio de una carga con hueco, o -1 si todavía no hubo ninguna. */
+    public long getLastTimeToFirstAudioMs() {
+        return lastTimeToFirstAudioMs;
+    }
+
+    private static boolean isReady(State s) {
+        return s == State.PREPARED || s == State.STARTED || s == State.PAUSED || s == State.COMPLETED;
+    }
+}
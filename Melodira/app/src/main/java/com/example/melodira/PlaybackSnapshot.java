@@ -0,0 +1,68 @@
+package com.example.melodira;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Foto inmutable del estado de reproducción. La publica el hilo de reproducción de MusicService
+ * después de cada comando; cualquier otro hilo (UI, sesión, receptores) solo lee fotos, nunca el
+ * reproductor ni la cola directamente, así que no hace falta sincronizar nada.
+ * <p>
+ * Las listas se copian solo cuando cambia la cola; entre fotos sin cambios de cola se comparten.
+ * En el servicio son {@link IndexedTrackList}: indexOf de una canción es O(1).
+ */
+public final class PlaybackSnapshot {
+
+    public static final PlaybackSnapshot EMPTY = new PlaybackSnapshot(
+            Collections.emptyList(), Collections.emptyList(), -1, -1, -1,
+            false, false, false, 0, 0, 0, 0);
+
+    /** La cola en orden de lista. */
+    public final List<Track> queue;
+    /** La cola en orden de reproducción. */
+    public final List<Track> playbackOrder;
+    public final int currentIndex;
+    public final int nextIndex;
+    public final int prevIndex;
+    public final boolean shuffle;
+    public final boolean repeatOne;
+    /** Sonando, o preparando una canción que va a sonar en cuanto esté lista. */
+    public final boolean playing;
+    public final int durationMs;
+    /** Posición en el instante positionAtMs (reloj elapsedRealtime). */
+    public final int positionMs;
+    public final long positionAtMs;
+    public final int crossfadeMs;
+
+    PlaybackSnapshot(List<Track> queue, List<Track> playbackOrder, int currentIndex, int nextIndex, int prevIndex,
+                     boolean shuffle, boolean repeatOne, boolean playing, int durationMs,
+                     int positionMs, long positionAtMs, int crossfadeMs) {
+        this.queue = queue;
+        this.playbackOrder = playbackOrder;
+        this.currentIndex = currentIndex;
+        this.nextIndex = nextIndex;
+        this.prevIndex = prevIndex;
+        this.shuffle = shuffle;
+        this.repeatOne = repeatOne;
+        this.playing = playing;
+        this.durationMs = durationMs;
+        this.positionMs = positionMs;
+        this.positionAtMs = positionAtMs;
+        this.crossfadeMs = crossfadeMs;
+    }
+
+    public Track currentTrack() {
+        return currentIndex >= 0 && currentIndex < queue.size() ? queue.get(currentIndex) : null;
+    }
+
+    /**
+     * Posición estimada en nowMs (elapsedRealtime): si está sonando avanza con el reloj desde que se
+     * tomó la foto, sin preguntar al reproductor. Nunca pasa de la duración.
+     */
+    public int positionAt(long nowMs) {
+        if (!playing || positionAtMs == 0) return positionMs;
+        long pos = positionMs + Math.max(0, nowMs - positionAtMs);
+        if (durationMs > 0 && pos > durationMs) pos = durationMs;
+        return (int) pos;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.melodira;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Canal en proceso del estado de reproducción, en lugar de los broadcasts de antes. El servicio
+ * publica cada {@link PlaybackSnapshot} nueva con lo que cambió respecto a la anterior; las ráfagas
+ * (play + cambio de canción + cola en pocos ms) se juntan en una sola entrega por frame, con la última
+ * foto y la unión de los cambios. Así cada pantalla solo rehace lo que cambió: textos y carátula con
+ * {@link #TRACK}, el botón con {@link #PLAY_STATE}, la lista con {@link #QUEUE}...
+ * <p>
+ * {@link #publish} se puede llamar desde cualquier hilo; las entregas, subscribe y unsubscribe van en
+ * el hilo principal (el de frameExecutor).
+ */
+public final class PlaybackStateBus {
+
+    public static final int TRACK = 1;       // Otra canción actual (o la misma con datos nuevos)
+    public static final int PLAY_STATE = 2;  // Suena / no suena
+    public static final int POSITION = 4;    // Posición o duración (seek, arranque, pausa)
+    public static final int QUEUE = 8;       // La cola o el orden de reproducción
+    public static final int MODES = 16;      // Aleatorio o repetir
+    public static final int ALL = TRACK | PLAY_STATE | POSITION | QUEUE | MODES;
+
+    public interface Listener {
+        /** En el hilo principal. changes: los flags de arriba que cambiaron desde la entrega anterior. */
+        void onPlaybackStateChanged(PlaybackSnapshot state, int changes);
+    }
+
+    private final Executor frameExecutor;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Protegido por this: lo último publicado y lo que falta por entregar
+    private PlaybackSnapshot latest = PlaybackSnapshot.EMPTY;
+    private int pendingChanges;
+    private boolean deliveryPosted;
+
+    /** frameExecutor: ejecuta en el hilo principal, en el próximo frame (en la app, el Choreographer). */
+    public PlaybackStateBus(Executor frameExecutor) {
+        this.frameExecutor = frameExecutor;
+    }
+
+    /** Qué flags cambian de before a after. Las canciones se comparan por referencia (ver TRACK). */
+    public static int changesBetween(PlaybackSnapshot before, PlaybackSnapshot after) {
+        int changes = 0;
+        if (before.currentTrack() != after.currentTrack()) changes |= TRACK;
+        if (before.playing != after.playing) changes |= PLAY_STATE;
+        if (before.positionMs != after.positionMs || before.positionAtMs != after.positionAtMs
+                || before.durationMs != after.durationMs) {
+            changes |= POSITION;
+        }
+        if (before.queue != after.queue || before.playbackOrder != after.playbackOrder) changes |= QUEUE;
+        if (before.shuffle != after.shuffle || before.repeatOne != after.repeatOne) changes |= MODES;
+        return changes;
+    }
+
+    /**
+     * Publica state; sin cambios no se entrega nada, y sin nadie suscrito (servicio en segundo plano)
+     * tampoco se pide frame: quien se suscriba después recibe la última foto igualmente. Cualquier hilo.
+     */
+    public void publish(PlaybackSnapshot state, int changes) {
+        if (changes == 0) return;
+        synchronized (this) {
+            latest = state;
+            // subscribe añade antes de leer latest: o nos ve aquí, o lee ya esta foto
+            if (listeners.isEmpty()) return;
+            pendingChanges |= changes;
+            if (deliveryPosted) return; // Ya hay una entrega pedida para este frame: se lleva esta foto
+            deliveryPosted = true;
+        }
+        frameExecutor.execute(this::deliver);
+    }
+
+    /** La última foto publicada (aunque aún no se haya entregado). */
+    public synchronized PlaybackSnapshot getState() {
+        return latest;
+    }
+
+    /** Hilo principal. El listener recibe enseguida el estado actual con {@link #ALL}. */
+    public void subscribe(Listener listener) {
+        if (listeners.contains(listener)) return;
+        listeners.add(listener);
+        listener.onPlaybackStateChanged(getState(), ALL);
+    }
+
+    public void unsubscribe(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void deliver() {
+        PlaybackSnapshot state;
+        int changes;
+        synchronized (this) {
+            state = latest;
+            changes = pendingChanges;
+            pendingChanges = 0;
+            deliveryPosted = false;
+        }
+        for (Listener l : listeners) l.onPlaybackStateChanged(state, changes);
+    }
+}
@@ -6,7 +6,9 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.view.Gravity;
 import android.view.MotionEvent;
@@ -19,6 +21,7 @@ import android.widget.TextView;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.LinearSmoothScroller;
 import androidx.recyclerview.widget.RecyclerView;
@@ -28,6 +31,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
 
 public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.OnItemClick {
 
@@ -35,6 +41,7 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
     private boolean bound = false;
     private RecyclerView rv;
     private MusicAdapter adapter;
+    private CoverPrefetcher coverPrefetcher;
 
     // --- VARIABLES PARA FAST SCROLL ---
     private LinearLayout indexContainer;
@@ -48,16 +55,54 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
     private List<Track> originalQueue; // Para guardar la lista completa
     private boolean isSearchOpen = false;
 
+    // Búsqueda en segundo plano: índice, consultas y último resultado viven en searchExecutor
+    // (un solo hilo, así van en orden y no hace falta sincronizar)
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private SearchIndex searchIndex;          // Solo en searchExecutor
+    private SearchIndex.Result lastResult;    // Solo en searchExecutor
+    private List<Track> indexedSource;        // Lista del servicio a partir de la que se construyó el índice
+    private int searchGeneration;             // Descarta resultados de consultas ya superadas
+    private String pendingQuery = "";
+    private final Runnable searchRunnable = this::runSearch;
+
+    // --- LISTA PAGINADA (bibliotecas grandes) ---
+    // Desde este tamaño la lista se lee por páginas del índice en vez de mostrar la cola entera
+    private static final int PAGED_THRESHOLD = 2000;
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_PAGES = 8; // Unas cuantas pantallas alrededor de la visible
+    // Un solo hilo: abre el Cursor y lee todas sus páginas (el Cursor no es thread-safe)
+    private final ExecutorService pageExecutor = Executors.newSingleThreadExecutor();
+    private PagedTrackList pagedQueue;                         // null: se muestra la cola tal cual
+    private List<Track> pagedFor;                              // Cola para la que se abrió (o se descartó)
+    private Map<String, Integer> pagedSections = new HashMap<>();
+    private int pagedGeneration;                               // Descarta aperturas ya superadas
+
     // ----------------------------------
 
+    // Del bus de estado del servicio: la cola cambió (llegó otra página del escaneo, LibraryWatcher
+    // detectó canciones nuevas o borradas...) o cambió la canción actual. Cada cosa por separado: un
+    // cambio de canción solo mueve el resaltado, no vuelve a montar la lista
+    private final PlaybackStateBus.Listener stateListener = (state, changes) -> {
+        if (!bound || musicService == null) return;
+        if ((changes & PlaybackStateBus.TRACK) != 0) adapter.setSelected(state.currentTrack());
+        // La lista de la foto solo es otra si cambió la cola (al suscribirse llega la que ya mostramos)
+        if ((changes & PlaybackStateBus.QUEUE) != 0 && !isSearchOpen && state.playbackOrder != originalQueue) {
+            refreshList();
+        }
+    };
+
     private ServiceConnection conn = new ServiceConnection() {
         @Override public void onServiceConnected(ComponentName name, IBinder binder) {
             MusicService.LocalBinder lb = (MusicService.LocalBinder) binder;
             musicService = lb.getService();
             bound = true;
             setupList();
+            musicService.getStateBus().subscribe(stateListener);
         }
         @Override public void onServiceDisconnected(ComponentName name) {
+            if (musicService != null) musicService.getStateBus().unsubscribe(stateListener);
             bound = false;
             musicService = null;
         }
@@ -98,6 +143,17 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
         // --- SETUP UI ---
         rv = findViewById(R.id.recyclerView);
         rv.setLayoutManager(new LinearLayoutManager(this));
+        // Un solo adaptador para toda la vida de la pantalla; las listas nuevas entran con submitList
+        adapter = new MusicAdapter(this, this);
+        rv.setAdapter(adapter);
+        // Mantener pulsada una fila y arrastrar reordena la cola; al soltar va al servicio como un solo movimiento
+        adapter.setOnItemMoved((moved, after) -> {
+            if (bound && musicService != null) musicService.moveInQueue(moved, after);
+        });
+        new ItemTouchHelper(new SimpleItemTouchHelperCallback(adapter)).attachToRecyclerView(rv);
+        // Adelanta carátulas en la dirección del scroll y al saltar con el índice
+        coverPrefetcher = new CoverPrefetcher(this, adapter);
+        coverPrefetcher.attach(rv);
 
         indexContainer = findViewById(R.id.indexContainer);
 
@@ -112,30 +168,185 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
     private void setupList() {
         if (!bound || musicService == null) return;
 
-        // Guardamos la lista original si es la primera vez o si no estamos buscando
-        if (originalQueue == null || !isSearchOpen) {
-            originalQueue = new ArrayList<>(musicService.getPlaybackOrder());
+        boolean firstLoad = originalQueue == null;
+        // La lista del servicio es inmutable: la guardamos tal cual, sin copiarla
+        if (firstLoad || !isSearchOpen) {
+            originalQueue = musicService.getPlaybackOrder();
         }
 
-        // Inicialmente mostramos la lista original
-        adapter = new MusicAdapter(originalQueue, musicService.getCurrentTrack(), this);
-        rv.setAdapter(adapter);
+        adapter.setSelected(musicService.getCurrentTrack());
+        // Solo la primera vez saltamos a la canción actual; al volver a la pantalla respetamos el scroll
+        int currentPos = firstLoad ? originalQueue.indexOf(musicService.getCurrentTrack()) : -1;
+        if (usePagedQueue(originalQueue)) {
+            openPagedQueue(currentPos >= 0 ? currentPos : firstVisiblePosition(), currentPos >= 0);
+            return;
+        }
+        closePagedQueue();
+        if (!isSearchOpen) {
+            // El mismo adaptador de siempre: el diff conserva scroll y filas ya dibujadas
+            adapter.submitList(originalQueue);
+            adapter.setDragEnabled(true);
+            coverPrefetcher.reset();
+            sectionPositions = sectionPositionsOf(originalQueue.size(), i -> originalQueue.get(i).title);
+            setupIndexUI();
+        }
 
-        int currentPos = originalQueue.indexOf(musicService.getCurrentTrack());
-        if(currentPos != -1) rv.scrollToPosition(currentPos);
+        if (currentPos != -1) rv.scrollToPosition(currentPos);
+    }
 
-        // Calculamos índice para la lista completa
-        calculateSectionPositions(originalQueue);
+    // Actualiza la lista sin mover el scroll: mientras el escaneo sigue llegan páginas seguidas y el
+    // usuario puede estar navegando la parte ya cargada. El diff (en segundo plano) solo inserta lo nuevo
+    private void refreshList() {
+        if (originalQueue == null) {
+            setupList();
+            return;
+        }
+        originalQueue = musicService.getPlaybackOrder();
+        if (usePagedQueue(originalQueue)) {
+            // El índice cambió: otro Cursor, cargado alrededor de lo que se está viendo
+            openPagedQueue(firstVisiblePosition(), false);
+            return;
+        }
+        closePagedQueue();
+        adapter.submitList(originalQueue);
+        adapter.setDragEnabled(true);
+        coverPrefetcher.reset();
+        List<Track> queue = originalQueue;
+        sectionPositions = sectionPositionsOf(queue.size(), i -> queue.get(i).title);
+    }
+
+    // --- LISTA PAGINADA ---
+
+    // Solo en orden de lista, que es el del índice (en aleatorio se muestra la cola tal cual). Que sean
+    // de verdad las mismas canciones en el mismo orden lo comprueba el TitleCursor, fila a fila por id
+    private boolean usePagedQueue(List<Track> queue) {
+        return queue.size() >= PAGED_THRESHOLD && !musicService.getSnapshot().shuffle;
+    }
+
+    /**
+     * Abre en segundo plano un Cursor del índice y muestra la lista por páginas, con la página de
+     * anchor ya cargada. Cada fila leída se compara por id con la de la cola en su posición: si el
+     * índice no tiene las mismas canciones en el mismo orden (p. ej. hay canciones de SAF, que no se
+     * indexan, se movió algo a mano o el escaneo va por la mitad) se muestra la cola tal cual, sin
+     * haber enseñado ninguna fila que no fuera la suya.
+     * Las secciones del índice A-Z se calculan después, sin retrasar la primera pantalla; esa pasada
+     * lee todas las filas, así que también acaba de comprobar la lista entera.
+     */
+    private void openPagedQueue(int anchor, boolean scrollToAnchor) {
+        List<Track> queue = originalQueue;
+        if (queue == pagedFor) return; // Misma cola (p. ej. onResume): el Cursor abierto sigue valiendo
+        pagedFor = queue;
+        int generation = ++pagedGeneration;
+        LibraryIndex index = LibraryIndex.getInstance(this);
+        pageExecutor.execute(() -> {
+            LibraryIndex.TitleCursor titles = null;
+            PagedTrackList list;
+            try {
+                titles = index.openTitleCursor(queue);
+                if (!titles.sizeMatches()) throw new IllegalStateException("Otro número de canciones");
+                list = new PagedTrackList(titles, queue.size(), PAGE_SIZE, MAX_PAGES, pageExecutor, uiHandler::post);
+                list.prime(anchor);
+            } catch (RuntimeException e) {
+                if (titles != null) titles.close();
+                uiHandler.post(() -> {
+                    if (generation == pagedGeneration && !isFinishing()) showWholeQueueInstead(queue);
+                });
+                return;
+            }
+            uiHandler.post(() -> {
+                if (generation != pagedGeneration || isFinishing()) {
+                    list.close();
+                    return;
+                }
+                PagedTrackList old = pagedQueue;
+                pagedQueue = list;
+                // Una página que ya no coincide: fuera la lista paginada
+                list.setOnSourceChanged(() -> showWholeQueueInstead(queue));
+                if (showingQueue()) {
+                    adapter.submitPaged(list);
+                    coverPrefetcher.reset();
+                    if (scrollToAnchor) rv.scrollToPosition(anchor);
+                }
+                if (old != null) old.close();
+            });
+
+            // Solo lee títulos, sin crear Track; queda detrás de las páginas que ya se pidieron
+            Map<String, Integer> sections;
+            try {
+                sections = sectionPositionsOf(queue.size(), titles::titleAt);
+            } catch (RuntimeException e) {
+                uiHandler.post(() -> {
+                    if (pagedQueue == list) showWholeQueueInstead(queue);
+                });
+                return;
+            }
+            uiHandler.post(() -> {
+                if (pagedQueue != list) return;
+                pagedSections = sections;
+                if (showingQueue()) {
+                    sectionPositions = sections;
+                    setupIndexUI();
+                }
+            });
+        });
+    }
+
+    // El índice no coincide con queue: se muestra tal cual y no se vuelve a intentar paginar esta cola
+    private void showWholeQueueInstead(List<Track> queue) {
+        closePagedQueue();
+        pagedFor = queue;
+        if (queue == originalQueue && showingQueue()) showWholeQueue(queue);
+    }
+
+    // La lista muestra la cola (buscador cerrado o vacío), no unos resultados
+    private boolean showingQueue() {
+        return !isSearchOpen || etSearch.getText().toString().trim().isEmpty();
+    }
+
+    private void closePagedQueue() {
+        pagedGeneration++;
+        pagedFor = null;
+        if (pagedQueue == null) return;
+        pagedQueue.close();
+        pagedQueue = null;
+    }
+
+    private void showWholeQueue(List<Track> queue) {
+        adapter.submitList(queue);
+        adapter.setDragEnabled(true);
+        coverPrefetcher.reset();
+        sectionPositions = sectionPositionsOf(queue.size(), i -> queue.get(i).title);
         setupIndexUI();
     }
 
+    private int firstVisiblePosition() {
+        RecyclerView.LayoutManager lm = rv.getLayoutManager();
+        int first = lm instanceof LinearLayoutManager
+                ? ((LinearLayoutManager) lm).findFirstVisibleItemPosition() : RecyclerView.NO_POSITION;
+        return Math.max(0, first);
+    }
+
+    // Solo al abrir el buscador: mientras está cerrado la cola puede cambiar muchas veces (páginas del
+    // escaneo, deltas) y nadie usa el índice. Con el buscador abierto la lista no se refresca, así que
+    // basta con la que se ve. La lista es inmutable: si es la misma que ya indexamos, no hay nada que hacer
+    private void rebuildSearchIndexIfChanged() {
+        List<Track> source = originalQueue;
+        if (source == null || source == indexedSource) return;
+        indexedSource = source;
+        searchExecutor.execute(() -> {
+            searchIndex = new SearchIndex(source);
+            lastResult = null;
+        });
+    }
+
     // --- LOGICA FAST SCROLL MEJORADA ---
 
-    private void calculateSectionPositions(List<Track> tracks) {
-        sectionPositions.clear();
+    // titleAt en vez de la lista: con la lista paginada se leen los títulos del Cursor sin crear Track
+    private static Map<String, Integer> sectionPositionsOf(int count, IntFunction<String> titleAt) {
+        Map<String, Integer> sectionPositions = new HashMap<>();
 
-        for (int i = 0; i < tracks.size(); i++) {
-            String title = tracks.get(i).title;
+        for (int i = 0; i < count; i++) {
+            String title = titleAt.apply(i);
             if (title == null || title.isEmpty()) continue;
 
             String firstChar = title.substring(0, 1).toUpperCase();
@@ -157,6 +368,7 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
                 sectionPositions.put(sectionKey, i);
             }
         }
+        return sectionPositions;
     }
 
     private void setupIndexUI() {
@@ -251,6 +463,8 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
         String selectedKey = indexItems.get(positionIndex);
         if (sectionPositions.containsKey(selectedKey)) {
             int targetPosition = sectionPositions.get(selectedKey);
+            // Antes del salto: que las carátulas de destino ya vayan de camino
+            coverPrefetcher.onJump(targetPosition);
             // Usamos el scroll optimizado (el cheat)
             smoothScrollToPosition(targetPosition);
         }
@@ -294,7 +508,7 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
         // Obtenemos la canción correcta (incluso si estamos filtrando)
         Track clickedTrack = adapter.getItem(position);
 
-        // Buscamos su índice REAL en la cola de reproducción del servicio
+        // Buscamos su índice REAL en la cola de reproducción del servicio (por id, O(1))
         int originalIndex = musicService.getQueue().indexOf(clickedTrack);
 
         if(originalIndex != -1) {
@@ -323,6 +537,11 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        uiHandler.removeCallbacks(searchRunnable);
+        searchExecutor.shutdownNow();
+        closePagedQueue();
+        pageExecutor.shutdown(); // Deja terminar el cierre del Cursor
+        if (musicService != null) musicService.getStateBus().unsubscribe(stateListener);
         if (bound) {
             unbindService(conn);
             bound = false;
@@ -347,6 +566,7 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
         } else {
             // ABRIR: Mostrar barra y enfocar
             isSearchOpen = true;
+            rebuildSearchIndexIfChanged(); // Se construye mientras el teclado aparece
             searchContainer.setVisibility(View.VISIBLE); // Aparece la barra
             searchContainer.setAlpha(0f);
             searchContainer.animate().alpha(1f).setDuration(200).start(); // Fade in suave
@@ -359,40 +579,64 @@ public class PlaylistActivity extends AppCompatActivity implements MusicAdapter.
         }
     }
 
+    // Se llama en cada pulsación: solo reprograma la búsqueda (debounce), no busca aquí
     private void filterList(String query) {
         if (originalQueue == null) return;
-
-        List<Track> filteredList = new ArrayList<>();
-
-        // Si está vacío, mostramos todo
-        if (query.isEmpty()) {
-            filteredList.addAll(originalQueue);
-        } else {
-            String lowerQuery = query.toLowerCase().trim();
-
-            for (Track track : originalQueue) {
-                // Buscamos en Título, Artista o Álbum
-                boolean matchesTitle = track.title != null && track.title.toLowerCase().contains(lowerQuery);
-                boolean matchesArtist = track.artist != null && track.artist.toLowerCase().contains(lowerQuery);
-                boolean matchesAlbum = track.album != null && track.album.toLowerCase().contains(lowerQuery);
-
-                if (matchesTitle || matchesArtist || matchesAlbum) {
-                    filteredList.add(track);
-                }
+        searchGeneration++;
+        uiHandler.removeCallbacks(searchRunnable);
+
+        // Si está vacío, mostramos todo al momento (la misma lista, para que refreshList la siga actualizando).
+        // Con el buscador abierto no se refresca: si la cola cambió entretanto, se monta la actual
+        if (query.trim().isEmpty()) {
+            if (bound && musicService != null && musicService.getPlaybackOrder() != originalQueue) {
+                indexContainer.setVisibility(View.VISIBLE);
+                refreshList(); // Decide también si va paginada
+            } else {
+                showResults(originalQueue);
             }
+            return;
         }
+        pendingQuery = query;
+        uiHandler.postDelayed(searchRunnable, SEARCH_DEBOUNCE_MS);
+    }
 
-        // Actualizamos el adaptador con la nueva lista filtrada
-        // NOTA: Pasamos null como currentTrack temporalmente para evitar saltos visuales raros al filtrar
-        adapter = new MusicAdapter(filteredList, musicService.getCurrentTrack(), this);
-        rv.setAdapter(adapter);
+    private void runSearch() {
+        String query = pendingQuery;
+        int generation = searchGeneration;
+        searchExecutor.execute(() -> {
+            if (searchIndex == null) return;
+            // Si la consulta extiende la anterior, SearchIndex refina ese resultado en vez de empezar de cero
+            lastResult = searchIndex.search(query, lastResult);
+            List<Track> results = lastResult.tracks();
+            uiHandler.post(() -> {
+                if (generation != searchGeneration || isFinishing()) return; // Ya se escribió otra cosa
+                showResults(results);
+            });
+        });
+    }
+
+    private void showResults(List<Track> filteredList) {
+        // Búsqueda vacía con la lista paginada abierta: se vuelve a ella, no a la cola entera
+        if (filteredList == originalQueue && pagedQueue != null) {
+            adapter.submitPaged(pagedQueue);
+            coverPrefetcher.reset();
+            indexContainer.setVisibility(View.VISIBLE);
+            sectionPositions = pagedSections;
+            setupIndexUI();
+            return;
+        }
+        // Mismo adaptador: el diff se calcula en segundo plano y solo cambian las filas afectadas
+        adapter.submitList(filteredList);
+        // Las posiciones de unos resultados no son las de la cola: solo se reordena la lista completa
+        adapter.setDragEnabled(filteredList == originalQueue);
+        coverPrefetcher.reset();
 
         // Opcional: Recalcular el índice lateral para la lista filtrada (o ocultarlo si son pocos items)
         if (filteredList.size() < 10) {
             indexContainer.setVisibility(View.GONE); // Ocultar índice si hay pocos resultados
         } else {
             indexContainer.setVisibility(View.VISIBLE);
-            calculateSectionPositions(filteredList); // Recalcular índice para lo filtrado
+            sectionPositions = sectionPositionsOf(filteredList.size(), i -> filteredList.get(i).title); // Recalcular índice para lo filtrado
             setupIndexUI(); // Redibujar letras
         }
     }
@@ -1,4 +1,372 @@
 package com.example.melodira;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * Dueño único de la cola de reproducción. Todo se maneja por índices, nunca con indexOf sobre objetos:
+ * <ul>
+ *   <li>{@code tracks}: la cola en orden de lista (por título).</li>
+ *   <li>{@code order}: orden de reproducción, la lista que ve el usuario; en la posición k suena
+ *   tracks[order.get(k)]. En orden normal empieza siendo la identidad, en aleatorio está barajada, y
+ *   el usuario lo puede reordenar arrastrando ({@link #move}). Es un {@link OrderTree}: mover, leer
+ *   una posición y saber en qué posición está un índice son O(log n).</li>
+ *   <li>{@code current}: índice en tracks de la canción actual (-1 si no hay).</li>
+ * </ul>
+ * Saltar a un índice es O(1); siguiente, anterior y mover, O(log n); activar o quitar el aleatorio es
+ * O(n) una vez. Como todo va por posición, la misma canción puede aparecer dos veces sin confundir el orden.
+ * No es thread-safe: lo usa un solo hilo (el del servicio).
+ */
 public class QueueManager {
+
+    private final List<Track> tracks = new ArrayList<>();
+    private OrderTree order;
+    private int current = -1;
+
+    private boolean shuffle;
+    private boolean repeatOne;
+    private final Random random;
+
+    private final List<Track> playbackOrderView = new AbstractList<Track>() {
+        @Override
+        public Track get(int k) {
+            return tracks.get(order.get(k));
+        }
+
+        @Override
+        public int size() {
+            return tracks.size();
+        }
+    };
+
+    public QueueManager() {
+        this(new Random());
+    }
+
+    QueueManager(Random random) {
+        this.random = random;
+        order = new OrderTree(random);
+    }
+
+    // --- Contenido ---
+
+    /** Reemplaza la cola. Vuelve al orden normal y sin canción actual (igual que el setQueue de antes). */
+    public void setTracks(List<Track> newTracks) {
+        tracks.clear();
+        tracks.addAll(newTracks);
+        shuffle = false;
+        order = new OrderTree(identity(tracks.size()), random);
+        current = -1;
+    }
+
+    /**
+     * Vuelve a un estado guardado (ver QueueSnapshot): la cola en orden de lista, el orden de
+     * reproducción (permutación de sus índices), la actual y los modos. Las posiciones null (canciones
+     * que ya no se encontraron) se quitan como en {@link #removeIf}: si era la actual, sigue la que
+     * quedó en su lugar del orden. O(n).
+     */
+    public void restore(List<Track> savedTracks, int[] savedOrder, int savedCurrent,
+                        boolean shuffle, boolean repeatOne) {
+        if (savedOrder.length != savedTracks.size()) {
+            throw new IllegalArgumentException("Orden de " + savedOrder.length + " para " + savedTracks.size());
+        }
+        tracks.clear();
+        tracks.addAll(savedTracks);
+        order = new OrderTree(savedOrder, random);
+        current = savedCurrent >= 0 && savedCurrent < tracks.size() ? savedCurrent : -1;
+        this.shuffle = shuffle;
+        this.repeatOne = repeatOne;
+        removeIf(t -> t == null);
+    }
+
+    /** La cola en orden de lista (solo lectura). */
+    public List<Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /** La cola en orden de reproducción (vista de solo lectura, sin copiar). */
+    public List<Track> getPlaybackOrder() {
+        return playbackOrderView;
+    }
+
+    /** El orden de reproducción como índices en orden de lista (copia). O(n). */
+    public int[] getOrder() {
+        return order.toArray();
+    }
+
+    public int size() {
+        return tracks.size();
+    }
+
+    public boolean isEmpty() {
+        return tracks.isEmpty();
+    }
+
+    public Track get(int index) {
+        return tracks.get(index);
+    }
+
+    // --- Canción actual y navegación ---
+
+    /** Índice (en orden de lista) de la canción actual, o -1. */
+    public int currentIndex() {
+        return current;
+    }
+
+    public Track current() {
+        return current < 0 ? null : tracks.get(current);
+    }
+
+    /** Marca index como la canción actual. O(1). */
+    public void jumpTo(int index) {
+        if (index < 0 || index >= tracks.size()) throw new IndexOutOfBoundsException("index " + index);
+        current = index;
+    }
+
+    /** Índice de la siguiente canción según el orden de reproducción (da la vuelta al final). -1 si está vacía. */
+    public int nextIndex() {
+        int n = tracks.size();
+        if (n == 0) return -1;
+        if (current < 0) return order.get(0);
+        if (repeatOne) return current;
+        int k = order.indexOf(current);
+        return order.get(k + 1 < n ? k + 1 : 0);
+    }
+
+    /** Índice de la canción anterior según el orden de reproducción (da la vuelta al principio). */
+    public int prevIndex() {
+        int n = tracks.size();
+        if (n == 0) return -1;
+        if (current < 0) return order.get(n - 1);
+        int k = order.indexOf(current);
+        return order.get(k > 0 ? k - 1 : n - 1);
+    }
+
+    /**
+     * Mueve la canción de la posición from del orden de reproducción a la posición to (arrastrar en la
+     * lista). La canción actual sigue siendo la misma; lo que cambia es qué suena antes y después. O(log n).
+     */
+    public void move(int from, int to) {
+        order.move(from, to);
+    }
+
+    /**
+     * Como {@link #move}, pero por canción: deja tracks[index] justo detrás de tracks[after] en el orden
+     * de reproducción (after -1: al principio). Sirve aunque la cola haya cambiado desde que se leyeron
+     * las posiciones (p. ej. llegó otra página mientras se arrastraba). O(log n).
+     */
+    public void moveAfter(int index, int after) {
+        if (index == after) return;
+        int from = order.indexOf(index);
+        int to = 0;
+        if (after >= 0) {
+            to = order.indexOf(after);
+            if (from > to) to++; // Si venía de antes, al quitarla la de referencia ya bajó un puesto
+        }
+        if (from != to) order.move(from, to);
+    }
+
+    // --- Modos ---
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * Activa o quita el aleatorio. Al activarlo la canción actual queda primera y el resto se baraja
+     * detrás (Fisher-Yates), así suena todo una vez antes de repetir. Al quitarlo se vuelve al orden
+     * de lista desde la canción actual. O(n).
+     */
+    public void setShuffle(boolean enable) {
+        shuffle = enable;
+        int n = tracks.size();
+        int[] newOrder = identity(n);
+
+        if (enable && n > 1) {
+            int start = 0;
+            if (current >= 0) {
+                swap(newOrder, 0, current);
+                start = 1;
+            }
+            for (int i = n - 1; i > start; i--) {
+                swap(newOrder, i, start + random.nextInt(i - start + 1));
+            }
+        }
+        order = new OrderTree(newOrder, random);
+    }
+
+    public boolean isRepeatOne() {
+        return repeatOne;
+    }
+
+    public void setRepeatOne(boolean repeatOne) {
+        this.repeatOne = repeatOne;
+    }
+
+    // --- Cambios de la biblioteca / escaneo ---
+
+    /**
+     * Inserta canciones en su posición según {@code listOrder} (la cola ya está en ese orden).
+     * En orden normal cada una entra en el orden de reproducción justo detrás de la canción que la
+     * precede en la lista (si nadie reordenó arrastrando, es su mismo sitio); en aleatorio, en un punto
+     * al azar de lo que queda por sonar. La canción actual no cambia. O(n + m log m) por lote.
+     */
+    public void addSorted(Collection<Track> added, Comparator<Track> listOrder) {
+        if (added.isEmpty()) return;
+        int oldSize = tracks.size();
+        int[] oldOrder = order.toArray();
+        int cursor = current >= 0 ? order.indexOf(current) : -1;
+
+        List<Track> sortedAdded = new ArrayList<>(added);
+        Collections.sort(sortedAdded, listOrder);
+
+        // Mezcla de dos listas ordenadas; newIndexOfOld traduce los índices viejos.
+        // anchorOf[j]: la vieja que queda justo antes de la nueva j en la lista (-1: ninguna)
+        List<Track> merged = new ArrayList<>(oldSize + sortedAdded.size());
+        int[] newIndexOfOld = new int[oldSize];
+        int[] newIndexOfAdded = new int[sortedAdded.size()];
+        int[] anchorOf = new int[sortedAdded.size()];
+        int i = 0, j = 0;
+        while (i < oldSize || j < sortedAdded.size()) {
+            // Ante empate, la vieja primero (igual que MusicLibrary.insertionPoint)
+            boolean takeOld = j >= sortedAdded.size()
+                    || (i < oldSize && listOrder.compare(tracks.get(i), sortedAdded.get(j)) <= 0);
+            if (takeOld) {
+                newIndexOfOld[i] = merged.size();
+                merged.add(tracks.get(i++));
+            } else {
+                newIndexOfAdded[j] = merged.size();
+                anchorOf[j] = i - 1;
+                merged.add(sortedAdded.get(j++));
+            }
+        }
+        tracks.clear();
+        tracks.addAll(merged);
+        if (current >= 0) current = newIndexOfOld[current];
+
+        int m = newIndexOfAdded.length;
+        int[] newOrder = new int[oldSize + m];
+        int w = 0;
+
+        if (!shuffle) {
+            // Las nuevas de cada ancla son consecutivas en j (las anclas no bajan): las que no tienen
+            // ancla van al principio y el resto detrás de su ancla, esté donde esté en el orden
+            int a = 0;
+            while (a < m && anchorOf[a] < 0) newOrder[w++] = newIndexOfAdded[a++];
+            int[] firstAddedOf = new int[oldSize];
+            Arrays.fill(firstAddedOf, -1);
+            for (int b = m - 1; b >= a; b--) firstAddedOf[anchorOf[b]] = b;
+            for (int k = 0; k < oldSize; k++) {
+                int old = oldOrder[k];
+                newOrder[w++] = newIndexOfOld[old];
+                for (int b = firstAddedOf[old]; b >= 0 && b < m && anchorOf[b] == old; b++) {
+                    newOrder[w++] = newIndexOfAdded[b];
+                }
+            }
+            order = new OrderTree(newOrder, random);
+            return;
+        }
+
+        // Aleatorio: lo viejo conserva su orden relativo; cada nueva entra en un hueco al azar
+        // después de la actual (hueco g = antes de la posición vieja g; oldSize = al final)
+        int firstGap = cursor + 1;
+        long[] gaps = new long[m];
+        for (int a = 0; a < m; a++) {
+            int gap = firstGap + random.nextInt(oldSize - firstGap + 1);
+            gaps[a] = ((long) gap << 32) | a;
+        }
+        Arrays.sort(gaps);
+
+        int g = 0;
+        for (int k = 0; k <= oldSize; k++) {
+            while (g < m && (int) (gaps[g] >>> 32) == k) {
+                newOrder[w++] = newIndexOfAdded[(int) gaps[g++]];
+            }
+            if (k < oldSize) newOrder[w++] = newIndexOfOld[oldOrder[k]];
+        }
+        order = new OrderTree(newOrder, random);
+    }
+
+    /**
+     * Cambia en el sitio las canciones que estén en {@code updated} (misma canción según Track.equals)
+     * por su versión nueva. No mueve nada: posiciones, orden y canción actual quedan igual.
+     * Devuelve cuántas posiciones se cambiaron.
+     */
+    public int replaceAll(Collection<Track> updated) {
+        if (updated.isEmpty()) return 0;
+        List<Track> fresh = new ArrayList<>(updated);
+        LongIntMap freshById = new LongIntMap(fresh.size());
+        for (int j = 0; j < fresh.size(); j++) freshById.put(fresh.get(j).id, j);
+        int changed = 0;
+        for (int i = 0; i < tracks.size(); i++) {
+            int j = freshById.get(tracks.get(i).id);
+            if (j != LongIntMap.MISSING) {
+                tracks.set(i, fresh.get(j));
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Quita las canciones que cumplan {@code gone} en una pasada. Si se quita la actual, la actual pasa
+     * a ser la que quedó en su posición del orden de reproducción (seguimos desde el mismo punto).
+     * Devuelve cuántas se quitaron.
+     */
+    public int removeIf(Predicate<Track> gone) {
+        int oldSize = tracks.size();
+        int[] newIndexOfOld = new int[oldSize];
+        List<Track> kept = new ArrayList<>(oldSize);
+        for (int i = 0; i < oldSize; i++) {
+            Track t = tracks.get(i);
+            if (gone.test(t)) {
+                newIndexOfOld[i] = -1;
+            } else {
+                newIndexOfOld[i] = kept.size();
+                kept.add(t);
+            }
+        }
+        int removed = oldSize - kept.size();
+        if (removed == 0) return 0;
+
+        int[] oldOrder = order.toArray();
+        int cursor = current >= 0 ? order.indexOf(current) : -1;
+        int[] newOrder = new int[kept.size()];
+        int w = 0;
+        int newCursor = -1;
+        for (int k = 0; k < oldSize; k++) {
+            if (k == cursor) newCursor = w; // Si la actual se quitó, queda apuntando a la siguiente
+            int ni = newIndexOfOld[oldOrder[k]];
+            if (ni >= 0) newOrder[w++] = ni;
+        }
+
+        tracks.clear();
+        tracks.addAll(kept);
+        order = new OrderTree(newOrder, random);
+        if (cursor >= 0 && !kept.isEmpty()) {
+            current = newOrder[Math.min(newCursor, kept.size() - 1)];
+        } else {
+            current = -1;
+        }
+        return removed;
+    }
+
+    private static int[] identity(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = i;
+        return a;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
 }
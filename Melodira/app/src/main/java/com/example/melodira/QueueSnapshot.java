@@ -0,0 +1,198 @@
+package com.example.melodira;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Estado de la cola guardado en disco para arrancar en caliente tras la muerte del proceso: ids de la
+ * cola (orden de lista), orden de reproducción (permutación de índices), canción actual, posición y
+ * los modos. La canción actual va entera (textos y duración) para pintarla sin esperar a nadie; el
+ * resto de la cola son solo ids y se resuelven después contra LibraryIndex. Las canciones que el índice
+ * no tiene (las de una carpeta SAF) también van enteras: si no, al restaurar se perderían.
+ * <p>
+ * Formato binario fijo, big-endian: cabecera (magia, versión, modos, actual, posición), la canción
+ * actual, n, n ids (long), n posiciones del orden (int), m y las m canciones enteras (índice en ids,
+ * duración y textos). Se lee con un mapeo de memoria de solo
+ * lectura y se escribe a un temporal que luego se renombra, así nunca se lee un archivo a medias.
+ * Cualquier cosa que no cuadre (otra versión, tamaños, un orden que no es permutación) se trata
+ * como si no hubiera archivo.
+ */
+final class QueueSnapshot {
+
+    private static final int MAGIC = 0x4D4C5153; // "MLQS"
+    private static final int VERSION = 2;
+    private static final int FLAG_SHUFFLE = 1;
+    private static final int FLAG_REPEAT_ONE = 2;
+
+    /** Ids de la cola en orden de lista. */
+    final long[] ids;
+    /** Orden de reproducción: en la posición k suena ids[order[k]]. */
+    final int[] order;
+    /** Índice (en ids) de la canción actual. */
+    final int currentIndex;
+    final Track current;
+    final int positionMs;
+    final boolean shuffle;
+    final boolean repeatOne;
+    /** Mismo tamaño que ids: la canción entera donde no se puede resolver por id (SAF), null en el resto. */
+    final Track[] unindexed;
+
+    QueueSnapshot(long[] ids, int[] order, Track[] unindexed, int currentIndex, Track current, int positionMs,
+                  boolean shuffle, boolean repeatOne) {
+        this.ids = ids;
+        this.unindexed = unindexed;
+        this.order = order;
+        this.currentIndex = currentIndex;
+        this.current = current;
+        this.positionMs = positionMs;
+        this.shuffle = shuffle;
+        this.repeatOne = repeatOne;
+    }
+
+    // --- Codificación ---
+
+    ByteBuffer encode() {
+        byte[][] texts = {utf8(current.path), utf8(current.title), utf8(current.artist), utf8(current.album)};
+        int size = 4 * 5 + 8 + 8 + 4 + ids.length * 12 + 4;
+        for (byte[] t : texts) size += 4 + (t != null ? t.length : 0);
+        int m = 0;
+        byte[][][] extra = new byte[ids.length][][];
+        for (int i = 0; i < ids.length; i++) {
+            Track t = unindexed[i];
+            if (t == null) continue;
+            extra[i] = new byte[][]{utf8(t.path), utf8(t.title), utf8(t.artist), utf8(t.album)};
+            size += 4 + 8;
+            for (byte[] b : extra[i]) size += 4 + (b != null ? b.length : 0);
+            m++;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION)
+                .putInt((shuffle ? FLAG_SHUFFLE : 0) | (repeatOne ? FLAG_REPEAT_ONE : 0))
+                .putInt(currentIndex).putInt(positionMs);
+        out.putLong(current.id).putLong(current.durationMs);
+        putStrings(out, texts);
+        out.putInt(ids.length);
+        out.asLongBuffer().put(ids);
+        out.position(out.position() + ids.length * 8);
+        out.asIntBuffer().put(order);
+        out.position(out.position() + order.length * 4);
+        out.putInt(m);
+        for (int i = 0; i < ids.length; i++) {
+            if (extra[i] == null) continue;
+            out.putInt(i).putLong(unindexed[i].durationMs);
+            putStrings(out, extra[i]);
+        }
+        out.flip();
+        return out;
+    }
+
+    /** Devuelve null si el contenido no es un estado válido de esta versión. */
+    static QueueSnapshot decode(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) return null;
+            int flags = in.getInt();
+            int currentIndex = in.getInt();
+            int positionMs = in.getInt();
+            long currentId = in.getLong();
+            long durationMs = in.getLong();
+            String path = readString(in), title = readString(in), artist = readString(in), album = readString(in);
+            int n = in.getInt();
+            if (n < 1 || (long) n * 12 + 4 > in.remaining()) return null;
+            if (currentIndex < 0 || currentIndex >= n || positionMs < 0) return null;
+
+            long[] ids = new long[n];
+            in.asLongBuffer().get(ids);
+            in.position(in.position() + n * 8);
+            int[] order = new int[n];
+            in.asIntBuffer().get(order);
+            in.position(in.position() + n * 4);
+            if (!isPermutation(order) || ids[currentIndex] != currentId || path == null) return null;
+
+            Track[] unindexed = new Track[n];
+            int m = in.getInt();
+            if (m < 0 || m > n) return null;
+            for (int k = 0; k < m; k++) {
+                int i = in.getInt();
+                long duration = in.getLong();
+                String p = readString(in), t = readString(in), ar = readString(in), al = readString(in);
+                if (i < 0 || i >= n || unindexed[i] != null || p == null) return null;
+                unindexed[i] = new Track(ids[i], p, t, ar, al, duration);
+            }
+            if (in.hasRemaining()) return null;
+
+            Track current = new Track(currentId, path, title, artist, album, durationMs);
+            return new QueueSnapshot(ids, order, unindexed, currentIndex, current, positionMs,
+                    (flags & FLAG_SHUFFLE) != 0, (flags & FLAG_REPEAT_ONE) != 0);
+        } catch (RuntimeException e) {
+            // BufferUnderflow o una longitud imposible: archivo truncado o de otra cosa
+            return null;
+        }
+    }
+
+    // --- Archivo ---
+
+    /** Escribe el estado a file de forma atómica (temporal + rename). Bloquea: hilo de fondo. */
+    void writeTo(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        ByteBuffer data = encode();
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) ch.write(data);
+            ch.force(false);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("No se pudo renombrar " + tmp);
+        }
+    }
+
+    /**
+     * Lee el estado mapeando el archivo en memoria (sin copiarlo antes a un buffer propio).
+     * Devuelve null si no existe o no es válido.
+     */
+    static QueueSnapshot readFrom(File file) {
+        if (!file.isFile()) return null;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return decode(map);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isPermutation(int[] order) {
+        boolean[] seen = new boolean[order.length];
+        for (int v : order) {
+            if (v < 0 || v >= order.length || seen[v]) return false;
+            seen[v] = true;
+        }
+        return true;
+    }
+
+    // Cada texto con su longitud delante; -1 para null
+    private static void putStrings(ByteBuffer out, byte[][] texts) {
+        for (byte[] t : texts) {
+            out.putInt(t != null ? t.length : -1);
+            if (t != null) out.put(t);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s != null ? s.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        if (length > in.remaining()) throw new IllegalArgumentException("Texto de " + length + " bytes");
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
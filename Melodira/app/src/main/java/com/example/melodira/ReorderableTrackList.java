@@ -0,0 +1,56 @@
+package com.example.melodira;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Copia de una lista de canciones que se puede reordenar en O(log n) por paso: las canciones quedan
+ * en un array fijo y el orden es un {@link OrderTree} de sus índices. La usa MusicAdapter mientras se
+ * arrastra una fila, en lugar de hacer swap fila a fila sobre un ArrayList (O(distancia) cada paso).
+ * get e indexOf son O(log n). Solo hilo principal.
+ */
+final class ReorderableTrackList extends AbstractList<Track> {
+
+    private final Track[] tracks;
+    private final OrderTree order;
+    private final LongIntMap slotById;
+
+    ReorderableTrackList(List<Track> source) {
+        tracks = source.toArray(new Track[0]);
+        int[] identity = new int[tracks.length];
+        slotById = new LongIntMap(tracks.length);
+        for (int i = 0; i < tracks.length; i++) {
+            identity[i] = i;
+            slotById.putIfAbsent(tracks[i].id, i);
+        }
+        order = new OrderTree(identity, new Random());
+    }
+
+    @Override
+    public Track get(int index) {
+        return tracks[order.get(index)];
+    }
+
+    @Override
+    public int size() {
+        return order.size();
+    }
+
+    /** Mueve la fila from a la posición to. O(log n). */
+    void move(int from, int to) {
+        order.move(from, to);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Track)) return -1;
+        int slot = slotById.get(((Track) o).id);
+        return slot == LongIntMap.MISSING ? -1 : order.indexOf(slot);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.melodira;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recorre un árbol SAF completo con DocumentsContract en lugar de DocumentFile.
+ * DocumentFile hace una consulta al proveedor por cada getName()/isFile()/length() de cada archivo;
+ * aquí hacemos UNA consulta por carpeta (buildChildDocumentsUriUsingTree) que trae nombre, mime,
+ * tamaño y fecha de todos los hijos. Las subcarpetas se recorren en paralelo en un pool acotado.
+ */
+public class SafTreeScanner {
+    private static final String TAG = "SafTreeScanner";
+
+    // Las consultas al proveedor son sobre todo espera de IPC/disco; más de 4 hilos no ayuda
+    private static final int MAX_THREADS = 4;
+
+    private static final String[] CHILD_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,   // 0
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,  // 1
+            DocumentsContract.Document.COLUMN_MIME_TYPE,     // 2
+            DocumentsContract.Document.COLUMN_SIZE,          // 3
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED  // 4
+    };
+
+    /** Un archivo encontrado en el árbol, con los datos que ya trajo la consulta de su carpeta. */
+    public static final class Entry {
+        public final Uri uri;
+        public final String documentId;
+        public final String name;
+        public final String mimeType;
+        public final long size;
+        public final long lastModified;
+
+        Entry(Uri uri, String documentId, String name, String mimeType, long size, long lastModified) {
+            this.uri = uri;
+            this.documentId = documentId;
+            this.name = name;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Devuelve todos los .mp3 del árbol (recursivo). Bloquea hasta terminar: llamar desde un hilo de fondo.
+     */
+    public static List<Entry> listMp3Files(Context context, Uri treeUri) {
+        ConcurrentLinkedQueue<Entry> found = new ConcurrentLinkedQueue<>();
+        try {
+            walk(context, treeUri, found::add);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Igual que listMp3Files pero entrega cada .mp3 a {@code sink} en cuanto aparece, desde los hilos
+     * del recorrido (el sink tiene que ser thread-safe). Si el sink bloquea, el recorrido espera.
+     */
+    public static void walk(Context context, Uri treeUri, ScanPipeline.Sink<Entry> sink)
+            throws InterruptedException {
+        String rootId = DocumentsContract.getTreeDocumentId(treeUri);
+        if (rootId == null) return;
+
+        int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicInteger pending = new AtomicInteger(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ContentResolver cr = context.getContentResolver();
+
+        try {
+            pool.execute(new DirectoryTask(cr, treeUri, rootId, pool, pending, done, sink));
+            done.await();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static boolean isMp3(String name, String mimeType) {
+        if (name != null && name.toLowerCase().endsWith(".mp3")) return true;
+        return "audio/mpeg".equalsIgnoreCase(mimeType);
+    }
+
+    // Lista una carpeta con una sola consulta y encola sus subcarpetas
+    private static final class DirectoryTask implements Runnable {
+        private final ContentResolver cr;
+        private final Uri treeUri;
+        private final String documentId;
+        private final ExecutorService pool;
+        private final AtomicInteger pending;
+        private final CountDownLatch done;
+        private final ScanPipeline.Sink<Entry> sink;
+
+        DirectoryTask(ContentResolver cr, Uri treeUri, String documentId, ExecutorService pool,
+                      AtomicInteger pending, CountDownLatch done, ScanPipeline.Sink<Entry> sink) {
+            this.cr = cr;
+            this.treeUri = treeUri;
+            this.documentId = documentId;
+            this.pool = pool;
+            this.pending = pending;
+            this.done = done;
+            this.sink = sink;
+        }
+
+        @Override
+        public void run() {
+            Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, documentId);
+            try (Cursor c = cr.query(children, CHILD_PROJECTION, null, null, null)) {
+                if (c != null) {
+                    while (c.moveToNext()) {
+                        String id = c.getString(0);
+                        String name = c.getString(1);
+                        String mime = c.getString(2);
+
+                        if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mime)) {
+                            pending.incrementAndGet();
+                            pool.execute(new DirectoryTask(cr, treeUri, id, pool, pending, done, sink));
+                        } else if (isMp3(name, mime)) {
+                            long size = c.isNull(3) ? 0 : c.getLong(3);
+                            long modified = c.isNull(4) ? 0 : c.getLong(4);
+                            Uri uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, id);
+                            sink.accept(new Entry(uri, id, name, mime, size, modified));
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Cancelado (shutdownNow): no seguimos
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                Log.w(TAG, "No se pudo listar " + documentId + ": " + e.getMessage());
+            } finally {
+                if (pending.decrementAndGet() == 0) done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.melodira;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline de escaneo: enumeración -> cola acotada -> N workers de metadatos -> colector.
+ * <ul>
+ *   <li>La enumeración corre en su propio hilo y mete elementos en la cola de entrada; si los
+ *   workers van lentos, put() la frena (no se acumula todo el árbol en memoria).</li>
+ *   <li>Los workers sacan de la cola y extraen metadatos en paralelo.</li>
+ *   <li>El colector corre en el hilo que llamó a run() y recibe los resultados de uno en uno,
+ *   así no necesita sincronización.</li>
+ * </ul>
+ * Cada etapa mide cuántos elementos procesó y cuánto tiempo estuvo ocupada (ver {@link Stats}).
+ * No depende de Android, así que se puede probar en la JVM.
+ */
+public class ScanPipeline<I, O> {
+
+    /** Primera etapa: entrega los elementos a procesar. Puede llamarse desde varios hilos a la vez. */
+    public interface Sink<T> {
+        void accept(T item) throws InterruptedException;
+    }
+
+    public interface Enumerator<I> {
+        void enumerate(Sink<I> sink) throws Exception;
+    }
+
+    /** Segunda etapa: se llama en paralelo desde los workers. Devolver null descarta el elemento. */
+    public interface Extractor<I, O> {
+        O extract(I item) throws Exception;
+    }
+
+    /** Última etapa: se llama siempre en el hilo que ejecuta {@link #run}. */
+    public interface Collector<O> {
+        void collect(O result);
+    }
+
+    /** Tipo de almacenamiento, para decidir cuántos workers tiene sentido usar. */
+    public enum Storage {
+        /** Memoria interna (flash): aguanta bien lecturas en paralelo. */
+        INTERNAL,
+        /** Tarjeta SD / USB: con muchas lecturas aleatorias a la vez va peor, no mejor. */
+        REMOVABLE,
+        /** Proveedor remoto (nube, red): cada lectura es sobre todo latencia, conviene solapar más. */
+        REMOTE
+    }
+
+    private static final int MAX_LOCAL_WORKERS = 8;
+    private static final int MAX_REMOVABLE_WORKERS = 2;
+    private static final int MAX_REMOTE_WORKERS = 16;
+
+    // Marcadores internos (nunca llegan al extractor ni al colector)
+    private static final Object END_OF_INPUT = new Object();
+    private static final Object WORKER_DONE = new Object();
+
+    private final int workers;
+    private final int queueCapacity;
+
+    public ScanPipeline(int workers, int queueCapacity) {
+        if (workers < 1) throw new IllegalArgumentException("workers < 1");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity < 1");
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /** Número de workers razonable según los núcleos y el tipo de almacenamiento. */
+    public static int defaultWorkerCount(Storage storage, int cores) {
+        cores = Math.max(1, cores);
+        switch (storage) {
+            case REMOVABLE:
+                return Math.min(MAX_REMOVABLE_WORKERS, cores);
+            case REMOTE:
+                return Math.min(MAX_REMOTE_WORKERS, cores * 2);
+            case INTERNAL:
+            default:
+                return Math.min(MAX_LOCAL_WORKERS, cores);
+        }
+    }
+
+    /**
+     * Ejecuta las tres etapas y bloquea hasta que la última termina.
+     * Los errores de un elemento se cuentan en {@link Stats#failed} y no paran el resto.
+     */
+    @SuppressWarnings("unchecked")
+    public Stats run(Enumerator<I> enumerator, Extractor<I, O> extractor, Collector<O> collector)
+            throws InterruptedException {
+        final BlockingQueue<Object> input = new ArrayBlockingQueue<>(queueCapacity);
+        final BlockingQueue<Object> output = new ArrayBlockingQueue<>(queueCapacity);
+        final Stats stats = new Stats(workers);
+        final long start = System.nanoTime();
+
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(workers + 1, r -> {
+            Thread t = new Thread(r, "ScanPipeline-" + threadNo.getAndIncrement());
+            t.setPriority(Thread.NORM_PRIORITY - 1); // Que no compita con la UI
+            return t;
+        });
+
+        try {
+            threads.execute(() -> {
+                long t0 = System.nanoTime();
+                try {
+                    enumerator.enumerate(item -> {
+                        input.put(item);
+                        stats.enumerated.incrementAndGet();
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    stats.enumerationError = e;
+                } finally {
+                    stats.enumerateNanos = System.nanoTime() - t0;
+                    putQuietly(input, END_OF_INPUT);
+                }
+            });
+
+            for (int w = 0; w < workers; w++) {
+                threads.execute(() -> {
+                    try {
+                        while (true) {
+                            Object item = input.take();
+                            if (item == END_OF_INPUT) {
+                                input.put(END_OF_INPUT); // Para que lo vean los demás workers
+                                break;
+                            }
+                            long t0 = System.nanoTime();
+                            O result = null;
+                            try {
+                                result = extractor.extract((I) item);
+                            } catch (InterruptedException e) {
+                                throw e;
+                            } catch (Exception e) {
+                                stats.failed.incrementAndGet();
+                            }
+                            stats.extractNanos.addAndGet(System.nanoTime() - t0);
+                            stats.extracted.incrementAndGet();
+                            if (result != null) output.put(result);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        putQuietly(output, WORKER_DONE);
+                    }
+                });
+            }
+
+            int running = workers;
+            while (running > 0) {
+                Object result = output.take();
+                if (result == WORKER_DONE) {
+                    running--;
+                    continue;
+                }
+                long t0 = System.nanoTime();
+                collector.collect((O) result);
+                stats.collectNanos += System.nanoTime() - t0;
+                stats.collected++;
+            }
+        } finally {
+            threads.shutdownNow();
+            stats.wallNanos = System.nanoTime() - start;
+        }
+        return stats;
+    }
+
+    private static void putQuietly(BlockingQueue<Object> queue, Object marker) {
+        // Si nos interrumpieron, shutdownNow() ya está tirando todo abajo; igual intentamos avisar
+        if (!queue.offer(marker)) {
+            try {
+                queue.put(marker);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Contadores y tiempos de cada etapa de una ejecución. */
+    public static final class Stats {
+        public final int workers;
+        final AtomicInteger enumerated = new AtomicInteger();
+        final AtomicInteger extracted = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong extractNanos = new AtomicLong();
+        volatile long enumerateNanos;
+        volatile Exception enumerationError;
+        int collected;
+        long collectNanos;
+        long wallNanos;
+
+        Stats(int workers) {
+            this.workers = workers;
+        }
+
+        public int enumerated() { return enumerated.get(); }
+        public int extracted() { return extracted.get(); }
+        public int failed() { return failed.get(); }
+        public int collected() { return collected; }
+        public long wallMs() { return TimeUnit.NANOSECONDS.toMillis(wallNanos); }
+        public Exception enumerationError() { return enumerationError; }
+
+        // Elementos por segundo de una etapa, sobre su propio tiempo ocupado
+        private static double rate(int count, long nanos) {
+            return nanos <= 0 ? 0 : count * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            long wall = Math.max(1, wallNanos);
+            // Los workers se reparten el tiempo ocupado: el ritmo de la etapa es por worker * workers
+            double extractRate = rate(extracted(), extractNanos.get()) * workers;
+            return String.format(java.util.Locale.ROOT,
+                    "enumeración %d (%.0f/s), extracción %d con %d workers (%.0f/s, %d fallos), "
+                            + "colector %d (%.0f/s), total %d ms (%.0f/s)",
+                    enumerated(), rate(enumerated(), enumerateNanos),
+                    extracted(), workers, extractRate, failed(),
+                    collected, rate(collected, collectNanos),
+                    wallMs(), rate(collected, wall));
+        }
+    }
+}
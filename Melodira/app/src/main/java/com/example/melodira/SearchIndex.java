@@ -0,0 +1,240 @@
+package com.example.melodira;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Índice de búsqueda sobre una lista de canciones, construido una vez (en segundo plano) y
+ * consultado en cada pulsación:
+ * <ul>
+ *   <li>Título, artista y álbum se guardan ya normalizados: minúsculas y sin acentos
+ *   ("Canción" y "cancion" coinciden).</li>
+ *   <li>Índice de trigramas: para cada grupo de 3 letras, las canciones que lo contienen. Un término
+ *   de 3 o más letras solo se comprueba contra la intersección de sus trigramas, no contra todo.</li>
+ *   <li>Si la consulta nueva empieza por la anterior (se añadió una letra), se refina el resultado
+ *   anterior en vez de empezar de cero: el conjunto solo puede encoger.</li>
+ * </ul>
+ * Varias palabras se buscan como Y (todas tienen que aparecer, en cualquier campo). Los resultados
+ * salen ordenados por relevancia: primero coincidencias al principio del título, después dentro del
+ * título, después artista y álbum; a igualdad, en el orden de la lista original.
+ * No depende de Android. No es thread-safe: usarlo desde un solo hilo.
+ */
+public final class SearchIndex {
+
+    // Separa los campos en el texto de cada canción; ningún trigrama lo cruza
+    private static final char FIELD_SEPARATOR = '\n';
+
+    private final List<Track> tracks;
+    private final String[] title;
+    private final String[] artist;
+    private final String[] album;
+    // title \n artist \n album, para comprobar coincidencias de una sola pasada
+    private final String[] haystack;
+    private final Map<Long, int[]> postings;
+    private final int[] allDocs;
+
+    public SearchIndex(List<Track> source) {
+        tracks = new ArrayList<>(source);
+        int n = tracks.size();
+        title = new String[n];
+        artist = new String[n];
+        album = new String[n];
+        haystack = new String[n];
+        allDocs = new int[n];
+
+        Map<Long, IntList> building = new HashMap<>();
+        for (int d = 0; d < n; d++) {
+            Track t = tracks.get(d);
+            title[d] = normalize(t.title);
+            artist[d] = normalize(t.artist);
+            album[d] = normalize(t.album);
+            haystack[d] = title[d] + FIELD_SEPARATOR + artist[d] + FIELD_SEPARATOR + album[d];
+            allDocs[d] = d;
+
+            String h = haystack[d];
+            for (int i = 0; i + 3 <= h.length(); i++) {
+                char a = h.charAt(i), b = h.charAt(i + 1), c = h.charAt(i + 2);
+                if (a == FIELD_SEPARATOR || b == FIELD_SEPARATOR || c == FIELD_SEPARATOR) continue;
+                IntList list = building.get(trigram(a, b, c));
+                if (list == null) {
+                    list = new IntList();
+                    building.put(trigram(a, b, c), list);
+                }
+                list.addIfLast(d); // Las canciones entran en orden: basta mirar la última para no repetir
+            }
+        }
+
+        postings = new HashMap<>(building.size() * 2);
+        for (Map.Entry<Long, IntList> e : building.entrySet()) {
+            postings.put(e.getKey(), e.getValue().toArray());
+        }
+    }
+
+    public int size() {
+        return tracks.size();
+    }
+
+    /** Minúsculas y sin marcas diacríticas (acentos, diéresis, virgulilla). null -> "". */
+    public static String normalize(String s) {
+        if (s == null || s.isEmpty()) return "";
+        String lower = s.toLowerCase(Locale.ROOT);
+        // Atajo: casi todos los títulos son ASCII y no hay nada que descomponer
+        boolean ascii = true;
+        for (int i = 0; i < lower.length() && ascii; i++) ascii = lower.charAt(i) < 0x80;
+        if (ascii) return lower;
+
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Busca query. Si previous es un resultado de este mismo índice y query lo extiende, solo se
+     * revisan sus canciones. Una consulta vacía devuelve toda la lista en su orden.
+     */
+    public Result search(String query, Result previous) {
+        String q = normalize(query).trim();
+        if (q.isEmpty()) return new Result(this, q, allDocs);
+
+        String[] terms = q.split("\\s+");
+
+        int[] candidates;
+        if (previous != null && previous.index == this && !previous.query.isEmpty() && q.startsWith(previous.query)) {
+            candidates = previous.docs;
+        } else {
+            candidates = null;
+            for (String term : terms) {
+                if (term.length() < 3) continue;
+                int[] termDocs = trigramCandidates(term);
+                candidates = candidates == null ? termDocs : intersect(candidates, termDocs);
+                if (candidates.length == 0) break;
+            }
+            if (candidates == null) candidates = allDocs; // Solo términos cortos: no hay trigramas
+        }
+
+        // Comprobación real (los trigramas no garantizan que estén seguidos) y puntuación
+        long[] scored = new long[candidates.length];
+        int count = 0;
+        for (int d : candidates) {
+            int score = 0;
+            for (String term : terms) {
+                int s = termScore(d, term);
+                if (s < 0) {
+                    score = -1;
+                    break;
+                }
+                score += s;
+            }
+            if (score >= 0) scored[count++] = ((long) score << 32) | d;
+        }
+        Arrays.sort(scored, 0, count);
+
+        int[] ranked = new int[count];
+        for (int i = 0; i < count; i++) ranked[i] = (int) scored[i];
+        return new Result(this, q, ranked);
+    }
+
+    // Menor es mejor; -1 si el término no aparece en ningún campo
+    private int termScore(int d, String term) {
+        if (haystack[d].indexOf(term) < 0) return -1;
+        int s = fieldScore(title[d], term);
+        if (s >= 0) return s;
+        s = fieldScore(artist[d], term);
+        if (s >= 0) return 3 + s;
+        s = fieldScore(album[d], term);
+        return s >= 0 ? 6 + s : -1;
+    }
+
+    // 0: al principio del campo; 1: al principio de una palabra; 2: en medio; -1: no está
+    private static int fieldScore(String field, String term) {
+        int i = field.indexOf(term);
+        if (i < 0) return -1;
+        if (i == 0) return 0;
+        while (i > 0) {
+            if (!Character.isLetterOrDigit(field.charAt(i - 1))) return 1;
+            i = field.indexOf(term, i + 1);
+        }
+        return 2;
+    }
+
+    private int[] trigramCandidates(String term) {
+        int[] result = null;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            int[] docs = postings.get(trigram(term.charAt(i), term.charAt(i + 1), term.charAt(i + 2)));
+            if (docs == null) return new int[0];
+            result = result == null ? docs : intersect(result, docs);
+            if (result.length == 0) break;
+        }
+        return result;
+    }
+
+    // Intersección de dos listas ordenadas
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static long trigram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    /** Resultado de una búsqueda: canciones ordenadas por relevancia. */
+    public static final class Result {
+        final SearchIndex index;
+        /** Consulta ya normalizada. */
+        public final String query;
+        // Con la consulta vacía son todas en orden (allDocs ordenado); si no, por relevancia
+        final int[] docs;
+
+        Result(SearchIndex index, String query, int[] docs) {
+            this.index = index;
+            this.query = query;
+            this.docs = docs;
+        }
+
+        public int size() {
+            return docs.length;
+        }
+
+        public List<Track> tracks() {
+            List<Track> out = new ArrayList<>(docs.length);
+            for (int d : docs) out.add(index.tracks.get(d));
+            return out;
+        }
+    }
+
+    // Lista de ints sin boxing para construir los postings
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void addIfLast(int v) {
+            if (size > 0 && data[size - 1] == v) return;
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -6,8 +6,18 @@ import androidx.recyclerview.widget.RecyclerView;
 public class SimpleItemTouchHelperCallback extends ItemTouchHelper.Callback {
 
     public interface ItemTouchHelperAdapter {
-        void onItemMove(int fromPosition, int toPosition);
+        /** true si la fila se movió; con false el ItemTouchHelper la deja donde estaba y lo vuelve a intentar. */
+        boolean onItemMove(int fromPosition, int toPosition);
         void onItemDismiss(int position);
+
+        /** false mientras la lista no se pueda reordenar (resultados de búsqueda, lista paginada). */
+        default boolean isDragEnabled() { return true; }
+
+        /** Empieza a arrastrarse la fila position (antes del primer onItemMove). */
+        default void onDragStarted(int position) {}
+
+        /** Se soltó la fila: los onItemMove de este arrastre ya se pueden aplicar como un solo cambio. */
+        default void onDragFinished() {}
     }
 
     private final ItemTouchHelperAdapter mAdapter;
@@ -16,7 +26,7 @@ public class SimpleItemTouchHelperCallback extends ItemTouchHelper.Callback {
         mAdapter = adapter;
     }
 
-    @Override public boolean isLongPressDragEnabled() { return true; }
+    @Override public boolean isLongPressDragEnabled() { return mAdapter.isDragEnabled(); }
     @Override public boolean isItemViewSwipeEnabled() { return false; }
 
     @Override public int getMovementFlags(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
@@ -27,11 +37,22 @@ public class SimpleItemTouchHelperCallback extends ItemTouchHelper.Callback {
 
     @Override public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder,
                                     RecyclerView.ViewHolder target) {
-        mAdapter.onItemMove(viewHolder.getAdapterPosition(), target.getAdapterPosition());
-        return true;
+        return mAdapter.onItemMove(viewHolder.getAdapterPosition(), target.getAdapterPosition());
     }
 
     @Override public void onSwiped(RecyclerView.ViewHolder viewHolder, int direction) {
         mAdapter.onItemDismiss(viewHolder.getAdapterPosition());
     }
+
+    @Override public void onSelectedChanged(RecyclerView.ViewHolder viewHolder, int actionState) {
+        super.onSelectedChanged(viewHolder, actionState);
+        if (actionState == ItemTouchHelper.ACTION_STATE_DRAG && viewHolder != null) {
+            mAdapter.onDragStarted(viewHolder.getAdapterPosition());
+        }
+    }
+
+    @Override public void clearView(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+        super.clearView(recyclerView, viewHolder);
+        mAdapter.onDragFinished();
+    }
 }
@@ -1,6 +1,7 @@
 package com.example.melodira;
 
 public class Track {
+    public long id;         // _ID de MediaStore, o idForPath si viene de SAF (nunca 0)
     public String path;     // Ruta del archivo (Lo que se reproduce)
     public String title;    // Título (Lo que se ve)
     public String artist;
@@ -9,10 +10,48 @@ public class Track {
 
     // IMPORTANTE: El orden aquí debe coincidir con el orden en MusicScanner
     public Track(String path, String title, String artist, String album, long durationMs) {
+        this(idForPath(path), path, title, artist, album, durationMs);
+    }
+
+    public Track(long id, String path, String title, String artist, String album, long durationMs) {
+        this.id = id;
         this.path = path;
         this.title = title;
         this.artist = artist;
         this.album = album;
         this.durationMs = durationMs;
     }
+
+    /**
+     * Id estable para una canción sin _ID (SAF): FNV-1a de 64 bits de su ruta (la URI del documento),
+     * con el bit de signo puesto para que no choque con ningún _ID (siempre positivos). La misma ruta
+     * da el mismo id en cada escaneo, así que la cola, la lista y el resaltado sobreviven a un reescaneo.
+     */
+    public static long idForPath(String path) {
+        long hash = 0xcbf29ce484222325L;
+        if (path != null) {
+            for (int i = 0; i < path.length(); i++) {
+                char c = path.charAt(i);
+                hash = (hash ^ (c & 0xFF)) * 0x100000001b3L;
+                hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+            }
+        }
+        return hash | Long.MIN_VALUE;
+    }
+
+    /**
+     * Dos Track son la misma canción si tienen el mismo id (una fila reescrita en TrackStore y las filas
+     * de un reescaneo son objetos nuevos, así que no se puede comparar por referencia).
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Track)) return false;
+        return id == ((Track) o).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
 }
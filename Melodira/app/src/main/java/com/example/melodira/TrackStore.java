@@ -0,0 +1,133 @@
+package com.example.melodira;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Almacén de las canciones de la biblioteca: una fila por canción, y en cada fila un único Track
+ * canónico que es el que ven todos (la lista, la cola del servicio, las fotos del estado...).
+ * <ul>
+ *   <li>Artista y álbum se guardan una sola vez en diccionarios: los Track de todas las filas con el
+ *   mismo artista apuntan al mismo String. En una biblioteca real el mismo artista se repite cientos
+ *   de veces, y cada fila de un Cursor trae su propio String.</li>
+ *   <li>Título y ruta no se copian: el Track de la fila usa los String de la canción que llegó.</li>
+ * </ul>
+ * La cola del servicio guarda un Track por canción de toda la biblioteca (también las de SAF, que no
+ * están aquí), así que no se crean vistas aparte: serían una segunda copia de los textos y una asignación
+ * por lectura. {@link #track} devuelve el objeto guardado.
+ * <p>
+ * Las filas son estables: una fila borrada queda libre para la siguiente alta, nunca se mueven las demás
+ * (el orden lo lleva quien usa el almacén, ver MusicLibrary). Reescribir una fila ({@link #set}) crea su
+ * Track nuevo; el anterior no se toca (puede seguir en una foto ya publicada).
+ * No depende de Android. No es thread-safe.
+ */
+public final class TrackStore {
+
+    private Track[] tracks = new Track[0];    // null: fila libre
+    private int rows;                         // Filas usadas (vivas o libres)
+    private int liveCount;
+    private int[] freeRows = new int[0];
+    private int freeCount;
+
+    private final Dictionary artistDict = new Dictionary();
+    private final Dictionary albumDict = new Dictionary();
+    private final LongIntMap rowById = new LongIntMap();
+
+    /** Guarda t en una fila nueva y devuelve su número. No comprueba si el id ya estaba. */
+    public int add(Track t) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (rows == tracks.length) tracks = Arrays.copyOf(tracks, Math.max(16, rows * 2));
+            row = rows++;
+        }
+        liveCount++;
+        tracks[row] = canonical(t);
+        rowById.put(t.id, row);
+        return row;
+    }
+
+    /** Reescribe la fila con los datos de t (mismo id). */
+    public void set(int row, Track t) {
+        checkLive(row);
+        if (tracks[row].id != t.id) rowById.remove(tracks[row].id);
+        tracks[row] = canonical(t);
+        rowById.put(t.id, row);
+    }
+
+    public void remove(int row) {
+        checkLive(row);
+        rowById.remove(tracks[row].id);
+        tracks[row] = null;
+        liveCount--;
+        if (freeCount == freeRows.length) freeRows = Arrays.copyOf(freeRows, Math.max(16, freeCount * 2));
+        freeRows[freeCount++] = row;
+    }
+
+    public void clear() {
+        Arrays.fill(tracks, 0, rows, null);
+        rows = liveCount = freeCount = 0;
+        rowById.clear();
+        artistDict.clear();
+        albumDict.clear();
+    }
+
+    /** Canciones guardadas (sin contar filas libres). */
+    public int size() {
+        return liveCount;
+    }
+
+    /** Fila de la canción con ese id, o -1. O(1). */
+    public int rowOf(long id) {
+        return rowById.get(id);
+    }
+
+    /** El Track de la fila. Siempre el mismo objeto mientras no se reescriba la fila; no asigna nada. */
+    public Track track(int row) {
+        checkLive(row);
+        return tracks[row];
+    }
+
+    /** Compara el título de la fila con title con el orden de la biblioteca (MusicLibrary.compareTitles). */
+    public int compareTitle(int row, String title) {
+        return MusicLibrary.compareTitles(tracks[row].title, title);
+    }
+
+    /** Distintos artistas / álbumes guardados (para logs y tests). */
+    public int artistCount() { return artistDict.size(); }
+    public int albumCount() { return albumDict.size(); }
+
+    private Track canonical(Track t) {
+        return new Track(t.id, t.path, t.title, artistDict.intern(t.artist), albumDict.intern(t.album), t.durationMs);
+    }
+
+    private void checkLive(int row) {
+        if (row < 0 || row >= rows || tracks[row] == null) {
+            throw new IllegalArgumentException("Fila " + row + " no existe");
+        }
+    }
+
+    /**
+     * Un String por texto distinto. Las entradas no se liberan al borrar canciones: un artista que
+     * desaparece ocupa una entrada hasta el siguiente clear() (son pocos comparados con las canciones).
+     */
+    private static final class Dictionary {
+        private final Map<String, String> values = new HashMap<>();
+
+        String intern(String s) {
+            if (s == null) return null;
+            String shared = values.putIfAbsent(s, s);
+            return shared != null ? shared : s;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        void clear() {
+            values.clear();
+        }
+    }
+}
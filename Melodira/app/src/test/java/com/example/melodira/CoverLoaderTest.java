@@ -0,0 +1,158 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoverLoaderTest {
+
+    private static final ArtworkCache.Size SMALL = ArtworkCache.Size.SMALL;
+
+    /**
+     * Un solo hilo que se queda bloqueado en la primera carátula ("gate") hasta que el test lo suelta:
+     * así las demás peticiones se acumulan en la cola y se puede ver en qué orden salen. Sin sleeps:
+     * se espera a que se lean las carátulas esperadas y después a una última ("end") que, al ir por el
+     * mismo hilo, solo sale cuando ya se entregó todo lo anterior.
+     */
+    private static final class Harness {
+        static final String END = "end";
+
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore fetches = new Semaphore(0);
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch gateReached = new CountDownLatch(1);
+        final CountDownLatch openGate = new CountDownLatch(1);
+        final CoverLoader loader;
+
+        Harness(int maxQueued) {
+            loader = new CoverLoader((path, size) -> {
+                if (path.equals("gate")) {
+                    gateReached.countDown();
+                    try {
+                        openGate.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (path.equals(END)) return null;
+                fetched.add(path);
+                fetches.release();
+                return null;
+            }, Runnable::run, 1, maxQueued);
+        }
+
+        void blockWorker() throws InterruptedException {
+            loader.load(new Object(), "gate", SMALL, CoverLoader.Priority.VISIBLE, (p, b) -> {});
+            assertTrue(gateReached.await(5, TimeUnit.SECONDS));
+        }
+
+        void request(Object owner, String path, CoverLoader.Priority priority) {
+            loader.load(owner, path, SMALL, priority, (p, b) -> delivered.add(p));
+        }
+
+        /** Suelta el hilo y espera a que lea expectedFetches carátulas (contando "gate") y entregue todo. */
+        void drain(int expectedFetches) throws InterruptedException {
+            openGate.countDown();
+            assertTrue(fetches.tryAcquire(expectedFetches, 5, TimeUnit.SECONDS));
+            CountDownLatch end = new CountDownLatch(1);
+            loader.load(new Object(), END, SMALL, CoverLoader.Priority.VISIBLE, (p, b) -> end.countDown());
+            assertTrue(end.await(5, TimeUnit.SECONDS));
+            assertEquals(0, loader.queuedCount()); // Nada se quedó esperando detrás de "end"
+        }
+    }
+
+    @Test
+    public void newestVisibleRequestsAreServedFirst() throws Exception {
+        Harness h = new Harness(16);
+        h.blockWorker();
+        h.request(new Object(), "prefetch", CoverLoader.Priority.PREFETCH);
+        h.request(new Object(), "a", CoverLoader.Priority.VISIBLE);
+        h.request(new Object(), "b", CoverLoader.Priority.VISIBLE);
+        h.drain(4);
+
+        assertEquals(List.of("gate", "b", "a", "prefetch"), h.fetched);
+    }
+
+    @Test
+    public void sameCoverIsFetchedOnceForSeveralOwners() throws Exception {
+        Harness h = new Harness(16);
+        h.blockWorker();
+        h.request(new Object(), "a", CoverLoader.Priority.VISIBLE);
+        h.request(new Object(), "a", CoverLoader.Priority.VISIBLE);
+        h.drain(2);
+
+        assertEquals(List.of("gate", "a"), h.fetched);
+        assertEquals(List.of("a", "a"), h.delivered);
+    }
+
+    @Test
+    public void cancelledRequestIsDroppedFromTheQueue() throws Exception {
+        Harness h = new Harness(16);
+        h.blockWorker();
+        Object holder = new Object();
+        h.request(holder, "a", CoverLoader.Priority.VISIBLE);
+        h.loader.cancel(holder);
+        h.drain(1);
+
+        assertEquals(List.of("gate"), h.fetched);
+        assertTrue(h.delivered.isEmpty());
+    }
+
+    @Test
+    public void rebindingAHolderReplacesItsPreviousRequest() throws Exception {
+        Harness h = new Harness(16);
+        h.blockWorker();
+        Object holder = new Object();
+        h.request(holder, "old", CoverLoader.Priority.VISIBLE);
+        h.request(holder, "new", CoverLoader.Priority.VISIBLE);
+        h.drain(2);
+
+        assertEquals(List.of("gate", "new"), h.fetched);
+        assertEquals(List.of("new"), h.delivered);
+    }
+
+    @Test
+    public void fullQueueDropsTheOldestLowPriorityRequests() throws Exception {
+        Harness h = new Harness(2);
+        h.blockWorker();
+        h.request(new Object(), "visible", CoverLoader.Priority.VISIBLE);
+        h.request(new Object(), "prefetch1", CoverLoader.Priority.PREFETCH);
+        h.request(new Object(), "prefetch2", CoverLoader.Priority.PREFETCH);
+        h.drain(3);
+
+        assertEquals(List.of("gate", "visible", "prefetch2"), h.fetched);
+    }
+
+    @Test
+    public void cancelPrefetchesKeepsTheOnesARowIsWaitingFor() throws Exception {
+        Harness h = new Harness(16);
+        h.blockWorker();
+        h.loader.prefetch("stale", SMALL);
+        h.loader.prefetch("claimed", SMALL);
+        h.request(new Object(), "claimed", CoverLoader.Priority.PREFETCH);
+        h.loader.cancelPrefetches();
+        h.drain(2);
+
+        assertEquals(List.of("gate", "claimed"), h.fetched);
+    }
+
+    @Test
+    public void prefetchSurvivesTheCancelOfARowThatJoinedIt() throws Exception {
+        Harness h = new Harness(16);
+        h.blockWorker();
+        h.loader.prefetch("a", SMALL);
+        Object holder = new Object();
+        h.request(holder, "a", CoverLoader.Priority.VISIBLE);
+        h.loader.cancel(holder);
+        h.drain(2);
+
+        assertEquals(List.of("gate", "a"), h.fetched);
+        assertTrue(h.delivered.isEmpty());
+    }
+}
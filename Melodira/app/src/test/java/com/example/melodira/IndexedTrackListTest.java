@@ -0,0 +1,48 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexedTrackListTest {
+
+    @Test
+    public void indexOfFindsTheSongEvenThroughAnotherObject() {
+        List<Track> list = new IndexedTrackList(Arrays.asList(
+                new Track(10, "/m/a.mp3", "a", null, null, 0),
+                new Track(20, "/m/b.mp3", "b", null, null, 0)));
+
+        // Misma canción tras un reescaneo: otro objeto, mismo id
+        assertEquals(1, list.indexOf(new Track(20, "/m/b.mp3", "b (nuevo)", null, null, 0)));
+        assertTrue(list.contains(new Track(10, "/m/a.mp3", "a", null, null, 0)));
+        assertEquals(-1, list.indexOf(new Track(30, "/m/c.mp3", "c", null, null, 0)));
+        assertEquals(-1, list.indexOf("a"));
+    }
+
+    @Test
+    public void repeatedSongReturnsTheFirstPosition() {
+        Track a = new Track(1, "/m/a.mp3", "a", null, null, 0);
+        Track b = new Track(2, "/m/b.mp3", "b", null, null, 0);
+        List<Track> list = new IndexedTrackList(Arrays.asList(b, a, b));
+
+        assertEquals(0, list.indexOf(b));
+        assertEquals(3, list.size());
+        assertSame(a, list.get(1));
+    }
+
+    @Test
+    public void safIdsAreStableNegativeAndDistinct() {
+        String uri = "content://com.android.externalstorage.documents/tree/primary%3AMusic/document/a.mp3";
+        Track first = new Track(uri, "a", null, null, 0);
+        Track rescanned = new Track(uri, "a", null, null, 0);
+
+        assertEquals(first.id, rescanned.id);
+        assertEquals(first, rescanned);
+        assertTrue(first.id < 0); // Nunca choca con un _ID de MediaStore
+        assertFalse(first.id == Track.idForPath(uri.replace("a.mp3", "b.mp3")));
+        assertFalse(Track.idForPath("ab") == Track.idForPath("ba"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIntMapTest {
+
+    @Test
+    public void putGetAndOverwrite() {
+        LongIntMap map = new LongIntMap();
+        map.put(42, 1);
+        map.put(-7, 2);
+        map.put(42, 3);
+
+        assertEquals(3, map.get(42));
+        assertEquals(2, map.get(-7));
+        assertEquals(LongIntMap.MISSING, map.get(5));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void zeroIsAnOrdinaryKey() {
+        LongIntMap map = new LongIntMap();
+        assertFalse(map.containsKey(0));
+        map.put(0, 9);
+        assertEquals(9, map.get(0));
+        assertEquals(1, map.size());
+        map.remove(0);
+        assertEquals(LongIntMap.MISSING, map.get(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void putIfAbsentKeepsTheFirstValue() {
+        LongIntMap map = new LongIntMap();
+        map.putIfAbsent(3, 10);
+        map.putIfAbsent(3, 20);
+        assertEquals(10, map.get(3));
+    }
+
+    @Test
+    public void consecutiveIdsGrowPastTheInitialCapacity() {
+        LongIntMap map = new LongIntMap(4);
+        for (int i = 1; i <= 10_000; i++) map.put(i, i * 2);
+        for (int i = 1; i <= 10_000; i++) assertEquals(i * 2, map.get(i));
+        assertEquals(10_000, map.size());
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(7);
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int op = 0; op < 50_000; op++) {
+            // Pocas claves distintas: muchas colisiones y borrados en medio de grupos
+            long key = random.nextInt(500) - 250;
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -250; key < 250; key++) {
+            Integer v = expected.get(key);
+            assertEquals(v != null ? (long) v : LongIntMap.MISSING, map.get(key));
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheMap() {
+        LongIntMap map = new LongIntMap();
+        map.put(1, 1);
+        map.put(0, 0);
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(1));
+        assertFalse(map.containsKey(0));
+    }
+}
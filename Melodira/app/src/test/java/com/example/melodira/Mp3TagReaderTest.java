@@ -0,0 +1,266 @@
+package com.example.melodira;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de Mp3TagReader contra archivos generados al vuelo (etiquetas ID3 + tramas MPEG vacías).
+ */
+public class Mp3TagReaderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // MPEG1 Layer III, 128 kbps, 44100 Hz, estéreo, sin relleno -> 417 bytes por trama
+    private static final byte[] HEADER_128K = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0x00};
+    private static final int FRAME_128K = 417;
+    // Igual pero a 192 kbps -> 626 bytes por trama
+    private static final byte[] HEADER_192K = {(byte) 0xFF, (byte) 0xFB, (byte) 0xB0, (byte) 0x00};
+    private static final int FRAME_192K = 626;
+
+    @Test
+    public void readsId3v23TextFrames() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frame23("TIT2", text(0, "Canción de prueba", StandardCharsets.ISO_8859_1)));
+        frames.write(frame23("TPE1", text(1, "Artista", StandardCharsets.UTF_16)));
+        frames.write(frame23("APIC", new byte[5000])); // Carátula que el lector debe saltarse
+        frames.write(frame23("TALB", text(0, "Álbum", StandardCharsets.ISO_8859_1)));
+
+        File f = write(id3v2(3, frames.toByteArray(), 64), cbrFrames(HEADER_128K, FRAME_128K, 100));
+        Mp3TagReader.Result r = read(f);
+
+        assertEquals("Canción de prueba", r.title);
+        assertEquals("Artista", r.artist);
+        assertEquals("Álbum", r.album);
+    }
+
+    @Test
+    public void readsId3v24Utf8WithSyncsafeFrameSizes() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frame24("TIT2", text(3, "東京 ✓", StandardCharsets.UTF_8)));
+        frames.write(frame24("TPE1", text(2, "Band", StandardCharsets.UTF_16BE)));
+        // Valor múltiple (separado por \0): nos quedamos con el primero
+        frames.write(frame24("TALB", text(3, "Uno\u0000Dos", StandardCharsets.UTF_8)));
+
+        File f = write(id3v2(4, frames.toByteArray(), 0), cbrFrames(HEADER_128K, FRAME_128K, 10));
+        Mp3TagReader.Result r = read(f);
+
+        assertEquals("東京 ✓", r.title);
+        assertEquals("Band", r.artist);
+        assertEquals("Uno", r.album);
+    }
+
+    @Test
+    public void readsId3v22ThreeLetterFrames() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frame22("TT2", text(0, "Viejo", StandardCharsets.ISO_8859_1)));
+        frames.write(frame22("TP1", text(0, "Autor", StandardCharsets.ISO_8859_1)));
+
+        File f = write(id3v2(2, frames.toByteArray(), 0), cbrFrames(HEADER_128K, FRAME_128K, 10));
+        Mp3TagReader.Result r = read(f);
+
+        assertEquals("Viejo", r.title);
+        assertEquals("Autor", r.artist);
+        assertNull(r.album);
+    }
+
+    @Test
+    public void fallsBackToId3v1Trailer() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frame23("TIT2", text(0, "De la v2", StandardCharsets.ISO_8859_1)));
+
+        File f = write(id3v2(3, frames.toByteArray(), 0), cbrFrames(HEADER_128K, FRAME_128K, 100),
+                id3v1("Titulo v1", "Artista v1", "Album v1"));
+        Mp3TagReader.Result r = read(f);
+
+        assertEquals("De la v2", r.title);   // La v2 tiene prioridad
+        assertEquals("Artista v1", r.artist);
+        assertEquals("Album v1", r.album);
+        // El trailer no cuenta como audio: 100 tramas de 417 bytes a 128 kbps
+        assertEquals(100L * FRAME_128K * 8 / 128, r.durationMs);
+    }
+
+    @Test
+    public void cbrDurationFromFileSize() throws IOException {
+        // CBR: bytes de audio / bitrate (sin relleno las tramas miden 417 bytes, no 417.96)
+        File f = write(cbrFrames(HEADER_128K, FRAME_128K, 1000));
+        assertEquals(1000L * FRAME_128K * 8 / 128, read(f).durationMs);
+    }
+
+    @Test
+    public void xingFrameCountWithLameDelayAndPadding() throws IOException {
+        byte[] xing = xingFrame(2000, 576, 1200);
+        File f = write(id3v2(3, new byte[0], 16), xing, cbrFrames(HEADER_128K, FRAME_128K, 20));
+
+        long samples = 2000L * 1152 - 576 - 1200;
+        assertEquals(samples * 1000 / 44100, read(f).durationMs);
+    }
+
+    @Test
+    public void vbriFrameCount() throws IOException {
+        byte[] vbri = new byte[FRAME_128K];
+        System.arraycopy(HEADER_128K, 0, vbri, 0, 4);
+        System.arraycopy("VBRI".getBytes(StandardCharsets.US_ASCII), 0, vbri, 36, 4);
+        putInt(vbri, 36 + 14, 500);
+
+        File f = write(vbri, cbrFrames(HEADER_128K, FRAME_128K, 5));
+        assertEquals(500L * 1152 * 1000 / 44100, read(f).durationMs);
+    }
+
+    @Test
+    public void countsFramesWhenBitrateVaries() throws IOException {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        for (int i = 0; i < 30; i++) {
+            audio.write(i % 2 == 0 ? cbrFrames(HEADER_128K, FRAME_128K, 1) : cbrFrames(HEADER_192K, FRAME_192K, 1));
+        }
+        File f = write(audio.toByteArray());
+        assertEquals(30L * 1152 * 1000 / 44100, read(f).durationMs);
+    }
+
+    @Test
+    public void undoesTagLevelUnsynchronisation() throws IOException {
+        byte[] tit2 = frame23("TIT2", text(0, "ÿ", StandardCharsets.ISO_8859_1)); // 0xFF en el texto
+        ByteArrayOutputStream unsynced = new ByteArrayOutputStream();
+        for (byte b : tit2) {
+            unsynced.write(b);
+            if ((b & 0xFF) == 0xFF) unsynced.write(0);
+        }
+        byte[] tag = id3v2(3, unsynced.toByteArray(), 0);
+        tag[5] = (byte) 0x80;
+
+        File f = write(tag, cbrFrames(HEADER_128K, FRAME_128K, 10));
+        assertEquals("ÿ", read(f).title);
+    }
+
+    @Test
+    public void noTagsAndNoAudioGivesEmptyResult() throws IOException {
+        File f = write(new byte[300]);
+        Mp3TagReader.Result r = read(f);
+
+        assertNull(r.title);
+        assertNull(r.artist);
+        assertNull(r.album);
+        assertEquals(0, r.durationMs);
+    }
+
+    // --- Generadores de fixtures ---
+
+    private Mp3TagReader.Result read(File f) throws IOException {
+        try (FileInputStream in = new FileInputStream(f); FileChannel ch = in.getChannel()) {
+            return Mp3TagReader.read(ch);
+        }
+    }
+
+    private File write(byte[]... parts) throws IOException {
+        File f = tmp.newFile();
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            for (byte[] p : parts) out.write(p);
+        }
+        return f;
+    }
+
+    private static byte[] id3v2(int major, byte[] frames, int padding) {
+        int size = frames.length + padding;
+        byte[] out = new byte[10 + size];
+        out[0] = 'I'; out[1] = 'D'; out[2] = '3';
+        out[3] = (byte) major;
+        putSyncsafe(out, 6, size);
+        System.arraycopy(frames, 0, out, 10, frames.length);
+        return out;
+    }
+
+    private static byte[] frame22(String id, byte[] data) {
+        byte[] out = new byte[6 + data.length];
+        System.arraycopy(id.getBytes(StandardCharsets.US_ASCII), 0, out, 0, 3);
+        out[3] = (byte) (data.length >> 16);
+        out[4] = (byte) (data.length >> 8);
+        out[5] = (byte) data.length;
+        System.arraycopy(data, 0, out, 6, data.length);
+        return out;
+    }
+
+    private static byte[] frame23(String id, byte[] data) {
+        byte[] out = new byte[10 + data.length];
+        System.arraycopy(id.getBytes(StandardCharsets.US_ASCII), 0, out, 0, 4);
+        putInt(out, 4, data.length);
+        System.arraycopy(data, 0, out, 10, data.length);
+        return out;
+    }
+
+    private static byte[] frame24(String id, byte[] data) {
+        byte[] out = frame23(id, data);
+        putSyncsafe(out, 4, data.length);
+        return out;
+    }
+
+    private static byte[] text(int encoding, String value, java.nio.charset.Charset cs) {
+        byte[] s = value.getBytes(cs);
+        byte[] out = new byte[1 + s.length];
+        out[0] = (byte) encoding;
+        System.arraycopy(s, 0, out, 1, s.length);
+        return out;
+    }
+
+    private static byte[] id3v1(String title, String artist, String album) {
+        byte[] out = new byte[128];
+        out[0] = 'T'; out[1] = 'A'; out[2] = 'G';
+        copyLatin1(out, 3, title);
+        copyLatin1(out, 33, artist);
+        copyLatin1(out, 63, album);
+        return out;
+    }
+
+    private static void copyLatin1(byte[] dst, int offset, String s) {
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(b, 0, dst, offset, Math.min(30, b.length));
+    }
+
+    private static byte[] cbrFrames(byte[] header, int frameLength, int count) {
+        byte[] out = new byte[frameLength * count];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(header, 0, out, i * frameLength, 4);
+        }
+        return out;
+    }
+
+    // Trama Xing (flags: frames + bytes + TOC + calidad) seguida de una cabecera LAME
+    private static byte[] xingFrame(int frames, int delay, int padding) {
+        byte[] out = new byte[FRAME_128K];
+        System.arraycopy(HEADER_128K, 0, out, 0, 4);
+        int p = 4 + 32;
+        System.arraycopy("Xing".getBytes(StandardCharsets.US_ASCII), 0, out, p, 4);
+        putInt(out, p + 4, 0x0F);
+        putInt(out, p + 8, frames);
+        int lame = p + 8 + 4 + 4 + 100 + 4;
+        System.arraycopy("LAME3.100".getBytes(StandardCharsets.US_ASCII), 0, out, lame, 9);
+        out[lame + 21] = (byte) (delay >> 4);
+        out[lame + 22] = (byte) (((delay & 0x0F) << 4) | (padding >> 8));
+        out[lame + 23] = (byte) padding;
+        return out;
+    }
+
+    private static void putInt(byte[] b, int offset, int v) {
+        b[offset] = (byte) (v >>> 24);
+        b[offset + 1] = (byte) (v >>> 16);
+        b[offset + 2] = (byte) (v >>> 8);
+        b[offset + 3] = (byte) v;
+    }
+
+    private static void putSyncsafe(byte[] b, int offset, int v) {
+        b[offset] = (byte) ((v >> 21) & 0x7F);
+        b[offset + 1] = (byte) ((v >> 14) & 0x7F);
+        b[offset + 2] = (byte) ((v >> 7) & 0x7F);
+        b[offset + 3] = (byte) (v & 0x7F);
+    }
+}
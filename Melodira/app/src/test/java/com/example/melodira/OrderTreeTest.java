@@ -0,0 +1,117 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderTreeTest {
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+        return a;
+    }
+
+    @Test
+    public void buildKeepsTheGivenOrder() {
+        int[] values = {4, 0, 3, 1, 2};
+        OrderTree tree = new OrderTree(values, new Random(1));
+
+        assertEquals(5, tree.size());
+        assertArrayEquals(values, tree.toArray());
+        for (int k = 0; k < values.length; k++) {
+            assertEquals(values[k], tree.get(k));
+            assertEquals(k, tree.indexOf(values[k]));
+        }
+        assertEquals(-1, tree.indexOf(7));
+    }
+
+    @Test
+    public void moveForwardAndBackward() {
+        OrderTree tree = new OrderTree(new int[]{0, 1, 2, 3, 4}, new Random(2));
+
+        tree.move(0, 3);
+        assertArrayEquals(new int[]{1, 2, 3, 0, 4}, tree.toArray());
+        tree.move(4, 0);
+        assertArrayEquals(new int[]{4, 1, 2, 3, 0}, tree.toArray());
+        assertEquals(4, tree.indexOf(0));
+    }
+
+    @Test
+    public void insertAndRemoveByPosition() {
+        OrderTree tree = new OrderTree(new Random(3));
+        tree.insert(0, 5);
+        tree.insert(0, 2);
+        tree.insert(2, 9);
+        assertArrayEquals(new int[]{2, 5, 9}, tree.toArray());
+
+        assertEquals(5, tree.remove(1));
+        assertEquals(-1, tree.indexOf(5));
+        assertArrayEquals(new int[]{2, 9}, tree.toArray());
+
+        tree.insert(1, 5); // Un valor quitado puede volver a entrar
+        assertEquals(1, tree.indexOf(5));
+    }
+
+    @Test
+    public void repeatedValueIsRejected() {
+        OrderTree tree = new OrderTree(new int[]{0, 1}, new Random(4));
+        try {
+            tree.insert(0, 1);
+            fail("Se insertó un valor repetido");
+        } catch (IllegalArgumentException expected) {
+            assertArrayEquals(new int[]{0, 1}, tree.toArray());
+        }
+    }
+
+    @Test
+    public void randomOperationsMatchAnArrayList() {
+        Random random = new Random(5);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) expected.add(i);
+        OrderTree tree = new OrderTree(toArray(expected), new Random(6));
+        int nextValue = 300;
+
+        for (int op = 0; op < 5_000; op++) {
+            int n = expected.size();
+            int kind = random.nextInt(4);
+            if (kind == 0 && n > 0) {
+                int from = random.nextInt(n), to = random.nextInt(n);
+                tree.move(from, to);
+                expected.add(to, expected.remove(from));
+            } else if (kind == 1) {
+                int k = random.nextInt(n + 1);
+                tree.insert(k, nextValue);
+                expected.add(k, nextValue++);
+            } else if (kind == 2 && n > 0) {
+                int k = random.nextInt(n);
+                assertEquals((int) expected.remove(k), tree.remove(k));
+            } else if (n > 0) {
+                int k = random.nextInt(n);
+                assertEquals((int) expected.get(k), tree.get(k));
+                assertEquals(k, tree.indexOf(expected.get(k)));
+            }
+        }
+        assertEquals(expected.size(), tree.size());
+        assertTrue(Arrays.equals(toArray(expected), tree.toArray()));
+    }
+
+    @Test
+    public void reorderableListMovesInPlaceAndFindsById() {
+        List<Track> source = new ArrayList<>();
+        for (int i = 0; i < 5; i++) source.add(new Track(i + 1, "/m/" + i + ".mp3", "t" + i, null, null, 0));
+        ReorderableTrackList list = new ReorderableTrackList(source);
+
+        list.move(4, 1);
+
+        assertEquals("t4", list.get(1).title);
+        assertEquals("t1", list.get(2).title);
+        assertEquals(1, list.indexOf(new Track(5, "/otra.mp3", "x", null, null, 0)));
+        assertEquals(5, list.size());
+    }
+}
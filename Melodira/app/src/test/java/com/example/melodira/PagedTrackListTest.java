@@ -0,0 +1,184 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class PagedTrackListTest {
+
+    // Ejecutor manual: las tareas esperan hasta runAll(), así se ve el estado "página pedida"
+    private static final class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable r) {
+            tasks.add(r);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) tasks.poll().run();
+        }
+    }
+
+    private static final class FakeSource implements PagedTrackList.PageSource {
+        final int rows;
+        final List<Integer> loadedOffsets = new ArrayList<>();
+        boolean closed;
+        int staleFrom = Integer.MAX_VALUE; // Desde esta fila el origen ya no es el de la lista
+
+        FakeSource(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public List<Track> loadPage(int offset, int limit) {
+            loadedOffsets.add(offset);
+            if (offset + limit > staleFrom) throw new IllegalStateException("Otra cola");
+            List<Track> page = new ArrayList<>();
+            for (int i = offset; i < Math.min(rows, offset + limit); i++) {
+                page.add(new Track(i + 1, "/m/" + i + ".mp3", "t" + i, null, null, 0));
+            }
+            return page;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private final ManualExecutor executor = new ManualExecutor();
+
+    private PagedTrackList list(FakeSource source, int size) {
+        return new PagedTrackList(source, size, 10, 4, executor, executor);
+    }
+
+    @Test
+    public void unloadedRowIsNullUntilItsPageArrives() {
+        FakeSource source = new FakeSource(100);
+        PagedTrackList list = list(source, 100);
+        int[] notified = new int[2];
+        list.setListener((from, count) -> {
+            if (from == 50) {
+                notified[0] = from;
+                notified[1] = count;
+            }
+        });
+
+        assertNull(list.get(55));
+        assertFalse(list.isLoaded(55));
+        executor.runAll();
+
+        assertEquals("t55", list.get(55).title);
+        assertArrayEquals(new int[]{50, 10}, notified);
+    }
+
+    @Test
+    public void touchingAPageAlsoLoadsItsNeighbours() {
+        FakeSource source = new FakeSource(100);
+        PagedTrackList list = list(source, 100);
+
+        list.get(35);
+        executor.runAll();
+
+        assertTrue(list.isLoaded(25));
+        assertTrue(list.isLoaded(45));
+        assertFalse(list.isLoaded(15));
+        assertEquals(3, source.loadedOffsets.size());
+    }
+
+    @Test
+    public void farPagesAreEvicted() {
+        FakeSource source = new FakeSource(200);
+        PagedTrackList list = list(source, 200);
+
+        list.get(5);
+        executor.runAll();
+        list.get(150);
+        executor.runAll();
+
+        // maxPages = 4: quedan las de alrededor de 150, la del principio se descartó
+        assertTrue(list.isLoaded(150));
+        assertTrue(list.isLoaded(140));
+        assertFalse(list.isLoaded(5));
+    }
+
+    @Test
+    public void indexOfOnlySearchesLoadedPages() {
+        FakeSource source = new FakeSource(100);
+        PagedTrackList list = list(source, 100);
+        list.prime(0);
+
+        assertEquals(3, list.indexOf(new Track(4, "/x.mp3", "t3", null, null, 0)));
+        assertEquals(-1, list.indexOf(new Track(90, "/m/89.mp3", "t89", null, null, 0)));
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void primeLoadsSynchronously() {
+        FakeSource source = new FakeSource(100);
+        PagedTrackList list = list(source, 100);
+
+        list.prime(42);
+
+        assertTrue(list.isLoaded(42));
+        assertTrue(list.isLoaded(30));
+        assertTrue(list.isLoaded(59));
+        assertEquals("t42", list.get(42).title);
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void rowsMissingFromAShrunkTableStayAsPlaceholders() {
+        FakeSource source = new FakeSource(95); // Se contaron 100, pero ya solo hay 95
+        PagedTrackList list = list(source, 100);
+
+        list.prime(99);
+
+        assertEquals("t94", list.get(94).title);
+        assertNull(list.get(97));
+    }
+
+    @Test
+    public void closeStopsLoadingAndClosesTheSource() {
+        FakeSource source = new FakeSource(100);
+        PagedTrackList list = list(source, 100);
+        list.get(0);
+        list.close();
+        executor.runAll();
+
+        assertTrue(source.closed);
+        assertTrue(source.loadedOffsets.isEmpty());
+        assertNull(list.get(0));
+    }
+
+    @Test
+    public void aPageThatNoLongerMatchesClosesTheListAndReportsIt() {
+        FakeSource source = new FakeSource(100);
+        source.staleFrom = 60;
+        PagedTrackList list = list(source, 100);
+        int[] changed = new int[1];
+        list.setOnSourceChanged(() -> changed[0]++);
+        int[] notified = new int[1];
+        list.setListener((from, count) -> notified[0]++);
+
+        list.get(15);
+        executor.runAll();
+        assertEquals(0, changed[0]);
+        assertEquals(3, notified[0]);
+
+        list.get(75); // La página 70 (y la 60, 80) ya no coinciden
+        executor.runAll();
+
+        assertEquals(1, changed[0]);
+        assertEquals(3, notified[0]);
+        assertNull(list.get(75));
+        assertTrue(source.closed);
+    }
+}
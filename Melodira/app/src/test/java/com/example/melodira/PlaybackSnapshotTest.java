@@ -0,0 +1,41 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class PlaybackSnapshotTest {
+
+    private static PlaybackSnapshot snapshot(boolean playing, int duration, int position, long at) {
+        return new PlaybackSnapshot(Collections.emptyList(), Collections.emptyList(), -1, -1, -1,
+                false, false, playing, duration, position, at, 0);
+    }
+
+    @Test
+    public void positionAdvancesWithTheClockWhilePlaying() {
+        PlaybackSnapshot s = snapshot(true, 200_000, 10_000, 5_000);
+        assertEquals(10_000, s.positionAt(5_000));
+        assertEquals(12_500, s.positionAt(7_500));
+    }
+
+    @Test
+    public void positionStopsAtTheDuration() {
+        PlaybackSnapshot s = snapshot(true, 30_000, 29_000, 1_000);
+        assertEquals(30_000, s.positionAt(60_000));
+    }
+
+    @Test
+    public void pausedOrPreparingPositionDoesNotMove() {
+        assertEquals(4_000, snapshot(false, 100_000, 4_000, 1_000).positionAt(9_000));
+        // Preparando: cuenta como "playing" pero sin instante de referencia
+        assertEquals(0, snapshot(true, 0, 0, 0).positionAt(9_000));
+    }
+
+    @Test
+    public void emptySnapshotHasNoCurrentTrack() {
+        assertNull(PlaybackSnapshot.EMPTY.currentTrack());
+        assertTrue(PlaybackSnapshot.EMPTY.queue.isEmpty());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaybackStateBusTest {
+
+    private static final Track A = new Track(1, "/m/a.mp3", "a", null, null, 0);
+    private static final Track B = new Track(2, "/m/b.mp3", "b", null, null, 0);
+    private static final List<Track> QUEUE = Arrays.asList(A, B);
+
+    private static PlaybackSnapshot state(List<Track> queue, int current, boolean playing, int position) {
+        return new PlaybackSnapshot(queue, queue, current, -1, -1, false, false, playing, 1000, position, 0, 0);
+    }
+
+    // Los "frames": se ejecutan cuando el test quiere
+    private final List<Runnable> frames = new ArrayList<>();
+    private final PlaybackStateBus bus = new PlaybackStateBus(frames::add);
+
+    private void runFrame() {
+        List<Runnable> now = new ArrayList<>(frames);
+        frames.clear();
+        for (Runnable r : now) r.run();
+    }
+
+    @Test
+    public void changesAreDetectedOneByOne() {
+        PlaybackSnapshot base = state(QUEUE, 0, false, 0);
+
+        assertEquals(0, PlaybackStateBus.changesBetween(base, state(QUEUE, 0, false, 0)));
+        assertEquals(PlaybackStateBus.TRACK, PlaybackStateBus.changesBetween(base, state(QUEUE, 1, false, 0)));
+        assertEquals(PlaybackStateBus.PLAY_STATE, PlaybackStateBus.changesBetween(base, state(QUEUE, 0, true, 0)));
+        assertEquals(PlaybackStateBus.POSITION, PlaybackStateBus.changesBetween(base, state(QUEUE, 0, false, 500)));
+        // Otra lista con la misma canción actual: solo la cola
+        assertEquals(PlaybackStateBus.QUEUE,
+                PlaybackStateBus.changesBetween(base, state(Arrays.asList(A, B), 0, false, 0)));
+    }
+
+    @Test
+    public void burstIsDeliveredOnceWithTheLatestStateAndAllFlags() {
+        List<Integer> delivered = new ArrayList<>();
+        List<PlaybackSnapshot> states = new ArrayList<>();
+        bus.subscribe((s, changes) -> {
+            delivered.add(changes);
+            states.add(s);
+        });
+        delivered.clear(); // La entrega inicial de subscribe
+        states.clear();
+
+        bus.publish(state(QUEUE, 0, true, 0), PlaybackStateBus.PLAY_STATE);
+        bus.publish(state(QUEUE, 1, true, 0), PlaybackStateBus.TRACK);
+        PlaybackSnapshot last = state(QUEUE, 1, true, 0);
+        bus.publish(last, PlaybackStateBus.QUEUE);
+        assertEquals(1, frames.size());
+        assertTrue(delivered.isEmpty());
+
+        runFrame();
+
+        assertEquals(Collections.singletonList(
+                PlaybackStateBus.PLAY_STATE | PlaybackStateBus.TRACK | PlaybackStateBus.QUEUE), delivered);
+        assertSame(last, states.get(0));
+
+        // Los flags ya entregados no se repiten en el frame siguiente
+        bus.publish(state(QUEUE, 1, false, 0), PlaybackStateBus.PLAY_STATE);
+        runFrame();
+        assertEquals(PlaybackStateBus.PLAY_STATE, (int) delivered.get(1));
+    }
+
+    @Test
+    public void subscribeDeliversTheCurrentStateAndNothingWithoutChangesOrListeners() {
+        PlaybackSnapshot current = state(QUEUE, 0, true, 100);
+        bus.publish(current, PlaybackStateBus.TRACK);
+        assertTrue(frames.isEmpty()); // Nadie suscrito: ni se pide frame
+
+        List<Integer> delivered = new ArrayList<>();
+        PlaybackStateBus.Listener listener = (s, changes) -> {
+            assertSame(current, s);
+            delivered.add(changes);
+        };
+        bus.subscribe(listener);
+        assertEquals(Collections.singletonList(PlaybackStateBus.ALL), delivered);
+
+        bus.publish(current, 0);
+        assertTrue(frames.isEmpty());
+
+        bus.unsubscribe(listener);
+        PlaybackSnapshot later = state(QUEUE, 1, true, 0);
+        bus.publish(later, PlaybackStateBus.TRACK);
+        assertTrue(frames.isEmpty());
+        assertEquals(1, delivered.size());
+        assertSame(later, bus.getState());
+    }
+}
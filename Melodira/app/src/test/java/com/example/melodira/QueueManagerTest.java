@@ -0,0 +1,240 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class QueueManagerTest {
+
+    private static final Comparator<Track> BY_TITLE = Comparator.comparing(t -> t.title);
+
+    // Ids únicos entre llamadas: dos Track con el mismo id son la misma canción (Track.equals)
+    private static long nextId = 1;
+
+    private static List<Track> tracks(String... titles) {
+        List<Track> list = new ArrayList<>();
+        for (int i = 0; i < titles.length; i++) {
+            list.add(new Track(nextId++, "/m/" + titles[i] + ".mp3", titles[i], null, null, 0));
+        }
+        return list;
+    }
+
+    @Test
+    public void nextAndPrevFollowListOrderAndWrapAround() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b", "c"));
+
+        assertEquals(-1, q.currentIndex());
+        assertEquals(0, q.nextIndex());
+
+        q.jumpTo(2);
+        assertEquals(0, q.nextIndex());
+        assertEquals(1, q.prevIndex());
+        q.jumpTo(0);
+        assertEquals(2, q.prevIndex());
+    }
+
+    @Test
+    public void repeatOneRepeatsTheCurrentTrack() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b", "c"));
+        q.jumpTo(1);
+        q.setRepeatOne(true);
+        assertEquals(1, q.nextIndex());
+    }
+
+    @Test
+    public void shufflePlaysEveryTrackOnceStartingFromTheCurrentOne() {
+        QueueManager q = new QueueManager(new Random(7));
+        q.setTracks(tracks("a", "b", "c", "d", "e", "f", "g", "h"));
+        q.jumpTo(5);
+        q.setShuffle(true);
+
+        assertEquals(5, q.currentIndex());
+        assertSame(q.current(), q.getPlaybackOrder().get(0));
+
+        Set<Integer> seen = new HashSet<>();
+        seen.add(q.currentIndex());
+        for (int i = 1; i < q.size(); i++) {
+            q.jumpTo(q.nextIndex());
+            assertTrue(seen.add(q.currentIndex()));
+        }
+        assertEquals(5, q.nextIndex()); // Da la vuelta a la primera
+
+        q.setShuffle(false);
+        int current = q.currentIndex();
+        assertEquals((current + 1) % q.size(), q.nextIndex());
+    }
+
+    @Test
+    public void playbackOrderViewMatchesNavigation() {
+        QueueManager q = new QueueManager(new Random(3));
+        q.setTracks(tracks("a", "b", "c", "d", "e"));
+        q.jumpTo(0);
+        q.setShuffle(true);
+
+        List<Track> order = q.getPlaybackOrder();
+        for (int k = 0; k < order.size(); k++) {
+            assertSame(order.get(k), q.current());
+            q.jumpTo(q.nextIndex());
+        }
+    }
+
+    @Test
+    public void addSortedKeepsListOrderAndCurrentTrack() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("b", "d", "f"));
+        q.jumpTo(1);
+        Track current = q.current();
+
+        q.addSorted(tracks("e", "a", "c"), BY_TITLE);
+
+        assertEquals(6, q.size());
+        assertSame(current, q.current());
+        assertEquals(3, q.currentIndex());
+        StringBuilder titles = new StringBuilder();
+        for (Track t : q.getTracks()) titles.append(t.title);
+        assertEquals("abcdef", titles.toString());
+        assertEquals("e", q.get(q.nextIndex()).title);
+    }
+
+    @Test
+    public void addSortedInShuffleEntersAfterTheCurrentTrack() {
+        QueueManager q = new QueueManager(new Random(11));
+        q.setTracks(tracks("a", "b", "c", "d"));
+        q.jumpTo(2);
+        q.setShuffle(true);
+        Track current = q.current();
+
+        List<Track> added = tracks("x", "y", "z");
+        q.addSorted(added, BY_TITLE);
+
+        assertSame(current, q.current());
+        assertSame(current, q.getPlaybackOrder().get(0));
+        Set<Track> inOrder = new HashSet<>(q.getPlaybackOrder());
+        assertEquals(7, inOrder.size());
+        assertTrue(inOrder.containsAll(added));
+    }
+
+    @Test
+    public void removingTheCurrentTrackContinuesFromTheSamePosition() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b", "c", "d"));
+        q.jumpTo(1);
+
+        Set<String> gone = new HashSet<>(Arrays.asList("b", "d"));
+        assertEquals(2, q.removeIf(t -> gone.contains(t.title)));
+
+        assertEquals(2, q.size());
+        assertEquals("c", q.current().title);
+        assertEquals("a", q.get(q.nextIndex()).title);
+    }
+
+    @Test
+    public void removingEverythingClearsTheCurrentTrack() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b"));
+        q.jumpTo(0);
+        q.removeIf(t -> true);
+
+        assertTrue(q.isEmpty());
+        assertNull(q.current());
+        assertEquals(-1, q.nextIndex());
+    }
+
+    @Test
+    public void sameTrackTwiceDoesNotConfuseTheOrder() {
+        Track a = tracks("a").get(0);
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(Arrays.asList(a, a, tracks("b").get(0)));
+        q.jumpTo(1);
+        assertEquals(2, q.nextIndex());
+        assertEquals(0, q.prevIndex());
+    }
+
+    private static String playbackTitles(QueueManager q) {
+        StringBuilder titles = new StringBuilder();
+        for (Track t : q.getPlaybackOrder()) titles.append(t.title);
+        return titles.toString();
+    }
+
+    @Test
+    public void movingAnotherTrackKeepsTheCurrentOneAndChangesWhatComesNext() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b", "c", "d", "e"));
+        q.jumpTo(1);
+
+        q.move(4, 2); // "e" justo detrás de "b"
+
+        assertEquals("abecd", playbackTitles(q));
+        assertEquals("b", q.current().title);
+        assertEquals("e", q.get(q.nextIndex()).title);
+        assertEquals("a", q.get(q.prevIndex()).title);
+    }
+
+    @Test
+    public void movingTheCurrentTrackKeepsPlayingIt() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b", "c", "d"));
+        q.jumpTo(0);
+
+        q.move(0, 3);
+
+        assertEquals("bcda", playbackTitles(q));
+        assertEquals("a", q.current().title);
+        assertEquals("b", q.get(q.nextIndex()).title); // Da la vuelta al principio
+    }
+
+    @Test
+    public void moveAfterPlacesTheTrackBehindItsNeighbourInEitherDirection() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("a", "b", "c", "d", "e"));
+        q.jumpTo(2);
+
+        q.moveAfter(4, 1); // "e" detrás de "b" (venía de después)
+        assertEquals("abecd", playbackTitles(q));
+        q.moveAfter(0, 3); // "a" detrás de "d" (venía de antes)
+        assertEquals("becda", playbackTitles(q));
+        q.moveAfter(3, -1); // "d" al principio
+        assertEquals("dbeca", playbackTitles(q));
+        q.moveAfter(2, 2);
+        assertEquals("dbeca", playbackTitles(q));
+        assertEquals("c", q.current().title);
+    }
+
+    @Test
+    public void addSortedInNormalOrderKeepsManualMoves() {
+        QueueManager q = new QueueManager(new Random(1));
+        q.setTracks(tracks("b", "d", "f"));
+        q.move(2, 0); // f b d
+
+        q.addSorted(tracks("a", "c", "g"), BY_TITLE);
+
+        // Cada nueva va detrás de la que la precede por título: c tras b, g tras f; a al principio
+        assertEquals("afgbcd", playbackTitles(q));
+    }
+
+    @Test
+    public void restoreDropsMissingTracksAndKeepsTheSavedOrder() {
+        QueueManager q = new QueueManager(new Random(1));
+        List<Track> saved = tracks("a", "b", "c", "d");
+        saved.set(2, null); // "c" ya no está en la biblioteca
+
+        q.restore(saved, new int[]{3, 2, 0, 1}, 2, true, true);
+
+        assertEquals("dab", playbackTitles(q));
+        assertTrue(q.isShuffle());
+        assertTrue(q.isRepeatOne());
+        // La actual era la que faltaba: sigue la que quedó en su lugar del orden
+        assertEquals("a", q.current().title);
+        assertArrayEquals(new int[]{2, 0, 1}, q.getOrder());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class QueueSnapshotTest {
+
+    private static QueueSnapshot sample() {
+        Track current = new Track(20, "/m/b.mp3", "Canción ñ", null, "Álbum", 215_000);
+        return new QueueSnapshot(new long[]{10, 20, 30}, new int[]{2, 0, 1}, new Track[3], 1, current, 73_500,
+                true, false);
+    }
+
+    @Test
+    public void encodeAndDecodeRoundTrip() {
+        QueueSnapshot s = QueueSnapshot.decode(sample().encode());
+
+        assertNotNull(s);
+        assertArrayEquals(new long[]{10, 20, 30}, s.ids);
+        assertArrayEquals(new int[]{2, 0, 1}, s.order);
+        assertEquals(1, s.currentIndex);
+        assertEquals(73_500, s.positionMs);
+        assertTrue(s.shuffle);
+        assertFalse(s.repeatOne);
+        assertEquals(20, s.current.id);
+        assertEquals("Canción ñ", s.current.title);
+        assertNull(s.current.artist);
+        assertEquals("Álbum", s.current.album);
+        assertEquals(215_000, s.current.durationMs);
+        for (Track t : s.unindexed) assertNull(t);
+    }
+
+    @Test
+    public void tracksOutsideTheIndexKeepTheirData() {
+        Track current = new Track(10, "/m/a.mp3", "a", null, null, 0);
+        Track saf = new Track("content://tree/x/Ñu.mp3", "Ñu", "Artista", null, 98_000);
+        QueueSnapshot s = QueueSnapshot.decode(new QueueSnapshot(new long[]{10, saf.id}, new int[]{0, 1},
+                new Track[]{null, saf}, 0, current, 0, false, false).encode());
+
+        assertNotNull(s);
+        assertNull(s.unindexed[0]);
+        Track t = s.unindexed[1];
+        assertEquals(saf.id, t.id);
+        assertEquals("content://tree/x/Ñu.mp3", t.path);
+        assertEquals("Ñu", t.title);
+        assertEquals("Artista", t.artist);
+        assertNull(t.album);
+        assertEquals(98_000, t.durationMs);
+    }
+
+    @Test
+    public void writeAndReadThroughTheMappedFile() throws Exception {
+        File file = File.createTempFile("queue", ".bin");
+        try {
+            sample().writeTo(file);
+            QueueSnapshot s = QueueSnapshot.readFrom(file);
+            assertNotNull(s);
+            assertArrayEquals(new int[]{2, 0, 1}, s.order);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void truncatedOrForeignContentIsIgnored() throws Exception {
+        ByteBuffer data = sample().encode();
+        ByteBuffer truncated = ByteBuffer.wrap(data.array(), 0, data.limit() - 4);
+        assertNull(QueueSnapshot.decode(truncated));
+        assertNull(QueueSnapshot.decode(ByteBuffer.wrap("no es un estado".getBytes("UTF-8"))));
+
+        File file = File.createTempFile("queue", ".bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+        assertNull(QueueSnapshot.readFrom(file));
+        file.delete();
+        assertNull(QueueSnapshot.readFrom(file));
+    }
+
+    @Test
+    public void orderThatIsNotAPermutationIsRejected() {
+        Track current = new Track(10, "/m/a.mp3", "a", null, null, 0);
+        QueueSnapshot bad = new QueueSnapshot(new long[]{10, 20}, new int[]{0, 0}, new Track[2], 0, current, 0,
+                false, false);
+        assertNull(QueueSnapshot.decode(bad.encode()));
+    }
+}
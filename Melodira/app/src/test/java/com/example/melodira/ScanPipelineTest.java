@@ -0,0 +1,102 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ScanPipelineTest {
+
+    @Test
+    public void deliversEveryResultToTheCallingThread() throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        List<Integer> out = new ArrayList<>();
+
+        ScanPipeline.Stats stats = new ScanPipeline<Integer, Integer>(4, 8).run(
+                sink -> {
+                    for (int i = 0; i < 1000; i++) sink.accept(i);
+                },
+                i -> i * 2,
+                r -> {
+                    assertSame(caller, Thread.currentThread());
+                    out.add(r);
+                });
+
+        Collections.sort(out);
+        assertEquals(1000, out.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i * 2, (int) out.get(i));
+        assertEquals(1000, stats.enumerated());
+        assertEquals(1000, stats.extracted());
+        assertEquals(1000, stats.collected());
+    }
+
+    @Test
+    public void failuresAndNullsAreDroppedWithoutStoppingTheScan() throws InterruptedException {
+        List<Integer> out = new ArrayList<>();
+
+        ScanPipeline.Stats stats = new ScanPipeline<Integer, Integer>(3, 2).run(
+                sink -> {
+                    for (int i = 0; i < 30; i++) sink.accept(i);
+                },
+                i -> {
+                    if (i % 10 == 0) throw new IllegalStateException("archivo roto");
+                    return i % 10 == 5 ? null : i;
+                },
+                out::add);
+
+        assertEquals(24, out.size());
+        assertEquals(3, stats.failed());
+        assertEquals(30, stats.extracted());
+    }
+
+    @Test
+    public void workersRunInParallel() throws InterruptedException {
+        int workers = 4;
+        // Cada extracción espera a que las 4 estén en curso: solo termina si de verdad van en paralelo
+        CountDownLatch allRunning = new CountDownLatch(workers);
+        List<Boolean> out = new ArrayList<>();
+
+        new ScanPipeline<Integer, Boolean>(workers, 1).run(
+                sink -> {
+                    for (int i = 0; i < workers; i++) sink.accept(i);
+                },
+                i -> {
+                    allRunning.countDown();
+                    return allRunning.await(5, TimeUnit.SECONDS);
+                },
+                out::add);
+
+        assertEquals(Collections.nCopies(workers, true), out);
+    }
+
+    @Test
+    public void enumerationErrorStillFinishesWithWhatWasFound() throws InterruptedException {
+        List<Integer> out = new ArrayList<>();
+
+        ScanPipeline.Stats stats = new ScanPipeline<Integer, Integer>(2, 4).run(
+                sink -> {
+                    sink.accept(1);
+                    sink.accept(2);
+                    throw new IllegalStateException("permiso revocado");
+                },
+                i -> i,
+                out::add);
+
+        assertEquals(2, out.size());
+        assertNotNull(stats.enumerationError());
+    }
+
+    @Test
+    public void defaultWorkerCountDependsOnStorage() {
+        assertEquals(8, ScanPipeline.defaultWorkerCount(ScanPipeline.Storage.INTERNAL, 8));
+        assertEquals(4, ScanPipeline.defaultWorkerCount(ScanPipeline.Storage.INTERNAL, 4));
+        assertEquals(2, ScanPipeline.defaultWorkerCount(ScanPipeline.Storage.REMOVABLE, 8));
+        assertEquals(16, ScanPipeline.defaultWorkerCount(ScanPipeline.Storage.REMOTE, 8));
+        assertEquals(1, ScanPipeline.defaultWorkerCount(ScanPipeline.Storage.INTERNAL, 0));
+    }
+}
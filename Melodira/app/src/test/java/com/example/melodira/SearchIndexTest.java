@@ -0,0 +1,82 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private static Track track(String title, String artist, String album) {
+        return new Track("/m/" + title + ".mp3", title, artist, album, 0);
+    }
+
+    private static List<String> titles(SearchIndex.Result r) {
+        List<String> out = new ArrayList<>();
+        for (Track t : r.tracks()) out.add(t.title);
+        return out;
+    }
+
+    private final SearchIndex index = new SearchIndex(Arrays.asList(
+            track("Canción del mariachi", "Antonio Banderas", "Desperado"),
+            track("Bésame mucho", "Luis Miguel", "Romances"),
+            track("La bamba", "Ritchie Valens", "La Bamba"),
+            track("Mariposa traicionera", "Maná", "Revolución de amor"),
+            track("Amor eterno", "Juan Gabriel", null)));
+
+    @Test
+    public void normalizeLowercasesAndFoldsAccents() {
+        assertEquals("cancion", SearchIndex.normalize("Canción"));
+        assertEquals("pinata", SearchIndex.normalize("PIÑATA"));
+        assertEquals("", SearchIndex.normalize(null));
+    }
+
+    @Test
+    public void matchesIgnoringCaseAndAccents() {
+        assertEquals(Arrays.asList("Canción del mariachi"), titles(index.search("CANCION", null)));
+        assertEquals(Arrays.asList("Mariposa traicionera"), titles(index.search("mana", null)));
+        assertEquals(Arrays.asList("Bésame mucho"), titles(index.search("besa", null)));
+    }
+
+    @Test
+    public void everyWordHasToMatchInSomeField() {
+        assertEquals(Arrays.asList("La bamba"), titles(index.search("bamba ritchie", null)));
+        assertTrue(titles(index.search("bamba gabriel", null)).isEmpty());
+    }
+
+    @Test
+    public void titleMatchesRankAboveArtistAndAlbum() {
+        // "amor": título al principio > álbum en medio de una palabra
+        assertEquals(Arrays.asList("Amor eterno", "Mariposa traicionera"), titles(index.search("amor", null)));
+        // "mari": título al principio, después dentro del título
+        assertEquals(Arrays.asList("Mariposa traicionera", "Canción del mariachi"), titles(index.search("mari", null)));
+    }
+
+    @Test
+    public void shortQueriesWithoutTrigramsStillWork() {
+        assertEquals(Arrays.asList("La bamba"), titles(index.search("la b", null)));
+        assertEquals(5, index.search("a", null).size());
+    }
+
+    @Test
+    public void extendingTheQueryRefinesThePreviousResult() {
+        SearchIndex.Result r = index.search("ma", null);
+        SearchIndex.Result refined = index.search("mar", r);
+        assertEquals(titles(index.search("mar", null)), titles(refined));
+
+        // Si no la extiende, se busca de cero
+        SearchIndex.Result other = index.search("amor", refined);
+        assertEquals(2, other.size());
+    }
+
+    @Test
+    public void emptyQueryReturnsEverythingInOrder() {
+        SearchIndex.Result r = index.search("  ", null);
+        assertEquals(5, r.size());
+        assertEquals("Canción del mariachi", r.tracks().get(0).title);
+        assertEquals("Amor eterno", r.tracks().get(4).title);
+    }
+}
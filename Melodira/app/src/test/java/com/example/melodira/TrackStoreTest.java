@@ -0,0 +1,133 @@
+package com.example.melodira;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrackStoreTest {
+
+    @Test
+    public void tracksRoundTripAllFields() {
+        TrackStore store = new TrackStore();
+        int row = store.add(new Track(7, "/music/Rock/song.mp3", "Canción", "Artista", "Álbum", 1234));
+
+        Track t = store.track(row);
+        assertEquals(7, t.id);
+        assertEquals("/music/Rock/song.mp3", t.path);
+        assertEquals("Canción", t.title);
+        assertEquals("Artista", t.artist);
+        assertEquals("Álbum", t.album);
+        assertEquals(1234, t.durationMs);
+        assertEquals(row, store.rowOf(7));
+    }
+
+    @Test
+    public void nullsAndPathsWithoutFolderSurvive() {
+        TrackStore store = new TrackStore();
+        int row = store.add(new Track(0, "song.mp3", null, null, null, 0));
+
+        Track t = store.track(row);
+        assertEquals("song.mp3", t.path);
+        assertNull(t.title);
+        assertNull(t.artist);
+        assertNull(t.album);
+    }
+
+    @Test
+    public void repeatedArtistsAndAlbumsAreStoredOnce() {
+        TrackStore store = new TrackStore();
+        for (int i = 1; i <= 100; i++) {
+            // new String: mismos textos pero objetos distintos, como los que salen de un Cursor
+            store.add(new Track(i, new String("/music/Band/") + i + ".mp3", "Song " + i,
+                    new String("Band"), new String("Album " + (i % 4)), i));
+        }
+
+        assertEquals(100, store.size());
+        assertEquals(1, store.artistCount());
+        assertEquals(4, store.albumCount());
+        assertSame(store.track(store.rowOf(1)).artist, store.track(store.rowOf(2)).artist);
+    }
+
+    @Test
+    public void removedRowsAreReusedAndOthersDoNotMove() {
+        TrackStore store = new TrackStore();
+        int a = store.add(new Track(1, "/m/a.mp3", "a", null, null, 0));
+        int b = store.add(new Track(2, "/m/b.mp3", "b", null, null, 0));
+        store.remove(a);
+
+        assertEquals(-1, store.rowOf(1));
+        assertEquals(b, store.rowOf(2));
+        assertEquals(a, store.add(new Track(3, "/m/c.mp3", "c", null, null, 0)));
+        assertEquals("b", store.track(b).title);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void setRewritesTheRowInPlace() {
+        TrackStore store = new TrackStore();
+        int row = store.add(new Track(1, "/m/a.mp3", "old", "x", null, 0));
+        store.set(row, new Track(1, "/m/a.mp3", "new title", "y", null, 5));
+
+        Track t = store.track(row);
+        assertEquals("new title", t.title);
+        assertEquals("y", t.artist);
+        assertEquals(5, t.durationMs);
+    }
+
+    @Test
+    public void readsReturnTheSameTrackAndShareTheIncomingStrings() {
+        TrackStore store = new TrackStore();
+        Track in = new Track(1, "/m/a.mp3", "title", "x", null, 0);
+        int row = store.add(in);
+
+        assertSame(store.track(row), store.track(row));
+        assertSame(in.title, store.track(row).title);
+        assertSame(in.path, store.track(row).path);
+
+        Track before = store.track(row);
+        store.set(row, new Track(1, "/m/a.mp3", "other", "x", null, 0));
+        assertNotSame(before, store.track(row));
+        assertEquals("title", before.title); // Lo ya publicado no cambia
+    }
+
+    @Test
+    public void compareTitleFollowsTheIndexCollation() {
+        TrackStore store = new TrackStore();
+        int row = store.add(new Track(1, "/m/a.mp3", "Beta", null, null, 0));
+
+        // Como COLLATE NOCASE: solo A-Z sin distinguir mayúsculas, null antes que todo
+        String[] smaller = {"alpha", "ALPHA", "Bet", "", null};
+        String[] equal = {"beta", "BETA", "Beta"};
+        String[] bigger = {"Gamma", "Betamax", "Éclair", "béta", "Ｂeta"};
+        for (String other : smaller) assertTrue(other, store.compareTitle(row, other) > 0);
+        for (String other : equal) assertEquals(other, 0, store.compareTitle(row, other));
+        for (String other : bigger) assertTrue(other, store.compareTitle(row, other) < 0);
+    }
+
+    @Test
+    public void titleOrderBreaksTiesById() {
+        Track a = new Track(7, "/m/a.mp3", "same", null, null, 0);
+        Track b = new Track(3, "/m/b.mp3", "SAME", null, null, 0);
+        Track c = new Track(5, "/m/c.mp3", null, null, null, 0);
+
+        List<Track> tracks = new ArrayList<>(Arrays.asList(a, b, c));
+        tracks.sort(MusicLibrary.TITLE_ORDER);
+        assertEquals(Arrays.asList(c, b, a), tracks);
+        // Por punto de código, igual que los bytes UTF-8 de SQLite (no por unidades UTF-16)
+        assertTrue(MusicLibrary.compareTitles("\uD83C\uDFB5", "\uFF21") > 0);
+    }
+
+    @Test
+    public void tracksAreEqualById() {
+        TrackStore store = new TrackStore();
+        int row = store.add(new Track(9, "/m/a.mp3", "a", null, null, 0));
+
+        assertEquals(store.track(row), new Track(9, "/m/a.mp3", "a", null, null, 0));
+        assertEquals(store.track(row).hashCode(), new Track(9, "/other.mp3", "b", null, null, 0).hashCode());
+        assertEquals(new Track("/saf/x.mp3", "x", null, null, 0), new Track("/saf/x.mp3", "y", null, null, 0));
+    }
+}